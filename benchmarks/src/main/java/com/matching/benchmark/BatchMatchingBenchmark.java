@@ -0,0 +1,161 @@
+package com.matching.benchmark;
+
+import com.matching.config.SymbolConfig;
+import com.matching.engine.EngineOrder;
+import com.matching.metrics.StageLatencies;
+import com.matching.model.Order;
+import com.matching.orderbook.InMemoryOrderBook;
+import com.matching.orderbook.OrderBook;
+import com.matching.orderbook.OrderBookMode;
+import com.matching.orderbook.RedisOrderBookCodec;
+import com.matching.producer.MatchResultProducer;
+import com.matching.service.MatchBatch;
+import com.matching.service.NewOrderMatchingService;
+import com.matching.service.NewOrderbookService;
+import com.matching.utils.SnowflakeIdGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 每秒撮合的訂單數與每次寫出涵蓋的訂單數（poll 大小）的關係；pollSize = 1 等同逐筆寫出
+// Kafka 使用丟棄紀錄的 MockProducer，訂單簿只在記憶體中；kafkaRecords 是撮合執行緒每秒送出的 Kafka 紀錄數（每個事件一筆撮合結果），
+// 舊有 topic 由 MatchResultFanout 在撮合執行緒外推導，不計入
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchMatchingBenchmark {
+
+    private static final String SYMBOL = "BTCUSDT";
+    private static final int ORDERS_PER_INVOCATION = 1000;
+    private static final int FLOW_SIZE = 1 << 16;
+
+    @Param({"1", "10", "100", "1000"})
+    private int pollSize;
+
+    private final EngineOrder[] flow = new EngineOrder[FLOW_SIZE];
+    // 與 ring buffer 槽位一樣重複使用
+    private final EngineOrder taker = new EngineOrder();
+    private MockProducer<String, String> producer;
+    private NewOrderMatchingService matchingService;
+    private MatchBatch batch;
+    private int index;
+    private long nextId;
+
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        producer = new DiscardingProducer();
+        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(() -> producer);
+
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(SYMBOL, null);
+        NewOrderbookService orderbookService = new NewOrderbookService(null, new RedisOrderBookCodec(objectMapper), null,
+                OrderBookMode.MEMORY, 1, null) {
+            @Override
+            public OrderBook getOrderBook(String symbol) {
+                return orderBook;
+            }
+        };
+        matchingService = new NewOrderMatchingService(orderbookService, new SnowflakeIdGenerator(1, 1),
+                new MatchResultProducer(kafkaTemplate, objectMapper), new SymbolConfig(),
+                StageLatencies.disabled());
+        batch = new MatchBatch(SYMBOL);
+
+        // 中間價 100 上下 1% 的隨機限價單，買賣各半，約三成會立即成交
+        Random random = new Random(42);
+        for (int i = 0; i < FLOW_SIZE; i++) {
+            boolean buy = random.nextBoolean();
+            long ticks = 10_000 + (buy ? -1 : 1) * (random.nextInt(100) - 30);
+            Order order = new Order();
+            order.setUserId(String.valueOf(random.nextInt(1000)));
+            order.setSymbol(SYMBOL);
+            order.setSide(buy ? Order.Side.BUY : Order.Side.SELL);
+            order.setOrderType(Order.OrderType.LIMIT);
+            order.setPrice(BigDecimal.valueOf(ticks, 2));
+            BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(100), 3);
+            order.setQuantity(quantity);
+            order.setUnfilledQuantity(quantity);
+            flow[i] = EngineOrder.fromOrder(order);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS_PER_INVOCATION)
+    public void matchPolls(Records records) throws Exception {
+        for (int i = 0; i < ORDERS_PER_INVOCATION; i++) {
+            taker.copyFrom(flow[index]);
+            index = (index + 1) & (FLOW_SIZE - 1);
+            taker.setId(String.valueOf(nextId++));
+            matchingService.handleNewOrder(taker, Instant.now(), batch);
+            if ((i + 1) % pollSize == 0) {
+                matchingService.flush(batch);
+            }
+        }
+        matchingService.flush(batch);
+        records.kafkaRecords += producer.history().size();
+        producer.clear();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Records {
+        public long kafkaRecords;
+    }
+
+    // KafkaTemplate 每次送出後都會 close 非共用的 producer，這裡忽略 close 讓它可重複使用
+    static class DiscardingProducer extends MockProducer<String, String> {
+
+        DiscardingProducer() {
+            super(true, new StringSerializer(), new StringSerializer());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(Duration timeout) {
+        }
+    }
+
+    // byteArrayKafkaTemplate 用的版本
+    static class DiscardingBytesProducer extends MockProducer<String, byte[]> {
+
+        DiscardingBytesProducer() {
+            super(true, new StringSerializer(), new ByteArraySerializer());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(Duration timeout) {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.matching.benchmark;
+
+import com.matching.config.SymbolConfig;
+import com.matching.dto.MatchResult;
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.metrics.StageLatencies;
+import com.matching.model.Order;
+import com.matching.orderbook.InMemoryOrderBook;
+import com.matching.orderbook.OrderBook;
+import com.matching.orderbook.OrderBookMode;
+import com.matching.orderbook.RedisOrderBookCodec;
+import com.matching.producer.MatchResultProducer;
+import com.matching.service.MatchBatch;
+import com.matching.service.NewOrderMatchingService;
+import com.matching.service.NewOrderbookService;
+import com.matching.utils.SnowflakeIdGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.time.Instant;
+
+// 撮合壓測共用的記憶體訂單簿：買賣各 levels 個價位，每個價位 ordersPerLevel 筆數量相同的掛單
+// 賣方從 BEST_ASK 往上、買方從 BEST_ASK 下一個跳動往下，每跳動 TICK；撮合結果不編碼也不送出，只量測撮合本身
+final class BookFixture {
+
+    static final String SYMBOL = "BTCUSDT";
+    static final long TICK = FixedPoint.ONE / 100;
+    static final long BEST_ASK = 100 * FixedPoint.ONE;
+    static final long BEST_BID = BEST_ASK - TICK;
+    static final long ORDER_QUANTITY = FixedPoint.ONE;
+    // 每邊最多的價位數，掛單較少時每個價位一筆
+    static final int MAX_LEVELS = 1000;
+
+    final InMemoryOrderBook orderBook = new InMemoryOrderBook(SYMBOL, null);
+    final NewOrderMatchingService matchingService;
+    final MatchBatch batch = new MatchBatch(SYMBOL);
+    final int levels;
+    final int ordersPerLevel;
+    final Instant now = Instant.ofEpochSecond(1_700_000_000L);
+    private long nextId;
+
+    // bookSize 是兩邊合計的掛單數
+    BookFixture(int bookSize) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        NewOrderbookService orderbookService = new NewOrderbookService(null, new RedisOrderBookCodec(objectMapper), null,
+                OrderBookMode.MEMORY, 1, null) {
+            @Override
+            public OrderBook getOrderBook(String symbol) {
+                return orderBook;
+            }
+        };
+        MatchResultProducer producer = new MatchResultProducer(null, objectMapper) {
+            @Override
+            public void send(MatchResult result) {
+            }
+        };
+        matchingService = new NewOrderMatchingService(orderbookService, new SnowflakeIdGenerator(1, 1), producer, new SymbolConfig(),
+                StageLatencies.disabled());
+
+        levels = Math.max(1, Math.min(MAX_LEVELS, bookSize / 2));
+        ordersPerLevel = Math.max(1, bookSize / 2 / levels);
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                orderBook.addOrder(order(Order.Side.SELL, askPrice(level), ORDER_QUANTITY));
+                orderBook.addOrder(order(Order.Side.BUY, BEST_BID - level * TICK, ORDER_QUANTITY));
+            }
+        }
+    }
+
+    static long askPrice(int level) {
+        return BEST_ASK + level * TICK;
+    }
+
+    EngineOrder order(Order.Side side, long price, long quantity) {
+        EngineOrder order = new EngineOrder();
+        order.setId(String.valueOf(nextId++));
+        order.setUserId("1");
+        order.setSymbol(SYMBOL);
+        order.setSide(side);
+        order.setOrderType(Order.OrderType.LIMIT);
+        order.setPrice(price);
+        order.setQuantity(quantity);
+        order.setUnfilledQuantity(quantity);
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setCreatedAt(now);
+        order.setUpdatedAt(now);
+        order.setModifiedAt(now);
+        return order;
+    }
+
+    // 與撮合執行緒相同：處理完寫出並清空批次
+    void handle(EngineOrder order) throws Exception {
+        matchingService.handleNewOrder(order, now, batch);
+        matchingService.flush(batch);
+    }
+}
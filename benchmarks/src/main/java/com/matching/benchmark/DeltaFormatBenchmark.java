@@ -0,0 +1,84 @@
+package com.matching.benchmark;
+
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import com.matching.producer.OrderBookDeltaProducer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// order-book-delta-<symbol> 的訊息成本：format 是原本先把定點數轉成字串再以 String.format 組成 JSON 的做法，
+// encode 是 OrderBookDeltaProducer 直接寫 byte[] 的編碼，sendDelta 再加上 KafkaTemplate 送到丟棄紀錄的 producer
+// 配置量比較見 OutboundEncodingBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeltaFormatBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final String SYMBOL = "BTCUSDT";
+
+    private final long[] prices = new long[SIZE];
+    private final long[] quantities = new long[SIZE];
+    private final Order.Side[] sides = new Order.Side[SIZE];
+    private BatchMatchingBenchmark.DiscardingBytesProducer producer;
+    private OrderBookDeltaProducer deltaProducer;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        producer = new BatchMatchingBenchmark.DiscardingBytesProducer();
+        BatchMatchingBenchmark.DiscardingProducer stringProducer = new BatchMatchingBenchmark.DiscardingProducer();
+        deltaProducer = new OrderBookDeltaProducer(new KafkaTemplate<>(() -> stringProducer), new KafkaTemplate<>(() -> producer),
+                new ObjectMapper());
+        // topicPrefix 平常由 @Value 注入
+        Field topicPrefix = OrderBookDeltaProducer.class.getDeclaredField("topicPrefix");
+        topicPrefix.setAccessible(true);
+        topicPrefix.set(deltaProducer, "order-book-delta-");
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            prices[i] = FixedPoint.ONE * 50_000 + random.nextInt(10_000) * (FixedPoint.ONE / 100);
+            quantities[i] = random.nextInt(1_000_000) * (FixedPoint.ONE / 100_000);
+            sides[i] = random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL;
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        int i = index++ & (SIZE - 1);
+        return String.format("{\"symbol\":\"%s\",\"sequence\":%d,\"side\":\"%s\",\"price\":\"%s\",\"unfilledQuantity\":\"%s\"}",
+                SYMBOL, (long) i, sides[i], FixedPoint.toPlainString(prices[i]), FixedPoint.toPlainString(quantities[i]));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        int i = index++ & (SIZE - 1);
+        return OrderBookDeltaProducer.encodeDelta(SYMBOL, i, sides[i], prices[i], quantities[i]);
+    }
+
+    @Benchmark
+    public void sendDelta() {
+        int i = index++ & (SIZE - 1);
+        deltaProducer.sendDelta(SYMBOL, i, sides[i], prices[i], quantities[i]);
+        // MockProducer 會保留送出的紀錄
+        if (i == SIZE - 1) {
+            producer.clear();
+        }
+    }
+}
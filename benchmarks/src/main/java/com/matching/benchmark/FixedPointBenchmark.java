@@ -0,0 +1,108 @@
+package com.matching.benchmark;
+
+import com.matching.engine.FixedPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 比較每筆成交的數量運算：BigDecimal 與定點 long
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FixedPointBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final BigDecimal[] decimalPrices = new BigDecimal[SIZE];
+    private final BigDecimal[] decimalQuantities = new BigDecimal[SIZE];
+    private final long[] scaledPrices = new long[SIZE];
+    private final long[] scaledQuantities = new long[SIZE];
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            BigDecimal price = BigDecimal.valueOf(50_000_00 + random.nextInt(10_000), 2);
+            BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(1_000_000), 5);
+            decimalPrices[i] = price;
+            decimalQuantities[i] = quantity;
+            scaledPrices[i] = FixedPoint.toScaled(price);
+            scaledQuantities[i] = FixedPoint.toScaled(quantity);
+        }
+    }
+
+    // 原本撮合迴圈中每筆成交的 compareTo / min / add / subtract
+    @Benchmark
+    public void bigDecimalFill(Blackhole blackhole) {
+        int i = index++ & (SIZE - 1);
+        int j = (i + 1) & (SIZE - 1);
+        BigDecimal takerUnfilled = decimalQuantities[i];
+        BigDecimal takerFilled = BigDecimal.ZERO;
+        BigDecimal makerUnfilled = decimalQuantities[j];
+        BigDecimal makerFilled = BigDecimal.ZERO;
+
+        boolean isPriceMatch = decimalPrices[i].compareTo(decimalPrices[j]) >= 0;
+        BigDecimal matchedQuantity = takerUnfilled.min(makerUnfilled);
+        takerFilled = takerFilled.add(matchedQuantity);
+        takerUnfilled = takerUnfilled.subtract(matchedQuantity);
+        makerFilled = makerFilled.add(matchedQuantity);
+        makerUnfilled = makerUnfilled.subtract(matchedQuantity);
+
+        blackhole.consume(isPriceMatch);
+        blackhole.consume(takerFilled);
+        blackhole.consume(takerUnfilled.compareTo(BigDecimal.ZERO) == 0);
+        blackhole.consume(makerFilled);
+        blackhole.consume(makerUnfilled.compareTo(BigDecimal.ZERO) == 0);
+    }
+
+    // 引擎內的定點數版本，含溢位檢查
+    @Benchmark
+    public void scaledLongFill(Blackhole blackhole) {
+        int i = index++ & (SIZE - 1);
+        int j = (i + 1) & (SIZE - 1);
+        long takerUnfilled = scaledQuantities[i];
+        long takerFilled = 0;
+        long makerUnfilled = scaledQuantities[j];
+        long makerFilled = 0;
+
+        boolean isPriceMatch = scaledPrices[i] >= scaledPrices[j];
+        long matchedQuantity = Math.min(takerUnfilled, makerUnfilled);
+        takerFilled = FixedPoint.add(takerFilled, matchedQuantity);
+        takerUnfilled = FixedPoint.subtract(takerUnfilled, matchedQuantity);
+        makerFilled = FixedPoint.add(makerFilled, matchedQuantity);
+        makerUnfilled = FixedPoint.subtract(makerUnfilled, matchedQuantity);
+
+        blackhole.consume(isPriceMatch);
+        blackhole.consume(takerFilled);
+        blackhole.consume(takerUnfilled == 0);
+        blackhole.consume(makerFilled);
+        blackhole.consume(makerUnfilled == 0);
+    }
+
+    // 邊界轉換的成本：每筆成交送出 Kafka 前轉回 BigDecimal
+    @Benchmark
+    public BigDecimal toBigDecimal() {
+        return FixedPoint.toBigDecimal(scaledQuantities[index++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public long toScaled() {
+        return FixedPoint.toScaled(decimalQuantities[index++ & (SIZE - 1)]);
+    }
+}
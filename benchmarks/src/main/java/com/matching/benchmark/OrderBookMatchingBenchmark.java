@@ -0,0 +1,71 @@
+package com.matching.benchmark;
+
+import com.matching.dto.CancelOrderRequest;
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 單筆訂單在不同掛單量的訂單簿上的處理時間（經由 NewOrderMatchingService，不含編碼與送出）
+// crossAndReplenish：吃掉最佳賣價最前面的一筆（一筆成交），再掛回一筆同價賣單，訂單簿大小不變
+// restAndCancel：在買方中段既有價位掛單後撤單
+// 加上 -prof gc 可看每次操作配置的位元組數
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class OrderBookMatchingBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int bookSize;
+
+    private BookFixture book;
+    private EngineOrder taker;
+    private EngineOrder maker;
+    private EngineOrder resting;
+    // 與 ring buffer 槽位一樣重複使用
+    private final EngineOrder slot = new EngineOrder();
+    private long nextId;
+
+    @Setup
+    public void setup() {
+        book = new BookFixture(bookSize);
+        taker = book.order(Order.Side.BUY, BookFixture.BEST_ASK, BookFixture.ORDER_QUANTITY);
+        maker = book.order(Order.Side.SELL, BookFixture.BEST_ASK, BookFixture.ORDER_QUANTITY);
+        resting = book.order(Order.Side.BUY, BookFixture.BEST_BID - book.levels / 2 * BookFixture.TICK, BookFixture.ORDER_QUANTITY);
+    }
+
+    @Benchmark
+    public void crossAndReplenish() throws Exception {
+        handle(taker);
+        handle(maker);
+    }
+
+    @Benchmark
+    public void restAndCancel() throws Exception {
+        String id = handle(resting);
+        book.matchingService.handleCancel(new CancelOrderRequest(id, resting.getUserId(), BookFixture.SYMBOL), book.now, book.batch);
+        book.matchingService.flush(book.batch);
+    }
+
+    private String handle(EngineOrder template) throws Exception {
+        slot.copyFrom(template);
+        String id = "b" + nextId++;
+        slot.setId(id);
+        book.handle(slot);
+        return id;
+    }
+}
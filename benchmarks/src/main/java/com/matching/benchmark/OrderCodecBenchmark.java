@@ -0,0 +1,108 @@
+package com.matching.benchmark;
+
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+import com.matching.orderbook.RedisOrderBookCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Redis 掛單內容的編碼成本：舊版 <序號>:<訂單 JSON> 與二進位格式
+// 每筆的位元組數在 setup 時印出
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderCodecBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final EngineOrder[] orders = new EngineOrder[SIZE];
+    private final byte[][] jsonValues = new byte[SIZE][];
+    private final byte[][] binaryValues = new byte[SIZE][];
+    private RedisOrderBookCodec codec;
+    private int index;
+
+    @Setup
+    public void setup() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        codec = new RedisOrderBookCodec(objectMapper);
+
+        Random random = new Random(42);
+        long jsonBytes = 0;
+        long binaryBytes = 0;
+        for (int i = 0; i < SIZE; i++) {
+            Order order = new Order();
+            order.setId(String.valueOf(1_850_000_000_000_000_000L + random.nextInt(1_000_000)));
+            order.setUserId(String.valueOf(random.nextInt(100_000)));
+            order.setSymbol("BTCUSDT");
+            order.setSide(random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL);
+            order.setOrderType(Order.OrderType.LIMIT);
+            order.setPrice(BigDecimal.valueOf(50_000_00 + random.nextInt(10_000), 2));
+            BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(1_000_000), 5);
+            order.setQuantity(quantity);
+            order.setUnfilledQuantity(quantity);
+            Instant now = Instant.ofEpochSecond(1_700_000_000L + random.nextInt(1_000_000), random.nextInt(1_000_000_000));
+            order.setCreatedAt(now);
+            order.setUpdatedAt(now);
+            order.setModifiedAt(now);
+
+            EngineOrder engineOrder = EngineOrder.fromOrder(order);
+            engineOrder.setSequence(1 + i);
+            orders[i] = engineOrder;
+            jsonValues[i] = jsonValue(engineOrder);
+            binaryValues[i] = codec.value(engineOrder);
+            jsonBytes += jsonValues[i].length;
+            binaryBytes += binaryValues[i].length;
+        }
+        System.out.println("Bytes per order: json " + jsonBytes / SIZE + ", binary " + binaryBytes / SIZE);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return jsonValue(orders[index++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public EngineOrder jsonDecode() {
+        return codec.decodeValue(jsonValues[index++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return codec.value(orders[index++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public EngineOrder binaryDecode() {
+        return codec.decodeValue(binaryValues[index++ & (SIZE - 1)]);
+    }
+
+    // 舊版寫入 ORDERS Hash 的內容
+    private byte[] jsonValue(EngineOrder order) {
+        byte[] prefix = String.format("%019d:", order.getSequence()).getBytes(StandardCharsets.US_ASCII);
+        byte[] json = codec.encodeJson(order);
+        byte[] value = new byte[prefix.length + json.length];
+        System.arraycopy(prefix, 0, value, 0, prefix.length);
+        System.arraycopy(json, 0, value, prefix.length, json.length);
+        return value;
+    }
+}
@@ -0,0 +1,74 @@
+package com.matching.benchmark;
+
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+import com.matching.orderbook.RedisOrderBookCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 價格索引排序值的計算成本：舊版的 ZSet score（price * 10^7 ± 修改時間毫秒，以 BigDecimal 計算）
+// 與目前的成員 <價格排序鍵>:<序號>:<訂單 ID>
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderIndexKeyBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final BigDecimal PRECISION_FACTOR = BigDecimal.TEN.pow(7);
+
+    private final Order[] orders = new Order[SIZE];
+    private final EngineOrder[] engineOrders = new EngineOrder[SIZE];
+    private RedisOrderBookCodec codec;
+    private int index;
+
+    @Setup
+    public void setup() {
+        codec = new RedisOrderBookCodec(new ObjectMapper());
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            Order order = new Order();
+            order.setId(String.valueOf(1_850_000_000_000_000_000L + random.nextInt(1_000_000)));
+            order.setSymbol("BTCUSDT");
+            order.setSide(random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL);
+            order.setOrderType(Order.OrderType.LIMIT);
+            order.setPrice(BigDecimal.valueOf(50_000_00 + random.nextInt(10_000), 2));
+            order.setQuantity(BigDecimal.ONE);
+            order.setModifiedAt(Instant.ofEpochMilli(1_700_000_000_000L + random.nextInt(1_000_000)));
+            orders[i] = order;
+            engineOrders[i] = EngineOrder.fromOrder(order);
+            engineOrders[i].setSequence(1 + i);
+        }
+    }
+
+    // 基準版本的 calculateScore
+    @Benchmark
+    public double legacyScore() {
+        Order order = orders[index++ & (SIZE - 1)];
+        return order.getPrice().multiply(PRECISION_FACTOR)
+                .add((order.getSide() == Order.Side.BUY ? BigDecimal.valueOf(-1) : BigDecimal.ONE)
+                        .multiply(BigDecimal.valueOf(order.getModifiedAt().toEpochMilli())))
+                .doubleValue();
+    }
+
+    @Benchmark
+    public byte[] member() {
+        return codec.member(engineOrders[index++ & (SIZE - 1)]);
+    }
+}
@@ -0,0 +1,82 @@
+package com.matching.benchmark;
+
+import com.matching.engine.EngineOrder;
+import com.matching.engine.OrderWireFormat;
+import com.matching.model.Order;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// new_orders 每筆訊息解碼成引擎訂單的成本：JSON 轉 Order 實體再轉定點數，與二進位格式直接解碼到重複使用的物件
+// 加上 -prof gc 可比較每筆配置的位元組數（gc.alloc.rate.norm）
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderIngressBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final byte[][] jsonValues = new byte[SIZE][];
+    private final ByteBuffer[] binaryValues = new ByteBuffer[SIZE];
+    private final EngineOrder slot = new EngineOrder();
+    private ObjectMapper objectMapper;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            Order order = new Order();
+            order.setId(String.valueOf(1_850_000_000_000_000_000L + random.nextInt(1_000_000)));
+            order.setUserId(String.valueOf(random.nextInt(100_000)));
+            order.setSymbol("BTCUSDT");
+            order.setSide(random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL);
+            order.setOrderType(Order.OrderType.LIMIT);
+            order.setPrice(BigDecimal.valueOf(50_000_00 + random.nextInt(10_000), 2));
+            BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(1_000_000), 5);
+            order.setQuantity(quantity);
+            order.setUnfilledQuantity(quantity);
+            Instant now = Instant.ofEpochSecond(1_700_000_000L + random.nextInt(1_000_000), random.nextInt(1_000_000_000));
+            order.setCreatedAt(now);
+            order.setUpdatedAt(now);
+            order.setModifiedAt(now);
+
+            jsonValues[i] = objectMapper.writeValueAsBytes(order);
+            binaryValues[i] = ByteBuffer.wrap(OrderWireFormat.encode(order));
+        }
+    }
+
+    @Benchmark
+    public EngineOrder json() throws Exception {
+        return EngineOrder.fromOrder(objectMapper.readValue(jsonValues[index++ & (SIZE - 1)], Order.class));
+    }
+
+    // 與 OrderDispatcher 相同：先檢查並取出交易對，再解碼到槽位
+    @Benchmark
+    public EngineOrder binary() {
+        ByteBuffer value = binaryValues[index++ & (SIZE - 1)];
+        OrderWireFormat.decode(value, OrderWireFormat.symbol(value), slot);
+        return slot;
+    }
+}
@@ -0,0 +1,112 @@
+package com.matching.benchmark;
+
+import com.matching.dto.MatchResult;
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+import com.matching.model.Trade;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Kafka 邊界的 JSON 成本：訂單更新（原本的 convertOrderToJson）編碼與解碼、引擎訂單轉回 Order 後編碼，
+// 以及一筆含一次成交的撮合結果編碼
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderJsonBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final Order[] orders = new Order[SIZE];
+    private final EngineOrder[] engineOrders = new EngineOrder[SIZE];
+    private final String[] jsonValues = new String[SIZE];
+    private final MatchResult[] results = new MatchResult[SIZE];
+    private ObjectMapper objectMapper;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            Order order = new Order();
+            order.setId(String.valueOf(1_850_000_000_000_000_000L + random.nextInt(1_000_000)));
+            order.setUserId(String.valueOf(random.nextInt(100_000)));
+            order.setSymbol("BTCUSDT");
+            order.setSide(random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL);
+            order.setOrderType(Order.OrderType.LIMIT);
+            order.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
+            order.setPrice(BigDecimal.valueOf(50_000_00 + random.nextInt(10_000), 2));
+            BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(1_000_000), 5);
+            order.setQuantity(quantity);
+            order.setFilledQuantity(BigDecimal.ZERO);
+            order.setUnfilledQuantity(quantity);
+            Instant now = Instant.ofEpochSecond(1_700_000_000L + random.nextInt(1_000_000), random.nextInt(1_000_000_000));
+            order.setCreatedAt(now);
+            order.setUpdatedAt(now);
+            order.setModifiedAt(now);
+            orders[i] = order;
+            engineOrders[i] = EngineOrder.fromOrder(order);
+            jsonValues[i] = objectMapper.writeValueAsString(order);
+
+            Trade trade = new Trade();
+            trade.setId(String.valueOf(1_850_000_000_000_000_000L + i));
+            trade.setSymbol(order.getSymbol());
+            trade.setBuyOrder(order);
+            trade.setSellOrder(order);
+            trade.setPrice(order.getPrice());
+            trade.setQuantity(quantity);
+            trade.setDirection(order.getSide() == Order.Side.BUY ? "buy" : "sell");
+            trade.setTakerOrderId(order.getId());
+            trade.setTradeTime(now);
+            MatchResult result = new MatchResult();
+            result.setSymbol(order.getSymbol());
+            result.setSequence(i + 1);
+            result.setType("NEW");
+            result.setOrder(order);
+            result.getTrades().add(trade);
+            result.getOrderUpdates().add(order);
+            result.getLevelChanges().add(new MatchResult.LevelChange(order.getSide(), order.getPrice(), quantity.negate()));
+            results[i] = result;
+        }
+    }
+
+    @Benchmark
+    public String orderEncode() throws Exception {
+        return objectMapper.writeValueAsString(orders[index++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public Order orderDecode() throws Exception {
+        return objectMapper.readValue(jsonValues[index++ & (SIZE - 1)], Order.class);
+    }
+
+    // 撮合結果中的訂單狀態由引擎訂單轉成 BigDecimal 欄位後編碼
+    @Benchmark
+    public String engineOrderEncode() throws Exception {
+        return objectMapper.writeValueAsString(engineOrders[index++ & (SIZE - 1)].toOrder());
+    }
+
+    @Benchmark
+    public String matchResultEncode() throws Exception {
+        return objectMapper.writeValueAsString(results[index++ & (SIZE - 1)]);
+    }
+}
@@ -0,0 +1,89 @@
+package com.matching.benchmark;
+
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import com.matching.producer.KlineUpdateProducer;
+import com.matching.producer.OrderBookDeltaProducer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 每筆成交送出的固定格式訊息（價位增量、K 線）的配置量，需搭配 -prof gc 看 gc.alloc.rate.norm：
+//   java -jar benchmarks/target/benchmarks.jar OutboundEncodingBenchmark -prof gc
+// legacy* 是原本 String.format / Map.of + ObjectMapper 再轉成 UTF-8 的做法，encode* 是 JsonBytesWriter 的編碼，應為 0 B/op
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutboundEncodingBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final String SYMBOL = "BTCUSDT";
+
+    private final long[] prices = new long[SIZE];
+    private final long[] quantities = new long[SIZE];
+    private final Order.Side[] sides = new Order.Side[SIZE];
+    private final BigDecimal[] tradePrices = new BigDecimal[SIZE];
+    private final long[] tradeTimes = new long[SIZE];
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            prices[i] = FixedPoint.ONE * 50_000 + random.nextInt(10_000) * (FixedPoint.ONE / 100);
+            quantities[i] = (random.nextInt(2_000_000) - 1_000_000) * (FixedPoint.ONE / 100_000);
+            sides[i] = random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL;
+            tradePrices[i] = FixedPoint.toBigDecimal(prices[i]);
+            tradeTimes[i] = 1_700_000_000L + i;
+        }
+    }
+
+    @Benchmark
+    public byte[] legacyDelta() {
+        int i = index++ & (SIZE - 1);
+        return String.format("{\"symbol\":\"%s\",\"sequence\":%d,\"side\":\"%s\",\"price\":\"%s\",\"unfilledQuantity\":\"%s\"}",
+                SYMBOL, (long) i, sides[i], FixedPoint.toPlainString(prices[i]), FixedPoint.toPlainString(quantities[i]))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeDelta() {
+        int i = index++ & (SIZE - 1);
+        return OrderBookDeltaProducer.encodeDelta(SYMBOL, i, sides[i], prices[i], quantities[i]);
+    }
+
+    @Benchmark
+    public byte[] legacyKline() throws JsonProcessingException {
+        int i = index++ & (SIZE - 1);
+        return objectMapper.writeValueAsString(Map.of(
+                "symbol", SYMBOL,
+                "price", tradePrices[i].toString(),
+                "tradeTime", tradeTimes[i]
+        )).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeKline() {
+        int i = index++ & (SIZE - 1);
+        return KlineUpdateProducer.encodeTrade(SYMBOL, prices[i], tradeTimes[i]);
+    }
+}
@@ -0,0 +1,137 @@
+package com.matching.benchmark;
+
+import com.matching.model.Order;
+import com.matching.model.Trade;
+import com.matching.repository.CustomTradeRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// CustomTradeRepositoryImpl 每秒寫入的列數（訂單 upsert + 成交 insert），以 MySQL 相容模式的記憶體 H2 代替 MySQL
+// 每次呼叫是一批 500 筆成交（1000 筆訂單 + 500 筆成交），與 MatchedOrderConsumer 一樣包在一個交易內；
+// chunkSize=1 等同原本每列一個語句；saveTrades 只寫成交（多列 INSERT）。
+// H2 在同一個行程內沒有網路往返，且 MySQL 模式的 ON DUPLICATE KEY UPDATE 每列成本很高，實際 MySQL 上語句數減少的效果更明顯
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PersistBenchmark {
+
+    private static final int FILLS = 500;
+    private static final int ROWS_PER_INVOCATION = FILLS * 3;
+    private static final List<Order> NO_ORDERS = List.of();
+
+    @Param({"1", "100", "500"})
+    public int chunkSize;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private CustomTradeRepositoryImpl repository;
+    private TransactionTemplate transactionTemplate;
+    private final List<Order> buyOrders = new ArrayList<>();
+    private final List<Order> sellOrders = new ArrayList<>();
+    private final List<Trade> trades = new ArrayList<>();
+    private long nextTradeId;
+
+    @Setup
+    public void setup() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:persist;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "", true);
+        dataSource.setDriverClassName("org.h2.Driver");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS orders");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS trades");
+        jdbcTemplate.execute("CREATE TABLE orders (id VARCHAR(32) PRIMARY KEY, user_id VARCHAR(32), symbol VARCHAR(16), " +
+                "price DECIMAL(30, 8), quantity DECIMAL(30, 8), filled_quantity DECIMAL(30, 8), unfilled_quantity DECIMAL(30, 8), " +
+                "side VARCHAR(8), order_type VARCHAR(16), status VARCHAR(32), stop_price DECIMAL(30, 8), take_profit_price DECIMAL(30, 8), " +
+                "created_at DATETIME(6), updated_at DATETIME(6), modified_at DATETIME(6))");
+        jdbcTemplate.execute("CREATE TABLE trades (id VARCHAR(32) PRIMARY KEY, symbol VARCHAR(16), price DECIMAL(30, 8), " +
+                "quantity DECIMAL(30, 8), buy_order_id VARCHAR(32), sell_order_id VARCHAR(32), trade_time DATETIME(6), " +
+                "direction VARCHAR(8), taker_order_id VARCHAR(32))");
+        repository = new CustomTradeRepositoryImpl(jdbcTemplate, chunkSize);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        // 訂單 ID 每次相同，第一次之後都走 ON DUPLICATE KEY UPDATE；成交 ID 每次不同
+        for (int i = 0; i < FILLS; i++) {
+            Order buy = order("B" + i, Order.Side.BUY);
+            Order sell = order("S" + i, Order.Side.SELL);
+            Trade trade = new Trade();
+            trade.setSymbol("BTCUSDT");
+            trade.setPrice(new BigDecimal("50000.5"));
+            trade.setQuantity(new BigDecimal("0.01"));
+            trade.setBuyOrder(buy);
+            trade.setSellOrder(sell);
+            trade.setDirection("buy");
+            trade.setTakerOrderId(buy.getId());
+            buyOrders.add(buy);
+            sellOrders.add(sell);
+            trades.add(trade);
+        }
+    }
+
+    // 避免成交表無限增長
+    @Setup(Level.Iteration)
+    public void truncate() {
+        jdbcTemplate.execute("TRUNCATE TABLE trades");
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS_PER_INVOCATION)
+    public void saveAllOrdersAndTrades() {
+        for (Trade trade : trades) {
+            trade.setId(Long.toString(nextTradeId++));
+        }
+        transactionTemplate.executeWithoutResult(status -> repository.saveAllOrdersAndTrades(buyOrders, sellOrders, trades));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILLS)
+    public void saveTrades() {
+        for (Trade trade : trades) {
+            trade.setId(Long.toString(nextTradeId++));
+        }
+        transactionTemplate.executeWithoutResult(status -> repository.saveAllOrdersAndTrades(NO_ORDERS, NO_ORDERS, trades));
+    }
+
+    private static Order order(String id, Order.Side side) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId("user-" + id);
+        order.setSymbol("BTCUSDT");
+        order.setSide(side);
+        order.setOrderType(Order.OrderType.LIMIT);
+        order.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
+        order.setPrice(new BigDecimal("50000.5"));
+        order.setQuantity(new BigDecimal("1"));
+        order.setFilledQuantity(new BigDecimal("0.01"));
+        order.setUnfilledQuantity(new BigDecimal("0.99"));
+        return order;
+    }
+}
@@ -0,0 +1,226 @@
+package com.matching.benchmark;
+
+import com.matching.config.SymbolConfig;
+import com.matching.dto.MatchResult;
+import com.matching.engine.EngineOrder;
+import com.matching.engine.OrderEventType;
+import com.matching.journal.JournalEntry;
+import com.matching.journal.SymbolJournal;
+import com.matching.metrics.StageLatencies;
+import com.matching.model.Order;
+import com.matching.orderbook.InMemoryOrderBook;
+import com.matching.orderbook.OrderBook;
+import com.matching.orderbook.OrderBookMode;
+import com.matching.orderbook.RedisOrderBookCodec;
+import com.matching.producer.MatchResultProducer;
+import com.matching.service.MatchBatch;
+import com.matching.service.NewOrderMatchingService;
+import com.matching.service.NewOrderbookService;
+import com.matching.utils.SnowflakeIdGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 以最快速度把錄下的訂單流重新送進 NewOrderMatchingService，量測不含 Kafka 與 Redis 的撮合吞吐量與每個事件的延遲
+// 輸入可以是 new_orders 的 JSON（每行一筆 Order）或日誌目錄 <journal.dir>/<交易對>；訂單簿只在記憶體中，撮合結果照常編碼後丟棄
+// 每一輪都從空的訂單簿開始，前 warmup 輪只用來預熱
+//
+// mvn -f benchmarks/pom.xml package
+// java -cp benchmarks/target/benchmarks.jar com.matching.benchmark.ReplayHarness <檔案或日誌目錄> [--batch 100] [--warmup 2] [--rounds 3] [--publish json|none]
+public class ReplayHarness {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final List<JournalEntry> events;
+    private final int batchSize;
+    private final boolean publish;
+    private final ObjectMapper objectMapper;
+
+    // 每一輪的狀態
+    private BatchMatchingBenchmark.DiscardingProducer producer;
+    private NewOrderMatchingService matchingService;
+    private final Map<String, MatchBatch> batches = new HashMap<>();
+
+    public ReplayHarness(List<JournalEntry> events, int batchSize, boolean publish, ObjectMapper objectMapper) {
+        this.events = events;
+        this.batchSize = batchSize;
+        this.publish = publish;
+        this.objectMapper = objectMapper;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplayHarness <orders.jsonl | journal/<symbol>> [--batch N] [--warmup N] [--rounds N] [--publish json|none]");
+            System.exit(2);
+        }
+        Path input = Path.of(args[0]);
+        int batchSize = 100;
+        int warmup = 2;
+        int rounds = 3;
+        boolean publish = true;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--batch" -> batchSize = Integer.parseInt(args[i + 1]);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--rounds" -> rounds = Integer.parseInt(args[i + 1]);
+                case "--publish" -> publish = !"none".equals(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        long started = System.nanoTime();
+        List<JournalEntry> events = Files.isDirectory(input) ? readJournal(input) : readJsonLines(input, objectMapper);
+        System.out.println("Loaded " + events.size() + " events from " + input + " in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        if (events.isEmpty()) {
+            return;
+        }
+
+        ReplayHarness harness = new ReplayHarness(events, batchSize, publish, objectMapper);
+        for (int i = 0; i < warmup; i++) {
+            harness.run().print("warmup " + (i + 1));
+        }
+        for (int i = 0; i < rounds; i++) {
+            harness.run().print("round " + (i + 1));
+        }
+    }
+
+    // 日誌保留了當時的引擎時間，重放結果與線上相同
+    static List<JournalEntry> readJournal(Path directory) throws IOException {
+        List<JournalEntry> events = new ArrayList<>();
+        SymbolJournal.read(directory.getParent() == null ? Path.of(".") : directory.getParent(),
+                directory.getFileName().toString(), 1, events::add);
+        return events;
+    }
+
+    // 沒有引擎時間，以訂單的建立時間代替（沒有時用讀取時的時間）
+    static List<JournalEntry> readJsonLines(Path file, ObjectMapper objectMapper) throws IOException {
+        List<JournalEntry> events = new ArrayList<>();
+        Instant now = Instant.now();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            long sequence = 1;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Order order = objectMapper.readValue(line, Order.class);
+                Instant time = order.getCreatedAt() == null ? now : order.getCreatedAt();
+                events.add(new JournalEntry(sequence++, OrderEventType.NEW, time, -1, -1,
+                        EngineOrder.fromOrder(order), null, null));
+            }
+        }
+        return events;
+    }
+
+    public Result run() throws Exception {
+        reset();
+        long[] latencies = new long[events.size()];
+        EngineOrder slot = new EngineOrder();
+        long orders = 0;
+        long fills = 0;
+        long rejected = 0;
+        long started = System.nanoTime();
+        for (int i = 0; i < latencies.length; i++) {
+            JournalEntry entry = events.get(i);
+            long eventStarted = System.nanoTime();
+            MatchBatch batch = batch(entry);
+            try {
+                switch (entry.type()) {
+                    // 與 ring buffer 槽位一樣重複使用，撮合會修改 taker
+                    case NEW -> {
+                        slot.copyFrom(entry.order());
+                        matchingService.handleNewOrder(slot, entry.time(), batch);
+                        orders++;
+                    }
+                    case CANCEL -> matchingService.handleCancel(entry.cancelRequest(), entry.time(), batch);
+                    case AMEND -> matchingService.handleAmend(entry.amendRequest(), entry.time(), batch);
+                }
+            } catch (Exception e) {
+                rejected++;
+            }
+            // 觸發寫出的事件延遲包含整批的寫出時間
+            if (batch.getEvents() >= batchSize) {
+                fills += flush(batch);
+            }
+            latencies[i] = System.nanoTime() - eventStarted;
+        }
+        for (MatchBatch batch : batches.values()) {
+            fills += flush(batch);
+        }
+        long elapsed = System.nanoTime() - started;
+        return new Result(latencies.length, orders, fills, rejected, elapsed, latencies);
+    }
+
+    private void reset() {
+        producer = new BatchMatchingBenchmark.DiscardingProducer();
+        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(() -> producer);
+        Map<String, InMemoryOrderBook> orderBooks = new HashMap<>();
+        NewOrderbookService orderbookService = new NewOrderbookService(null, new RedisOrderBookCodec(objectMapper), null,
+                OrderBookMode.MEMORY, 1, null) {
+            @Override
+            public OrderBook getOrderBook(String symbol) {
+                return orderBooks.computeIfAbsent(symbol, key -> new InMemoryOrderBook(key, null));
+            }
+        };
+        MatchResultProducer matchResultProducer = publish
+                ? new MatchResultProducer(kafkaTemplate, objectMapper)
+                : new MatchResultProducer(kafkaTemplate, objectMapper) {
+                    @Override
+                    public void send(MatchResult result) {
+                    }
+                };
+        matchingService = new NewOrderMatchingService(orderbookService, new SnowflakeIdGenerator(1, 1), matchResultProducer, new SymbolConfig(),
+                StageLatencies.disabled());
+        batches.clear();
+    }
+
+    private MatchBatch batch(JournalEntry entry) {
+        String symbol = switch (entry.type()) {
+            case NEW -> entry.order().getSymbol();
+            case CANCEL -> entry.cancelRequest().getSymbol();
+            case AMEND -> entry.amendRequest().getSymbol();
+        };
+        return batches.computeIfAbsent(symbol, MatchBatch::new);
+    }
+
+    private long flush(MatchBatch batch) throws Exception {
+        long fills = 0;
+        for (MatchResult result : batch.getResults()) {
+            fills += result.getTrades().size();
+        }
+        matchingService.flush(batch);
+        producer.clear();
+        return fills;
+    }
+
+    public record Result(long events, long orders, long fills, long rejected, long elapsedNanos, long[] latencies) {
+
+        void print(String label) {
+            double seconds = elapsedNanos / 1e9;
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            StringBuilder percentiles = new StringBuilder();
+            for (double percentile : PERCENTILES) {
+                int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1);
+                percentiles.append(" p").append(percentile % 1 == 0 ? String.valueOf((long) percentile) : String.valueOf(percentile))
+                        .append("=").append(sorted[Math.max(0, index)]);
+            }
+            System.out.printf("%s: %d events (%d orders, %d fills, %d rejected) in %.0f ms, %.0f orders/s, %.0f fills/s, %.0f events/s%n",
+                    label, events, orders, fills, rejected, elapsedNanos / 1e6, orders / seconds, fills / seconds, events / seconds);
+            System.out.println("  latency ns:" + percentiles + " max=" + sorted[sorted.length - 1]);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.matching.benchmark;
+
+import com.matching.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// 多執行緒共用一個產生器時每秒可發出的 ID 數：synchronized 版、CAS 逐筆，以及 CAS 一次預留 BLOCK_SIZE 筆（一次撮合的成交數）
+// clock=system 時受每毫秒 4096 個序號限制；clock=fast 讓每微秒都是新的一毫秒，只比較同步本身的成本
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnowflakeBenchmark {
+
+    private static final int BLOCK_SIZE = 8;
+
+    @Param({"system", "fast"})
+    private String clock;
+
+    private SynchronizedSnowflakeIdGenerator synchronizedGenerator;
+    private SnowflakeIdGenerator casGenerator;
+
+    @Setup
+    public void setup() {
+        long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        LongSupplier millis = clock.equals("fast") ? () -> startMillis + (System.nanoTime() - startNanos) / 1000 : System::currentTimeMillis;
+        synchronizedGenerator = new SynchronizedSnowflakeIdGenerator(1, 1, millis);
+        casGenerator = new SnowflakeIdGenerator(1, 1, millis);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long synchronized1() {
+        return synchronizedGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long synchronized4() {
+        return synchronizedGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long synchronized16() {
+        return synchronizedGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long cas1() {
+        return casGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long cas4() {
+        return casGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long cas16() {
+        return casGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(BLOCK_SIZE)
+    public void block1(Blackhole blackhole) {
+        reserveBlock(blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BLOCK_SIZE)
+    public void block4(Blackhole blackhole) {
+        reserveBlock(blackhole);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @OperationsPerInvocation(BLOCK_SIZE)
+    public void block16(Blackhole blackhole) {
+        reserveBlock(blackhole);
+    }
+
+    private void reserveBlock(Blackhole blackhole) {
+        SnowflakeIdGenerator.IdBlock block = casGenerator.reserve(BLOCK_SIZE);
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            blackhole.consume(block.nextId());
+        }
+    }
+}
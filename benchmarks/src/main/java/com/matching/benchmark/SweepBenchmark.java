@@ -0,0 +1,72 @@
+package com.matching.benchmark;
+
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 一筆限價買單一次吃光最前面 levels 個賣方價位（成交筆數 = levels * 每價位掛單數，見 setup 印出）
+// 被吃掉的掛單在每次呼叫前重新掛回，不計入量測時間
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class SweepBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int bookSize;
+
+    @Param({"1", "10", "100"})
+    private int levels;
+
+    private BookFixture book;
+    private EngineOrder taker;
+    private final EngineOrder slot = new EngineOrder();
+    private boolean swept;
+    private long nextId;
+
+    @Setup
+    public void setup() {
+        book = new BookFixture(bookSize);
+        levels = Math.min(levels, book.levels);
+        long quantity = FixedPoint.ONE * levels * book.ordersPerLevel;
+        taker = book.order(Order.Side.BUY, BookFixture.askPrice(levels - 1), quantity);
+        System.out.println("Fills per sweep: " + (long) levels * book.ordersPerLevel);
+    }
+
+    @Setup(Level.Invocation)
+    public void replenish() {
+        if (!swept) {
+            return;
+        }
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < book.ordersPerLevel; i++) {
+                book.orderBook.addOrder(book.order(Order.Side.SELL, BookFixture.askPrice(level), BookFixture.ORDER_QUANTITY));
+            }
+        }
+        swept = false;
+    }
+
+    @Benchmark
+    public void sweep() throws Exception {
+        slot.copyFrom(taker);
+        slot.setId("s" + nextId++);
+        book.handle(slot);
+        swept = true;
+    }
+}
@@ -0,0 +1,75 @@
+package com.matching.benchmark;
+
+import java.util.function.LongSupplier;
+
+// 改為 CAS 之前的 SnowflakeIdGenerator，作為比較基準；只多了可注入的時鐘
+public class SynchronizedSnowflakeIdGenerator {
+
+    private final long workerId;
+    private final long datacenterId;
+    private final long sequence = 0L;
+    private final long twepoch = 1288834974657L;
+
+    private final long workerIdBits = 5L;
+    private final long datacenterIdBits = 5L;
+    private final long maxWorkerId = -1L ^ (-1L << workerIdBits);
+    private final long maxDatacenterId = -1L ^ (-1L << datacenterIdBits);
+    private final long sequenceBits = 12L;
+
+    private final long workerIdShift = sequenceBits;
+    private final long datacenterIdShift = sequenceBits + workerIdBits;
+    private final long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
+    private final long sequenceMask = -1L ^ (-1L << sequenceBits);
+
+    private final LongSupplier clock;
+
+    private long lastTimestamp = -1L;
+    private long sequenceId = 0L;
+
+    public SynchronizedSnowflakeIdGenerator(long workerId, long datacenterId, LongSupplier clock) {
+        if (workerId > maxWorkerId || workerId < 0) {
+            throw new IllegalArgumentException(String.format("Worker ID can't be greater than %d or less than 0", maxWorkerId));
+        }
+        if (datacenterId > maxDatacenterId || datacenterId < 0) {
+            throw new IllegalArgumentException(String.format("Datacenter ID can't be greater than %d or less than 0", maxDatacenterId));
+        }
+        this.workerId = workerId;
+        this.datacenterId = datacenterId;
+        this.clock = clock;
+    }
+
+    public synchronized long nextId() {
+        long timestamp = timeGen();
+
+        if (timestamp < lastTimestamp) {
+            throw new RuntimeException("Clock moved backwards. Refusing to generate ID for " + (lastTimestamp - timestamp) + " milliseconds");
+        }
+
+        if (lastTimestamp == timestamp) {
+            sequenceId = (sequenceId + 1) & sequenceMask;
+            if (sequenceId == 0) {
+                timestamp = tilNextMillis(lastTimestamp);
+            }
+        } else {
+            sequenceId = 0L;
+        }
+
+        lastTimestamp = timestamp;
+        return ((timestamp - twepoch) << timestampLeftShift)
+                | (datacenterId << datacenterIdShift)
+                | (workerId << workerIdShift)
+                | sequenceId;
+    }
+
+    private long tilNextMillis(long lastTimestamp) {
+        long timestamp = timeGen();
+        while (timestamp <= lastTimestamp) {
+            timestamp = timeGen();
+        }
+        return timestamp;
+    }
+
+    private long timeGen() {
+        return clock.getAsLong();
+    }
+}
@@ -1,15 +1,45 @@
 package com.matching.config;
 
 import com.matching.utils.SnowflakeIdGenerator;
+import com.matching.utils.WorkerIdLease;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Clock;
 
 @Configuration
 public class AppConfig {
 
+    // 撮合事件的時間來源，寫入日誌後重放時改用記錄的時間
+    @Bean
+    public Clock clock() {
+        return Clock.systemUTC();
+    }
+
+    // 預設從 Redis 租用 workerId / datacenterId，多個撮合實例不會產生相同的成交 ID
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "matching.snowflake.lease.enabled", havingValue = "true", matchIfMissing = true)
+    public WorkerIdLease workerIdLease(RedisTemplate<String, Object> redisTemplate,
+                                       @Value("${matching.snowflake.lease.ttl-ms:10000}") long ttlMillis) {
+        return new WorkerIdLease(redisTemplate, ttlMillis);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "matching.snowflake.lease.enabled", havingValue = "true", matchIfMissing = true)
+    public SnowflakeIdGenerator snowflakeIdGenerator(WorkerIdLease workerIdLease,
+                                                     @Value("${matching.snowflake.datacenter-id:-1}") long datacenterId) {
+        return workerIdLease.acquire(datacenterId);
+    }
+
+    // 只跑單一實例時可關閉租用，直接指定
     @Bean
-    public SnowflakeIdGenerator snowflakeIdGenerator() {
-        return new SnowflakeIdGenerator(1, 1); // 需要根據實際情況設置 workerId 和 datacenterId
+    @ConditionalOnProperty(name = "matching.snowflake.lease.enabled", havingValue = "false")
+    public SnowflakeIdGenerator fixedSnowflakeIdGenerator(@Value("${matching.snowflake.worker-id:1}") long workerId,
+                                                          @Value("${matching.snowflake.datacenter-id:1}") long datacenterId) {
+        return new SnowflakeIdGenerator(workerId, datacenterId);
     }
 
 }
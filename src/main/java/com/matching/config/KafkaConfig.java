@@ -1,17 +1,41 @@
 package com.matching.config;
 
+import com.matching.consumer.OrderEventOffsets;
+import com.matching.engine.OrderDispatcher;
+import com.matching.producer.MatchResultProducer;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.RangeAssignor;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.ByteBufferDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @EnableKafka
 @Configuration
@@ -21,6 +45,63 @@ public class KafkaConfig {
     @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
     private String bootstrapServers;
 
+    // 訂單事件與撮合結果 topic 的分區數，也是監聽的執行緒數
+    @Value("${matching.kafka.partitions:1}")
+    private int partitions;
+
+    @Value("${matching.kafka.max-poll-records:10}")
+    private int maxPollRecords;
+
+    // 沒有新的訂單事件時，每隔多久提交一次已撮合並寫出的 offset
+    @Value("${matching.kafka.idle-commit-ms:1000}")
+    private long idleCommitMillis;
+
+    @Value("${kafka.snapshots.topic:order-book-snapshots}")
+    private String snapshotTopic;
+
+    @Bean
+    public NewTopic newOrdersTopic() {
+        return TopicBuilder.name("new_orders").partitions(partitions).build();
+    }
+
+    @Bean
+    public NewTopic cancelOrdersTopic() {
+        return TopicBuilder.name("cancel_orders").partitions(partitions).build();
+    }
+
+    @Bean
+    public NewTopic amendOrdersTopic() {
+        return TopicBuilder.name("amend_orders").partitions(partitions).build();
+    }
+
+    @Bean
+    public NewTopic matchResultsTopic() {
+        return TopicBuilder.name(MatchResultProducer.TOPIC).partitions(partitions).build();
+    }
+
+    // 深度快照以交易對為 key，壓縮後只保留各交易對最新的一份
+    @Bean
+    public NewTopic orderBookSnapshotsTopic() {
+        return TopicBuilder.name(snapshotTopic).partitions(partitions).compact().build();
+    }
+
+    // 宣告任何 KafkaTemplate 後 Spring Boot 就不再自動建立，字串與 byte[] 兩個都在這裡建立，共用 spring.kafka.producer.* 的設定
+    @Bean
+    public KafkaTemplate<String, String> kafkaTemplate(ProducerFactory<Object, Object> producerFactory) {
+        return new KafkaTemplate<>(cast(producerFactory));
+    }
+
+    // 固定格式的訊息（價位增量、K 線）已自行編碼成 byte[]，以 ByteArraySerializer 原樣送出，使用另一個 producer
+    @Bean
+    public KafkaTemplate<String, byte[]> byteArrayKafkaTemplate(ProducerFactory<Object, Object> producerFactory) {
+        return new KafkaTemplate<>(cast(producerFactory), Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> ProducerFactory<K, V> cast(ProducerFactory<Object, Object> producerFactory) {
+        return (ProducerFactory<K, V>) (ProducerFactory<?, ?>) producerFactory;
+    }
+
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, String> batchFactory(
             ConsumerFactory<String, String> consumerFactory) {
@@ -28,17 +109,73 @@ public class KafkaConfig {
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
         factory.setBatchListener(true); // 設置為批量處理
+        factory.setConcurrency(partitions);
+        // 撮合結果展開失敗時整批每秒重試，不提交 offset 跳過，避免舊有 topic 漏掉整批結果
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(1000L, FixedBackOff.UNLIMITED_ATTEMPTS)));
+        return factory;
+    }
+
+    // 訂單事件以 ByteBuffer 取值：二進位訂單直接從拉取到的緩衝區解碼，不另外複製成 byte[] 或 String
+    // 三個 topic 由同一個監聽訂閱，RangeAssignor 讓分區數相同的 topic 中相同編號的分區分給同一個執行緒，
+    // 交易對的新單、撤單與改單都由擁有該分區的執行緒送進撮合執行緒；分區被收回時先停下對應交易對的撮合執行緒
+    // offset 由 OrderConsumer 依撮合執行緒寫出的進度手動提交，分區被收回時等撮合執行緒停下、訂單簿釋放後同步提交
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ByteBuffer> orderEventBatchFactory(@Lazy OrderDispatcher orderDispatcher,
+                                                                                             OrderEventOffsets orderEventOffsets) {
+        Map<String, Object> config = consumerConfig();
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteBufferDeserializer.class);
+        config.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, RangeAssignor.class.getName());
+        ConcurrentKafkaListenerContainerFactory<String, ByteBuffer> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(config));
+        factory.setBatchListener(true);
+        factory.setConcurrency(partitions);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        // 監聽只在撮合執行緒暫時無法接收事件時拋出例外，整批每秒重試直到成功，不跳過任何事件
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(1000L, FixedBackOff.UNLIMITED_ATTEMPTS)));
+        factory.getContainerProperties().setIdleEventInterval(idleCommitMillis);
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+            // 訂單簿未能完整釋放時 release 拋出例外，不提交 offset，交給新的擁有者重新消費
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+                Set<Integer> revokedPartitions = revoked.stream().map(TopicPartition::partition).collect(Collectors.toSet());
+                try {
+                    orderDispatcher.release(revokedPartitions);
+                    Map<TopicPartition, OffsetAndMetadata> offsets = orderEventOffsets.committable(revoked);
+                    if (!offsets.isEmpty()) {
+                        consumer.commitSync(offsets);
+                    }
+                } finally {
+                    orderEventOffsets.forget(revoked);
+                }
+            }
+
+            // 記下已提交的 offset，撮合執行緒從日誌重建時據此判斷日誌是否落後；查不到時不限制
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> assigned) {
+                try {
+                    orderEventOffsets.assigned(consumer.committed(new HashSet<>(assigned)));
+                } catch (Exception e) {
+                    System.err.println("Warning: Failed to read committed offsets of " + assigned);
+                    e.printStackTrace();
+                }
+            }
+        });
         return factory;
     }
 
     @Bean
     public ConsumerFactory<String, String> consumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(consumerConfig());
+    }
+
+    private Map<String, Object> consumerConfig() {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);  // 使用環境變數
         config.put(ConsumerConfig.GROUP_ID_CONFIG, "order_group");
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 10);  // 每次最多拉取 10 條消息
-        return new DefaultKafkaConsumerFactory<>(config);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);  // 每次最多拉取的消息數
+        return config;
     }
 }
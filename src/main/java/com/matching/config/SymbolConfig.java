@@ -0,0 +1,46 @@
+package com.matching.config;
+
+import com.matching.engine.FixedPoint;
+import com.matching.engine.SymbolSpec;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 讀取 matching.symbols.<SYMBOL>.tick-size / lot-size
+@Configuration
+@ConfigurationProperties(prefix = "matching")
+public class SymbolConfig {
+
+    @Getter
+    @Setter
+    private Map<String, Symbol> symbols = new HashMap<>();
+
+    private final Map<String, SymbolSpec> specs = new ConcurrentHashMap<>();
+
+    @Data
+    public static class Symbol {
+        private BigDecimal tickSize;
+        private BigDecimal lotSize;
+    }
+
+    public SymbolSpec getSpec(String symbol) {
+        return specs.computeIfAbsent(symbol, this::createSpec);
+    }
+
+    private SymbolSpec createSpec(String symbol) {
+        Symbol symbolConfig = symbols.get(symbol);
+        if (symbolConfig == null) {
+            return SymbolSpec.defaultSpec(symbol);
+        }
+        long tickSize = symbolConfig.getTickSize() != null ? FixedPoint.toScaled(symbolConfig.getTickSize()) : 1;
+        long lotSize = symbolConfig.getLotSize() != null ? FixedPoint.toScaled(symbolConfig.getLotSize()) : 1;
+        return new SymbolSpec(symbol, tickSize, lotSize);
+    }
+}
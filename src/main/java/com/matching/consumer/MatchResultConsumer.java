@@ -0,0 +1,48 @@
+package com.matching.consumer;
+
+import com.matching.dto.MatchResult;
+import com.matching.producer.MatchResultProducer;
+import com.matching.service.MatchResultFanout;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class MatchResultConsumer {
+
+    private final ObjectMapper objectMapper;
+    private final MatchResultFanout matchResultFanout;
+
+    public MatchResultConsumer(ObjectMapper objectMapper, MatchResultFanout matchResultFanout) {
+        this.objectMapper = objectMapper;
+        this.matchResultFanout = matchResultFanout;
+    }
+
+    // 在撮合執行緒之外把撮合結果展開成舊有的 topic，固定的 groupId 讓每筆結果只展開一次
+    // 展開失敗時拋出例外，不提交這批 offset，由 batchFactory 的錯誤處理整批重試；重試可能重複送出部分舊 topic 的訊息
+    @KafkaListener(topics = MatchResultProducer.TOPIC, groupId = "match_result_fanout", containerFactory = "batchFactory")
+    public void consumeMatchResults(List<String> resultJsonList) throws JsonProcessingException {
+        List<MatchResult> results = new ArrayList<>(resultJsonList.size());
+        for (String resultJson : resultJsonList) {
+            try {
+                results.add(objectMapper.readValue(resultJson, MatchResult.class));
+            } catch (Exception e) {
+                System.err.println("Error: Failed to parse match result: " + resultJson);
+                e.printStackTrace();
+            }
+        }
+
+        try {
+            matchResultFanout.publish(results);
+        } catch (JsonProcessingException | RuntimeException e) {
+            MatchResult first = results.isEmpty() ? null : results.get(0);
+            System.err.println("Error: Failed to fan out " + results.size() + " match results"
+                    + (first == null ? "" : " starting at " + first.getSymbol() + " sequence " + first.getSequence()) + ", retrying the batch");
+            throw e;
+        }
+    }
+}
@@ -2,55 +2,99 @@ package com.matching.consumer;
 
 import com.matching.dto.MatchedMessage;
 import com.matching.dto.TradeOrdersMessage;
+import com.matching.metrics.LatencyStage;
+import com.matching.metrics.StageLatencies;
 import com.matching.model.Order;
 import com.matching.model.Trade;
 import com.matching.repository.CustomTradeRepositoryImpl;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.util.*;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// 監聽執行緒只把成交放進無鎖的暫存佇列，由專用的 matched-order-flusher 執行緒批次寫入 MySQL
+// 目標批次大小 = 到達速率 × 一次寫入的耗時（皆為指數移動平均），即一次寫入期間預期會到達的成交數，介於 1 與 max-batch-size 之間；
+// 低負載時逐筆寫出，負載升高時每次往返寫入更多筆。未達目標時最多等待 max-linger-ms
 @Service
-@EnableScheduling
 public class MatchedOrderConsumer {
 
+    // 指數移動平均的權重
+    private static final double SMOOTHING = 0.2;
+
     private final ObjectMapper objectMapper;
     private final CustomTradeRepositoryImpl customTradeRepository;
-    private final Map<String, List<TradeOrdersMessage>> orderMessageBatch = new HashMap<>();
-    private static final int BATCH_SIZE = 10;
-    private volatile boolean hasPendingOrders = false;
-
-    public MatchedOrderConsumer(ObjectMapper objectMapper, CustomTradeRepositoryImpl customTradeRepository) {
+    private final StageLatencies stageLatencies;
+    private final MeterRegistry meterRegistry;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final ConcurrentLinkedQueue<TradeOrdersMessage> staging = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() 需要走訪整個佇列，另外計數
+    private final AtomicInteger staged = new AtomicInteger();
+    private final AtomicLong received = new AtomicLong();
+    private volatile int targetBatchSize = 1;
+
+    // 以下只由寫入執行緒使用
+    private double arrivalsPerNano;
+    private double flushNanos;
+    private long lastReceived;
+    private long lastSampleNanos;
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    public MatchedOrderConsumer(ObjectMapper objectMapper,
+                                CustomTradeRepositoryImpl customTradeRepository,
+                                StageLatencies stageLatencies,
+                                MeterRegistry meterRegistry,
+                                @Value("${matching.persist.max-batch-size:500}") int maxBatchSize,
+                                @Value("${matching.persist.max-linger-ms:50}") long maxLingerMillis) {
         this.objectMapper = objectMapper;
         this.customTradeRepository = customTradeRepository;
+        this.stageLatencies = stageLatencies;
+        this.meterRegistry = meterRegistry;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
     }
 
-    // 定時任務，每隔1秒檢查一次是否有未持久化的數據
-    @Scheduled(fixedDelay = 1000)
-    public void checkAndPersistBatch() {
-        List<TradeOrdersMessage> batchToProcess;
-        // 鎖定 orderMessageBatch 以保證一致性
-        synchronized (orderMessageBatch) {
-            // 只有當有未處理訂單時才檢查
-            if (hasPendingOrders) {
-                // 取得批次，並清空 orderMessageBatch 中的 "batch"
-                batchToProcess = new ArrayList<>(orderMessageBatch.getOrDefault("batch", new ArrayList<>()));
-                orderMessageBatch.remove("batch");
-                hasPendingOrders = false; // 標誌處理完成
-            } else {
-                // 如果沒有未處理的訂單則返回
-                return;
-            }
+    @PostConstruct
+    public void start() {
+        Gauge.builder("matching.persist.staged", staged, AtomicInteger::get)
+                .description("Matched trades waiting to be persisted")
+                .register(meterRegistry);
+        Gauge.builder("matching.persist.batch.target", this, consumer -> consumer.targetBatchSize)
+                .description("Adaptive target batch size for persisting matched trades")
+                .register(meterRegistry);
+        running = true;
+        lastSampleNanos = System.nanoTime();
+        flusher = new Thread(this::run, "matched-order-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(5000);
+        // 關閉前把剩餘的成交寫完
+        List<TradeOrdersMessage> remaining = new ArrayList<>();
+        while (drain(remaining) > 0) {
+            persist(remaining);
+            remaining.clear();
         }
-        // 處理批次訂單
-        processOrderBatch(batchToProcess);
     }
 
-    @Transactional
     @KafkaListener(
             topics = "matched_orders",
             groupId = "#{T(java.util.UUID).randomUUID().toString()}",  // 動態生成唯一的 groupId
@@ -64,21 +108,7 @@ public class MatchedOrderConsumer {
             if ("TRADE_ORDER".equals(matchedMessage.getType())) {
                 // 反序列化 TradeOrdersMessage
                 TradeOrdersMessage tradeOrdersMessage = objectMapper.readValue(matchedMessage.getData(), TradeOrdersMessage.class);
-
-                synchronized (orderMessageBatch) {
-                    // 累積消息到批次列表
-                    orderMessageBatch.computeIfAbsent("batch", k -> new ArrayList<>()).add(tradeOrdersMessage);
-                    hasPendingOrders = true; // 標誌有新的消息需要處理
-
-                    // 當累積到一定批次時，批量處理
-                    if (orderMessageBatch.get("batch").size() >= BATCH_SIZE) {
-                        List<TradeOrdersMessage> batchToProcess = new ArrayList<>(orderMessageBatch.get("batch"));
-                        orderMessageBatch.remove("batch");
-                        hasPendingOrders = false; // 標誌處理完成
-                        // 在同步塊之外處理批次
-                        processOrderBatch(batchToProcess);
-                    }
-                }
+                stage(tradeOrdersMessage);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -86,7 +116,74 @@ public class MatchedOrderConsumer {
         }
     }
 
-    private void processOrderBatch(List<TradeOrdersMessage> messages) {
+    // 佇列由空變為非空時喚醒寫入執行緒開始計算等待時間，達到目標批次大小時喚醒寫入
+    private void stage(TradeOrdersMessage message) {
+        staging.offer(message);
+        received.incrementAndGet();
+        int count = staged.incrementAndGet();
+        if (count == 1 || count == targetBatchSize) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private void run() {
+        List<TradeOrdersMessage> batch = new ArrayList<>(maxBatchSize);
+        // 目前最早一筆未寫入成交的（近似）到達時間，0 表示佇列為空
+        long oldestNanos = 0;
+        while (running) {
+            int count = staged.get();
+            if (count == 0) {
+                oldestNanos = 0;
+                LockSupport.parkNanos(this, maxLingerNanos);
+                continue;
+            }
+            long now = System.nanoTime();
+            if (oldestNanos == 0) {
+                oldestNanos = now;
+            }
+            long waited = now - oldestNanos;
+            if (count < targetBatchSize && waited < maxLingerNanos) {
+                LockSupport.parkNanos(this, maxLingerNanos - waited);
+                continue;
+            }
+            drain(batch);
+            long started = System.nanoTime();
+            try {
+                persist(batch);
+            } catch (Exception e) {
+                System.err.println("Error: Failed to persist " + batch.size() + " matched trades");
+                e.printStackTrace();
+            }
+            long finished = System.nanoTime();
+            adapt(finished - started, finished);
+            // 寫入期間到達的成交從寫入開始時算起
+            oldestNanos = staged.get() > 0 ? started : 0;
+            batch.clear();
+        }
+    }
+
+    private int drain(List<TradeOrdersMessage> batch) {
+        TradeOrdersMessage message;
+        while (batch.size() < maxBatchSize && (message = staging.poll()) != null) {
+            batch.add(message);
+        }
+        staged.addAndGet(-batch.size());
+        return batch.size();
+    }
+
+    // 依這次寫入的耗時與上次取樣後的到達速率更新目標批次大小
+    private void adapt(long elapsedNanos, long now) {
+        long total = received.get();
+        long interval = Math.max(1, now - lastSampleNanos);
+        double rate = (double) (total - lastReceived) / interval;
+        lastReceived = total;
+        lastSampleNanos = now;
+        arrivalsPerNano = arrivalsPerNano == 0 ? rate : arrivalsPerNano + SMOOTHING * (rate - arrivalsPerNano);
+        flushNanos = flushNanos == 0 ? elapsedNanos : flushNanos + SMOOTHING * (elapsedNanos - flushNanos);
+        targetBatchSize = (int) Math.max(1, Math.min(maxBatchSize, Math.round(arrivalsPerNano * flushNanos)));
+    }
+
+    private void persist(List<TradeOrdersMessage> messages) {
         Map<String, Order> buyOrderMap = new HashMap<>(); // 用於累積 buyOrders
         Map<String, Order> sellOrderMap = new HashMap<>(); // 用於累積 sellOrders
         List<Trade> trades = new ArrayList<>();
@@ -107,7 +204,9 @@ public class MatchedOrderConsumer {
         List<Order> sellOrders = new ArrayList<>(sellOrderMap.values());
 
         // 將訂單和交易保存到數據庫
+        long started = System.nanoTime();
         customTradeRepository.saveAllOrdersAndTrades(buyOrders, sellOrders, trades);
+        stageLatencies.record(LatencyStage.PERSIST, StageLatencies.ALL_SYMBOLS, System.nanoTime() - started);
     }
 
 
@@ -1,39 +1,187 @@
 package com.matching.consumer;
 
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import com.matching.engine.OrderDispatcher;
+import com.matching.engine.OrderWireFormat;
+import com.matching.engine.SymbolMatcher;
+import com.matching.metrics.LatencyStage;
+import com.matching.metrics.StageLatencies;
 import com.matching.model.Order;
-import com.matching.service.NewOrderMatchingService;
+import com.matching.utils.SnowflakeIdGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class OrderConsumer {
 
     private final ObjectMapper objectMapper;
-    private final NewOrderMatchingService newMatchingService;
+    private final OrderDispatcher orderDispatcher;
+    private final boolean requireSymbolKey;
+    private final StageLatencies stageLatencies;
+    private final OrderEventOffsets orderEventOffsets;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
 
     public OrderConsumer(
             ObjectMapper objectMapper,
-            @Lazy NewOrderMatchingService newMatchingService) {
+            @Lazy OrderDispatcher orderDispatcher,
+            @Value("${matching.kafka.require-symbol-key:true}") boolean requireSymbolKey,
+            StageLatencies stageLatencies,
+            OrderEventOffsets orderEventOffsets,
+            SnowflakeIdGenerator snowflakeIdGenerator) {
         this.objectMapper = objectMapper;
-        this.newMatchingService = newMatchingService;
+        this.orderDispatcher = orderDispatcher;
+        this.requireSymbolKey = requireSymbolKey;
+        this.stageLatencies = stageLatencies;
+        this.orderEventOffsets = orderEventOffsets;
+        this.snowflakeIdGenerator = snowflakeIdGenerator;
     }
 
-    // 批量消費新訂單
-    @KafkaListener(topics = "new_orders", groupId = "order_group", containerFactory = "batchFactory")
-    public void consumeNewOrders(List<String> orderJsonList) {
-        for (String orderJson : orderJsonList) {
+    // 批量消費新單、撤單與改單：三個 topic 都以交易對為 key，同一交易對的事件只會由擁有該分區的執行緒送進撮合執行緒
+    // 新單的二進位格式直接解碼到撮合執行緒的槽位，其他內容當作 JSON 解析
+    // 解碼延遲量測每筆事件從解析到發布進 ring buffer 的時間（含等待空槽位）
+    // offset 手動提交：每次拉取先提交先前已撮合並寫出的部分，尚在 ring buffer 中的事件不提交，當機後會重新消費
+    // 失去 Snowflake 租約時撮合執行緒暫停，這裡整批交給錯誤處理在退避後重試，不再把事件送進 ring buffer
+    @KafkaListener(topics = {"new_orders", "cancel_orders", "amend_orders"}, groupId = "order_group", containerFactory = "orderEventBatchFactory")
+    public void consumeOrderEvents(List<ConsumerRecord<String, ByteBuffer>> records, Consumer<?, ?> consumer) {
+        commitFlushed(consumer, consumer.assignment());
+        if (!snowflakeIdGenerator.isLeased()) {
+            throw new IllegalStateException("Snowflake worker " + snowflakeIdGenerator.getDatacenterId() + ":"
+                    + snowflakeIdGenerator.getWorkerId() + " is not leased, pausing order consumption");
+        }
+        TopicPartition partition = null;
+        Set<SymbolMatcher> matchers = null;
+        long nextOffset = -1;
+        for (ConsumerRecord<String, ByteBuffer> record : records) {
+            // 拉取到的記錄依分區分組，換分區時記下前一個分區的進度
+            if (partition == null || partition.partition() != record.partition() || !partition.topic().equals(record.topic())) {
+                if (partition != null) {
+                    orderEventOffsets.track(partition, nextOffset, matchers);
+                }
+                partition = new TopicPartition(record.topic(), record.partition());
+                matchers = Collections.newSetFromMap(new IdentityHashMap<>());
+            }
+            nextOffset = record.offset() + 1;
             try {
-                // 將每筆 JSON 訂單轉換為 Order 對象
-                Order order = objectMapper.readValue(orderJson, Order.class);
-                newMatchingService.handleNewOrder(order);
+                long started = System.nanoTime();
+                SymbolMatcher matcher = switch (record.topic()) {
+                    case "new_orders" -> consumeNewOrder(record);
+                    case "cancel_orders" -> {
+                        CancelOrderRequest request = readValue(record.value(), CancelOrderRequest.class);
+                        if (checkKey(record, request.getSymbol())) {
+                            yield orderDispatcher.dispatchCancel(request, record.partition(), record.offset());
+                        }
+                        yield null;
+                    }
+                    case "amend_orders" -> {
+                        AmendOrderRequest request = readValue(record.value(), AmendOrderRequest.class);
+                        if (checkKey(record, request.getSymbol())) {
+                            yield orderDispatcher.dispatchAmend(request, record.partition(), record.offset());
+                        }
+                        yield null;
+                    }
+                    default -> {
+                        System.err.println("Warning: Unexpected topic " + record.topic());
+                        yield null;
+                    }
+                };
+                // 被拒絕的事件不記錄，避免任意的交易對產生指標
+                if (matcher != null) {
+                    stageLatencies.record(LatencyStage.DECODE, matcher.getSymbol(), System.nanoTime() - started);
+                    matchers.add(matcher);
+                }
 
+            } catch (IllegalStateException e) {
+                // 交易對的撮合執行緒暫時無法接收事件（前一個撮合執行緒尚未結束），整批交給錯誤處理重試，
+                // 已發布的事件重送時由撮合執行緒依 offset 略過
+                throw e;
             } catch (Exception e) {
+                System.err.println("Error: Failed to consume record on " + record.topic() + "-" + record.partition() + " at offset " + record.offset());
+                e.printStackTrace();
+            }
+        }
+        if (partition != null) {
+            orderEventOffsets.track(partition, nextOffset, matchers);
+        }
+    }
+
+    // 沒有新事件時也提交已寫出的 offset（由 orderEventBatchFactory 的 idle 事件在消費者執行緒觸發）
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        commitFlushed(event.getConsumer(), event.getTopicPartitions());
+    }
+
+    private void commitFlushed(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = orderEventOffsets.committable(partitions);
+        if (offsets.isEmpty()) {
+            return;
+        }
+        consumer.commitAsync(offsets, (committed, e) -> {
+            if (e != null) {
+                System.err.println("Warning: Failed to commit order event offsets " + committed);
                 e.printStackTrace();
             }
+        });
+    }
+
+    // 回傳訂單分派到的撮合執行緒，被拒絕時回傳 null
+    private SymbolMatcher consumeNewOrder(ConsumerRecord<String, ByteBuffer> record) throws IOException {
+        ByteBuffer value = record.value();
+        if (OrderWireFormat.isBinary(value)) {
+            String symbol = OrderWireFormat.symbol(value);
+            if (checkKey(record, symbol)) {
+                return orderDispatcher.dispatch(value, symbol, record.partition(), record.offset());
+            }
+            return null;
         }
+        // 將 JSON 訂單轉換為 Order 對象
+        Order order = readValue(value, Order.class);
+        if (checkKey(record, order.getSymbol())) {
+            return orderDispatcher.dispatch(order, record.partition(), record.offset());
+        }
+        return null;
+    }
+
+    // key 決定分區，與內容的交易對不一致時，同一交易對的事件可能分散到不同分區而失去順序
+    private boolean checkKey(ConsumerRecord<String, ByteBuffer> record, String symbol) {
+        if (record.key() == null) {
+            if (requireSymbolKey) {
+                System.err.println("Error: Rejected unkeyed record on " + record.topic() + "-" + record.partition()
+                        + " at offset " + record.offset() + ", symbol " + symbol);
+                return false;
+            }
+            return true;
+        }
+        if (!record.key().equals(symbol)) {
+            System.err.println("Error: Rejected record on " + record.topic() + "-" + record.partition()
+                    + " at offset " + record.offset() + ": key " + record.key() + " does not match symbol " + symbol);
+            return false;
+        }
+        return true;
+    }
+
+    private <T> T readValue(ByteBuffer value, Class<T> type) throws IOException {
+        return value.hasArray()
+                ? objectMapper.readValue(value.array(), value.arrayOffset() + value.position(), value.remaining(), type)
+                : objectMapper.readValue(StandardCharsets.UTF_8.decode(value.duplicate()).toString(), type);
     }
 }
@@ -0,0 +1,92 @@
+package com.matching.consumer;
+
+import com.matching.engine.SymbolMatcher;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 訂單事件可提交的 offset：發布到 ring buffer 不代表已撮合，每次拉取記下各分區的下一個 offset 與事件所在撮合執行緒當時的序號，
+// 等這些撮合執行緒都寫出到該序號後才能提交。每個分區只由擁有它的消費者執行緒存取
+// 另外記下分區被指派時消費群組已提交的 offset，從日誌重建時用來判斷日誌是否落後
+@Component
+public class OrderEventOffsets {
+
+    // 依 OrderEventType 序數
+    private static final List<String> TOPICS = List.of("new_orders", "cancel_orders", "amend_orders");
+
+    private record Pending(long nextOffset, SymbolMatcher[] matchers, long[] sequences) {
+
+        boolean isFlushed() {
+            for (int i = 0; i < matchers.length; i++) {
+                if (matchers[i].getFlushedSequence() < sequences[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final Map<TopicPartition, Deque<Pending>> pending = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> committed = new ConcurrentHashMap<>();
+
+    // 一次拉取中該分區最後一筆記錄之後的 offset，matchers 是這些記錄分派到的撮合執行緒（被拒絕的記錄沒有）
+    public void track(TopicPartition partition, long nextOffset, Collection<SymbolMatcher> matchers) {
+        SymbolMatcher[] touched = matchers.toArray(new SymbolMatcher[0]);
+        long[] sequences = new long[touched.length];
+        for (int i = 0; i < touched.length; i++) {
+            sequences[i] = touched[i].getPublishedSequence();
+        }
+        pending.computeIfAbsent(partition, key -> new ArrayDeque<>()).add(new Pending(nextOffset, touched, sequences));
+    }
+
+    // 取出這些分區中事件都已寫出的最大 offset，沒有新進度的分區不包含在內
+    public Map<TopicPartition, OffsetAndMetadata> committable(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            Deque<Pending> queue = pending.get(partition);
+            if (queue == null) {
+                continue;
+            }
+            long nextOffset = -1;
+            while (!queue.isEmpty() && queue.peek().isFlushed()) {
+                nextOffset = queue.poll().nextOffset();
+            }
+            if (nextOffset >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(nextOffset));
+            }
+        }
+        return offsets;
+    }
+
+    // 分區被收回後，尚未寫出的事件交給新的擁有者重新消費
+    public void forget(Collection<TopicPartition> partitions) {
+        partitions.forEach(pending::remove);
+        partitions.forEach(committed::remove);
+    }
+
+    // 分區被指派時由消費者執行緒呼叫，offsets 是 Consumer.committed 的結果（沒有提交過的分區值為 null）
+    public void assigned(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.forEach((partition, offset) -> {
+            if (offset != null) {
+                committed.put(partition, offset.offset());
+            }
+        });
+    }
+
+    // 各事件種類在該分區已提交的最後一筆 offset（下一筆要消費的位置 - 1），不知道時為 -1
+    public long[] committed(int partition) {
+        long[] offsets = new long[TOPICS.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = committed.getOrDefault(new TopicPartition(TOPICS.get(i), partition), 0L) - 1;
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,21 @@
+package com.matching.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+// amend_orders 的改單請求，price 或 quantity 為 null 時維持原值；quantity 為新的原始下單數量（含已成交部分）
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class AmendOrderRequest {
+    private String orderId;
+    private String userId;
+    private String symbol;
+    private BigDecimal price;
+    private BigDecimal quantity;
+}
@@ -0,0 +1,17 @@
+package com.matching.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// cancel_orders 的撤單請求
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CancelOrderRequest {
+    private String orderId;
+    private String userId;
+    private String symbol;
+}
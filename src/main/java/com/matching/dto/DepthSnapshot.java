@@ -0,0 +1,39 @@
+package com.matching.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// 訂單簿依價位彙總的前 N 檔（L2），由撮合執行緒定期產生，經 match-results 依序送到壓縮的快照 topic（key 為交易對）
+// sequence 與撮合結果共用序號：快照已包含序號 <= sequence 的所有變化，重新同步時只需套用序號更大的增量
+// DepthConflator 也以同樣的格式送出有變動價位的絕對數量（0 表示價位已清空）
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class DepthSnapshot {
+    private String symbol;
+    private long sequence;
+    // 合併後的價位更新沒有引擎時間
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant time;
+    // 由最佳價格開始
+    private List<Level> bids = new ArrayList<>();
+    private List<Level> asks = new ArrayList<>();
+
+    // 價位的未成交數量合計
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Level {
+        private String price;
+        private String quantity;
+    }
+}
@@ -0,0 +1,48 @@
+package com.matching.dto;
+
+import com.matching.model.Order;
+import com.matching.model.Trade;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+// match-results 的撮合結果：每個處理過的新單、撤單或改單一筆，包含該筆訂單的最終狀態、所有成交、
+// 依序的訂單更新與價位淨變化；舊有的 recent-trades、kline-updates 等 topic 由 MatchResultFanout 從這裡推導
+// sequence 在每個交易對內遞增，撮合執行緒重啟或換手後跳到更大的值（中間有空號），之後的第一次寫出會附上深度快照
+// 撮合執行緒定期插入的深度快照也佔用一個序號，type 為 SNAPSHOT，只帶有 snapshot
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class MatchResult {
+    private String symbol;
+    // 同一交易對內連續遞增，從引擎啟動時的 1 開始
+    private long sequence;
+    private String type;  // NEW、CANCEL、AMEND 或 SNAPSHOT
+    private Order order;
+    private List<Trade> trades = new ArrayList<>();
+    private List<Order> orderUpdates = new ArrayList<>();
+    private List<LevelChange> levelChanges = new ArrayList<>();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private DepthSnapshot snapshot;
+    // 請求被拒絕的原因，此時 order 與 orderUpdates 中唯一的一筆狀態為 REJECTED
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String rejectReason;
+
+    // 價位未成交數量的淨變化，增加為正、減少為負
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class LevelChange {
+        private Order.Side side;
+        private BigDecimal price;
+        private BigDecimal quantity;
+    }
+}
@@ -0,0 +1,56 @@
+package com.matching.engine;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 沒有事件時掛起執行緒，CPU 用量最低但喚醒延遲較高
+// 消費者掛起前先設定 waiting，生產者只在 waiting 為 true 時才取鎖喚醒，消費者忙碌時發布不必取鎖
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private volatile boolean waiting;
+
+    @Override
+    public boolean waitFor(long sequence, OrderRingBuffer ringBuffer) {
+        if (ringBuffer.isAvailable(sequence)) {
+            return true;
+        }
+        lock.lock();
+        try {
+            // 先設定 waiting 再檢查序號：生產者若在檢查之後才發布，必定會看到 waiting 而喚醒
+            waiting = true;
+            while (!ringBuffer.isAvailable(sequence)) {
+                if (ringBuffer.isAlerted()) {
+                    return false;
+                }
+                // 設定逾時，避免錯過發布與等待之間的喚醒
+                notEmpty.await(1, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting = false;
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        // 發布是 lazySet，需要完整的屏障才能保證之後讀到的 waiting 不早於發布
+        VarHandle.fullFence();
+        if (!waiting) {
+            return;
+        }
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.matching.engine;
+
+// 持續自旋，延遲最低但會佔滿一個 CPU 核心
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public boolean waitFor(long sequence, OrderRingBuffer ringBuffer) {
+        while (!ringBuffer.isAvailable(sequence)) {
+            if (ringBuffer.isAlerted()) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+}
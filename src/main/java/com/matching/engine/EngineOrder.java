@@ -0,0 +1,160 @@
+package com.matching.engine;
+
+import com.matching.model.Order;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// 撮合引擎內部使用的訂單，價格與數量皆為 FixedPoint 定點數，只在持久化與 Kafka 邊界轉回 Order
+@Getter
+@Setter
+public class EngineOrder {
+    private String id;
+    private String userId;
+    private String symbol;
+    private long price = FixedPoint.NONE;
+    private long quantity;
+    private long filledQuantity;
+    private long unfilledQuantity;
+    private Order.Side side;
+    private Order.OrderType orderType;
+    private Order.OrderStatus status;
+    private long stopPrice = FixedPoint.NONE;
+    private long takeProfitPrice = FixedPoint.NONE;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private Instant modifiedAt;
+    // 進入訂單簿時指派的單調遞增序號，同價位依此排隊
+    private long sequence;
+    // JSON 訂單的金額無法轉為定點數時的原因，撮合時以此拒絕；不寫入日誌與訂單簿
+    private String invalidReason;
+
+    public static EngineOrder fromOrder(Order order) {
+        EngineOrder engineOrder = new EngineOrder();
+        engineOrder.id = order.getId();
+        engineOrder.userId = order.getUserId();
+        engineOrder.symbol = order.getSymbol();
+        // 市價單不使用價格，無法轉換時視為沒有價格
+        engineOrder.price = order.getOrderType() == Order.OrderType.MARKET ? scaledOrNone(order.getPrice()) : FixedPoint.toScaled(order.getPrice());
+        engineOrder.quantity = FixedPoint.toScaled(order.getQuantity());
+        engineOrder.filledQuantity = order.getFilledQuantity() != null ? FixedPoint.toScaled(order.getFilledQuantity()) : 0;
+        // 新訂單可能只帶 quantity
+        engineOrder.unfilledQuantity = order.getUnfilledQuantity() != null
+                ? FixedPoint.toScaled(order.getUnfilledQuantity())
+                : FixedPoint.subtract(engineOrder.quantity, engineOrder.filledQuantity);
+        engineOrder.side = order.getSide();
+        engineOrder.orderType = order.getOrderType();
+        engineOrder.status = order.getStatus();
+        engineOrder.stopPrice = FixedPoint.toScaled(order.getStopPrice());
+        engineOrder.takeProfitPrice = FixedPoint.toScaled(order.getTakeProfitPrice());
+        engineOrder.createdAt = order.getCreatedAt();
+        engineOrder.updatedAt = order.getUpdatedAt();
+        engineOrder.modifiedAt = order.getModifiedAt();
+        return engineOrder;
+    }
+
+    // fromOrder 轉換失敗（小數位超過 8 位或超出範圍）時改用這個發布給撮合執行緒：能轉換的價格照常轉換，數量一律為 FixedPoint.NONE，
+    // 撮合時以 reason 拒絕並通知使用者；日誌不記錄 reason，重放時因為數量為 NONE 同樣被拒絕
+    public static EngineOrder invalid(Order order, String reason) {
+        EngineOrder engineOrder = new EngineOrder();
+        engineOrder.id = order.getId();
+        engineOrder.userId = order.getUserId();
+        engineOrder.symbol = order.getSymbol();
+        engineOrder.price = scaledOrNone(order.getPrice());
+        engineOrder.quantity = FixedPoint.NONE;
+        engineOrder.unfilledQuantity = FixedPoint.NONE;
+        engineOrder.side = order.getSide();
+        engineOrder.orderType = order.getOrderType();
+        engineOrder.status = order.getStatus();
+        engineOrder.stopPrice = scaledOrNone(order.getStopPrice());
+        engineOrder.takeProfitPrice = scaledOrNone(order.getTakeProfitPrice());
+        engineOrder.createdAt = order.getCreatedAt();
+        engineOrder.updatedAt = order.getUpdatedAt();
+        engineOrder.modifiedAt = order.getModifiedAt();
+        engineOrder.invalidReason = reason;
+        return engineOrder;
+    }
+
+    private static long scaledOrNone(BigDecimal value) {
+        try {
+            return FixedPoint.toScaled(value);
+        } catch (ArithmeticException e) {
+            return FixedPoint.NONE;
+        }
+    }
+
+    // 複製所有欄位，用於把重複使用的物件存入訂單簿
+    public EngineOrder copy() {
+        EngineOrder copy = new EngineOrder();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    public void copyFrom(EngineOrder other) {
+        id = other.id;
+        userId = other.userId;
+        symbol = other.symbol;
+        price = other.price;
+        quantity = other.quantity;
+        filledQuantity = other.filledQuantity;
+        unfilledQuantity = other.unfilledQuantity;
+        side = other.side;
+        orderType = other.orderType;
+        status = other.status;
+        stopPrice = other.stopPrice;
+        takeProfitPrice = other.takeProfitPrice;
+        createdAt = other.createdAt;
+        updatedAt = other.updatedAt;
+        modifiedAt = other.modifiedAt;
+        sequence = other.sequence;
+        invalidReason = other.invalidReason;
+    }
+
+    public Order toOrder() {
+        return new Order(id, userId, symbol,
+                FixedPoint.toBigDecimal(price),
+                FixedPoint.toBigDecimal(quantity),
+                FixedPoint.toBigDecimal(filledQuantity),
+                FixedPoint.toBigDecimal(unfilledQuantity),
+                side, orderType, status,
+                FixedPoint.toBigDecimal(stopPrice),
+                FixedPoint.toBigDecimal(takeProfitPrice),
+                createdAt, updatedAt, modifiedAt);
+    }
+
+    // 成交 quantity，更新已成交與未成交數量及狀態
+    public void fill(long matchedQuantity, Instant now) {
+        filledQuantity = FixedPoint.add(filledQuantity, matchedQuantity);
+        unfilledQuantity = FixedPoint.subtract(unfilledQuantity, matchedQuantity);
+        // 如果未成交數量為零，訂單狀態更新為 `COMPLETED`
+        status = unfilledQuantity == 0 ? Order.OrderStatus.COMPLETED : Order.OrderStatus.PARTIALLY_FILLED;
+        updatedAt = now;
+    }
+
+    // 撮合時的限價，依訂單類型決定：市價單即使帶了價格也不設限，回傳 FixedPoint.NONE
+    public long limitPrice() {
+        return orderType == Order.OrderType.MARKET ? FixedPoint.NONE : price;
+    }
+
+    // 是否可與指定價格的對手方掛單成交，市價單沒有價格限制
+    public boolean crosses(long makerPrice) {
+        long limit = limitPrice();
+        if (limit == FixedPoint.NONE) {
+            return true;
+        }
+        return isBuy() ? limit >= makerPrice : limit <= makerPrice;
+    }
+
+    public boolean isBuy() {
+        return side == Order.Side.BUY;
+    }
+
+    @Override
+    public String toString() {
+        return "EngineOrder(id=" + id + ", symbol=" + symbol + ", side=" + side
+                + ", price=" + (price == FixedPoint.NONE ? "null" : FixedPoint.toPlainString(price))
+                + ", unfilledQuantity=" + FixedPoint.toPlainString(unfilledQuantity) + ", status=" + status + ")";
+    }
+}
@@ -0,0 +1,68 @@
+package com.matching.engine;
+
+import java.math.BigDecimal;
+
+// 撮合引擎內部的定點數：價格與數量以放大 10^8 的 long 表示，與資料庫 precision = 18, scale = 8 的欄位一致
+public final class FixedPoint {
+
+    public static final int SCALE = 8;
+    public static final long ONE = 100_000_000L;
+
+    // DECIMAL(18, 8) 能存放的最大未縮放值
+    public static final long MAX_VALUE = 999_999_999_999_999_999L;
+
+    // 市價單等沒有價格的欄位
+    public static final long NONE = Long.MIN_VALUE;
+
+    private FixedPoint() {
+    }
+
+    // BigDecimal 轉為定點數，小數位超過 8 位或超出欄位範圍時拋出 ArithmeticException
+    public static long toScaled(BigDecimal value) {
+        if (value == null) {
+            return NONE;
+        }
+        BigDecimal scaled;
+        try {
+            scaled = value.setScale(SCALE);
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Value " + value.toPlainString() + " has more than " + SCALE + " decimal places");
+        }
+        if (scaled.unscaledValue().bitLength() > 63) {
+            throw new ArithmeticException("Value " + value.toPlainString() + " exceeds DECIMAL(18, " + SCALE + ")");
+        }
+        long unscaled = scaled.unscaledValue().longValue();
+        if (unscaled > MAX_VALUE || unscaled < -MAX_VALUE) {
+            throw new ArithmeticException("Value " + value.toPlainString() + " exceeds DECIMAL(18, " + SCALE + ")");
+        }
+        return unscaled;
+    }
+
+    // 零回傳 BigDecimal.ZERO，避免 JSON 輸出 0E-8
+    public static BigDecimal toBigDecimal(long scaled) {
+        if (scaled == NONE) {
+            return null;
+        }
+        return scaled == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(scaled, SCALE);
+    }
+
+    // 去掉多餘的零，例如 50000.50000000 -> 50000.5
+    public static String toPlainString(long scaled) {
+        return BigDecimal.valueOf(scaled, SCALE).stripTrailingZeros().toPlainString();
+    }
+
+    public static long add(long a, long b) {
+        return checkRange(Math.addExact(a, b));
+    }
+
+    public static long subtract(long a, long b) {
+        return checkRange(Math.subtractExact(a, b));
+    }
+
+    private static long checkRange(long value) {
+        if (value > MAX_VALUE || value < -MAX_VALUE) {
+            throw new ArithmeticException("Fixed-point overflow: " + value);
+        }
+        return value;
+    }
+}
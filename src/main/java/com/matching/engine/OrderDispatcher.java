@@ -0,0 +1,202 @@
+package com.matching.engine;
+
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import com.matching.journal.JournalReplayer;
+import com.matching.journal.OrderJournal;
+import com.matching.journal.SnapshotStore;
+import com.matching.journal.SymbolJournal;
+import com.matching.metrics.StageLatencies;
+import com.matching.model.Order;
+import com.matching.service.DepthSnapshotService;
+import com.matching.service.NewOrderMatchingService;
+import com.matching.service.NewOrderbookService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 依交易對把訂單分派到各自的 ring buffer 與撮合執行緒
+// 訂單事件以交易對為 key 分區，每個撮合執行緒記錄它所屬的分區，分區被收回時停下並釋放訂單簿，交給新的擁有者從 Redis 重建
+// 每個交易對同時只能有一個撮合執行緒：來自其他分區的事件一律拒絕，停不下來的撮合執行緒結束前不釋放訂單簿也不啟動新的
+@Component
+public class OrderDispatcher {
+
+    private final NewOrderMatchingService matchingService;
+    private final NewOrderbookService orderbookService;
+    private final OrderJournal journal;
+    private final JournalReplayer replayer;
+    private final SnapshotStore snapshotStore;
+    private final StageLatencies stageLatencies;
+    private final DepthSnapshotService depthSnapshots;
+    private final Clock clock;
+    private final int ringSize;
+    private final WaitStrategyType waitStrategyType;
+    private final boolean batchMode;
+    private final Map<String, SymbolMatcher> matchers = new ConcurrentHashMap<>();
+    // 收回分區時逾時仍未結束的撮合執行緒
+    private final Map<String, SymbolMatcher> stopping = new ConcurrentHashMap<>();
+
+    public OrderDispatcher(NewOrderMatchingService matchingService,
+                           NewOrderbookService orderbookService,
+                           OrderJournal journal,
+                           JournalReplayer replayer,
+                           SnapshotStore snapshotStore,
+                           StageLatencies stageLatencies,
+                           DepthSnapshotService depthSnapshots,
+                           Clock clock,
+                           @Value("${matching.dispatcher.ring-size:1024}") int ringSize,
+                           @Value("${matching.dispatcher.wait-strategy:blocking}") WaitStrategyType waitStrategyType,
+                           @Value("${matching.dispatcher.batch-mode:true}") boolean batchMode) {
+        this.matchingService = matchingService;
+        this.orderbookService = orderbookService;
+        this.journal = journal;
+        this.replayer = replayer;
+        this.snapshotStore = snapshotStore;
+        this.stageLatencies = stageLatencies;
+        this.depthSnapshots = depthSnapshots;
+        this.clock = clock;
+        this.ringSize = ringSize;
+        this.waitStrategyType = waitStrategyType;
+        this.batchMode = batchMode;
+    }
+
+    // JSON 訂單在呼叫端執行緒轉為定點數，轉換失敗不會佔用 ring buffer 槽位
+    // offset 是事件在來源分區的位置，從日誌重建後用來略過已套用的重送事件，沒有來源時傳 -1
+    // 回傳事件所屬的撮合執行緒，呼叫端據此判斷事件寫出後才提交 offset
+    // 金額無法轉換的訂單一樣送進撮合執行緒，由撮合服務拒絕並通知使用者
+    public SymbolMatcher dispatch(Order order, int partition, long offset) {
+        EngineOrder engineOrder;
+        try {
+            engineOrder = EngineOrder.fromOrder(order);
+        } catch (ArithmeticException e) {
+            engineOrder = EngineOrder.invalid(order, e.getMessage());
+        }
+        SymbolMatcher matcher = matcher(engineOrder.getSymbol(), partition);
+        matcher.publish(engineOrder, offset);
+        return matcher;
+    }
+
+    // 二進位訂單需已通過 OrderWireFormat.symbol 的檢查，直接解碼到撮合執行緒的槽位
+    public SymbolMatcher dispatch(ByteBuffer value, String symbol, int partition, long offset) {
+        SymbolMatcher matcher = matcher(symbol, partition);
+        matcher.publish(value, offset);
+        return matcher;
+    }
+
+    public SymbolMatcher dispatchCancel(CancelOrderRequest request, int partition, long offset) {
+        SymbolMatcher matcher = matcher(request.getSymbol(), partition);
+        matcher.publishCancel(request, offset);
+        return matcher;
+    }
+
+    public SymbolMatcher dispatchAmend(AmendOrderRequest request, int partition, long offset) {
+        SymbolMatcher matcher = matcher(request.getSymbol(), partition);
+        matcher.publishAmend(request, offset);
+        return matcher;
+    }
+
+    // 停下屬於這些分區的撮合執行緒（先處理完已發布的事件），並釋放訂單簿
+    // 由失去分區的消費者執行緒在提交 offset 前呼叫，其他執行緒不會分派這些交易對的事件
+    // 撮合執行緒逾時未結束或訂單簿未能完整寫回 Redis 時，其餘交易對仍會釋放，最後拋出例外讓再平衡失敗；
+    // 未結束的撮合執行緒留到它結束後（下一次 release 或同一交易對再次分派時）才釋放訂單簿
+    public void release(Collection<Integer> partitions) {
+        List<SymbolMatcher> released = new ArrayList<>();
+        matchers.values().removeIf(matcher -> partitions.contains(matcher.getPartition()) && released.add(matcher));
+        List<String> failed = new ArrayList<>();
+        for (SymbolMatcher matcher : released) {
+            boolean stopped;
+            try {
+                stopped = matcher.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = matcher.isTerminated();
+            }
+            if (!stopped) {
+                System.err.println("Error: Matcher for " + matcher.getSymbol() + " did not stop, keeping its order book until it terminates");
+                stopping.put(matcher.getSymbol(), matcher);
+                failed.add(matcher.getSymbol());
+                continue;
+            }
+            if (!releaseOrderBook(matcher.getSymbol())) {
+                failed.add(matcher.getSymbol());
+            }
+        }
+        stopping.values().removeIf(matcher -> matcher.isTerminated() && !failed.contains(matcher.getSymbol())
+                && releaseOrderBook(matcher.getSymbol()));
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("Failed to release order books of " + failed);
+        }
+    }
+
+    private boolean releaseOrderBook(String symbol) {
+        try {
+            orderbookService.release(symbol);
+            return true;
+        } catch (IllegalStateException e) {
+            System.err.println("Error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // 事件所在分區與交易對撮合執行緒的分區不同時拒絕，否則同一交易對可能由兩個實例同時撮合
+    private SymbolMatcher matcher(String symbol, int partition) {
+        SymbolMatcher matcher = matchers.computeIfAbsent(symbol, key -> startMatcher(key, partition));
+        if (matcher.getPartition() != partition) {
+            throw new IllegalArgumentException("Symbol " + symbol + " received on partition " + partition
+                    + " but its matcher belongs to partition " + matcher.getPartition());
+        }
+        return matcher;
+    }
+
+    // 前一個撮合執行緒還沒結束時拋出 IllegalStateException，事件留待重試
+    private SymbolMatcher startMatcher(String symbol, int partition) {
+        SymbolMatcher previous = stopping.get(symbol);
+        if (previous != null) {
+            if (!previous.isTerminated()) {
+                throw new IllegalStateException("Previous matcher for " + symbol + " is still running");
+            }
+            stopping.remove(symbol);
+            if (!releaseOrderBook(symbol)) {
+                throw new IllegalStateException("Failed to release the previous order book of " + symbol);
+            }
+        }
+        OrderRingBuffer ringBuffer = new OrderRingBuffer(ringSize, waitStrategyType.create());
+        SymbolJournal symbolJournal = openJournal(symbol);
+        // 每次接手都重建：日誌可能在交易對由其他實例撮合的期間落後，重建時會檢查並改從 Redis 載入
+        SymbolMatcher matcher = new SymbolMatcher(symbol, partition, ringBuffer, matchingService, orderbookService, batchMode,
+                clock, symbolJournal, journal.isRecoverOnStart() ? replayer : null, snapshotStore.isEnabled() ? snapshotStore : null,
+                stageLatencies.forSymbol(symbol), depthSnapshots.isEnabled() ? depthSnapshots : null);
+        matcher.start();
+        return matcher;
+    }
+
+    private SymbolJournal openJournal(String symbol) {
+        if (!journal.isEnabled()) {
+            return null;
+        }
+        try {
+            return journal.open(symbol);
+        } catch (IOException e) {
+            System.err.println("Error: Failed to open journal of " + symbol);
+            e.printStackTrace();
+            throw new UncheckedIOException("Failed to open journal of " + symbol, e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (SymbolMatcher matcher : matchers.values()) {
+            matcher.stop();
+        }
+    }
+}
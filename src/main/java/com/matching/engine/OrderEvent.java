@@ -0,0 +1,41 @@
+package com.matching.engine;
+
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import lombok.Getter;
+import lombok.Setter;
+
+// ring buffer 中預先配置的槽位，生產者填入後由撮合執行緒處理
+@Getter
+@Setter
+public class OrderEvent {
+    private OrderEventType type;
+    // 新訂單直接寫入槽位內重複使用的物件，不隨事件配置
+    private final EngineOrder order = new EngineOrder();
+    private CancelOrderRequest cancelRequest;
+    private AmendOrderRequest amendRequest;
+    // 事件在來源 Kafka 分區的 offset，沒有來源時為 -1
+    private long offset = -1;
+    // 發布到 ring buffer 的時間（System.nanoTime），用來量測排隊延遲
+    private long publishedNanos;
+
+    // 處理完後清空，避免槽位持有已完成訂單的引用
+    public void clear() {
+        type = null;
+        cancelRequest = null;
+        amendRequest = null;
+        offset = -1;
+    }
+
+    @Override
+    public String toString() {
+        if (type == null) {
+            return "EMPTY";
+        }
+        return switch (type) {
+            case NEW -> "NEW " + order;
+            case CANCEL -> "CANCEL " + cancelRequest.getOrderId();
+            case AMEND -> "AMEND " + amendRequest.getOrderId();
+        };
+    }
+}
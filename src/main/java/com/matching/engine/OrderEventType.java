@@ -0,0 +1,8 @@
+package com.matching.engine;
+
+// ring buffer 事件種類
+public enum OrderEventType {
+    NEW,
+    CANCEL,
+    AMEND
+}
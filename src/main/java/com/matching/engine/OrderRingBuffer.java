@@ -0,0 +1,94 @@
+package com.matching.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// 預先配置槽位的環形緩衝區：多個生產者以原子遞增取得序號，單一消費者依序處理
+public class OrderRingBuffer {
+
+    private final OrderEvent[] entries;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    // 生產者已取得的最大序號
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // 每個槽位目前已發布的序號
+    private final AtomicLongArray published;
+    // 消費者已處理完的序號
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    private volatile boolean alerted;
+
+    public OrderRingBuffer(int size, WaitStrategy waitStrategy) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a power of 2, got " + size);
+        }
+        this.entries = new OrderEvent[size];
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new OrderEvent();
+            published.set(i, -1);
+        }
+    }
+
+    // 取得下一個可寫入的序號，緩衝區滿時等待消費者跟上
+    public long next() {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - entries.length;
+        while (wrapPoint > consumed.get()) {
+            LockSupport.parkNanos(1L);
+        }
+        return sequence;
+    }
+
+    // 生產者目前已取得的最大序號，不小於任何已發布的序號
+    public long getClaimed() {
+        return claimed.get();
+    }
+
+    public OrderEvent get(long sequence) {
+        return entries[(int) sequence & mask];
+    }
+
+    public void publish(long sequence) {
+        published.lazySet((int) sequence & mask, sequence);
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public boolean isAvailable(long sequence) {
+        return published.get((int) sequence & mask) == sequence;
+    }
+
+    // 等待 sequence 可讀，回傳目前連續可讀的最大序號；被中止時回傳 -1
+    public long waitFor(long sequence) {
+        if (!waitStrategy.waitFor(sequence, this)) {
+            return -1;
+        }
+        long available = sequence;
+        while (available - sequence < mask && isAvailable(available + 1)) {
+            available++;
+        }
+        return available;
+    }
+
+    // 消費者處理完 sequence（含）之前的槽位
+    public void release(long sequence) {
+        consumed.lazySet(sequence);
+    }
+
+    public void alert() {
+        alerted = true;
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public boolean isAlerted() {
+        return alerted;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+}
@@ -0,0 +1,126 @@
+package com.matching.engine;
+
+import com.matching.model.Order;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// new_orders 的二進位格式，全部為大端序：
+// [版本 1][方向 1][類型 1][價格 8][數量 8][止損價 8][止盈價 8][建立時間 秒 8 + 奈秒 4][交易對][訂單 ID][使用者 ID]
+// 金額為 FixedPoint 定點數，沒有價格時為 FixedPoint.NONE；列舉存序數；建立時間的秒數為 Long.MIN_VALUE 時以引擎收到的時間為準；
+// 字串為 1 位元組長度加 UTF-8。第一個位元組是版本號，與 JSON 開頭的 '{' 或空白不會混淆
+public final class OrderWireFormat {
+
+    public static final byte VERSION = 1;
+
+    private static final int SYMBOL_OFFSET = 3 + 8 * 4 + 12;
+    private static final int NAME_LENGTH_LIMIT = 0xFF;
+    private static final long NULL_SECONDS = Long.MIN_VALUE;
+    private static final Order.Side[] SIDES = Order.Side.values();
+    private static final Order.OrderType[] ORDER_TYPES = Order.OrderType.values();
+
+    private OrderWireFormat() {
+    }
+
+    public static boolean isBinary(ByteBuffer value) {
+        return value.remaining() > 0 && value.get(value.position()) == VERSION;
+    }
+
+    // 檢查長度、列舉與金額範圍並回傳交易對；通過檢查的內容 decode 時不會失敗
+    public static String symbol(ByteBuffer value) {
+        int start = value.position();
+        if (value.remaining() < SYMBOL_OFFSET || value.get(start) != VERSION) {
+            throw new IllegalArgumentException("Unsupported new order encoding");
+        }
+        if (value.get(start + 1) < 0 || value.get(start + 1) >= SIDES.length
+                || value.get(start + 2) < 0 || value.get(start + 2) >= ORDER_TYPES.length) {
+            throw new IllegalArgumentException("Invalid side or order type in new order encoding");
+        }
+        for (int i = 0; i < 4; i++) {
+            long amount = value.getLong(start + 3 + i * 8);
+            if (amount != FixedPoint.NONE && (amount > FixedPoint.MAX_VALUE || amount < -FixedPoint.MAX_VALUE)) {
+                throw new IllegalArgumentException("Amount " + amount + " in new order encoding exceeds DECIMAL(18, " + FixedPoint.SCALE + ")");
+            }
+        }
+        int offset = start + SYMBOL_OFFSET;
+        for (int i = 0; i < 3; i++) {
+            if (offset >= value.limit()) {
+                throw new IllegalArgumentException("Truncated new order encoding");
+            }
+            offset += 1 + Byte.toUnsignedInt(value.get(offset));
+        }
+        if (offset != value.limit()) {
+            throw new IllegalArgumentException("Truncated new order encoding");
+        }
+        int symbolLength = Byte.toUnsignedInt(value.get(start + SYMBOL_OFFSET));
+        return string(value, start + SYMBOL_OFFSET + 1, symbolLength);
+    }
+
+    // 覆寫 order 的所有欄位，order 可以是重複使用的物件；symbol 傳入已解析的交易對以免重複建立字串
+    public static void decode(ByteBuffer value, String symbol, EngineOrder order) {
+        int start = value.position();
+        order.setSide(SIDES[value.get(start + 1)]);
+        order.setOrderType(ORDER_TYPES[value.get(start + 2)]);
+        order.setPrice(value.getLong(start + 3));
+        order.setQuantity(value.getLong(start + 11));
+        order.setStopPrice(value.getLong(start + 19));
+        order.setTakeProfitPrice(value.getLong(start + 27));
+        long seconds = value.getLong(start + 35);
+        Instant createdAt = seconds == NULL_SECONDS ? Instant.now() : Instant.ofEpochSecond(seconds, value.getInt(start + 43));
+        order.setCreatedAt(createdAt);
+        order.setUpdatedAt(createdAt);
+        order.setModifiedAt(createdAt);
+        order.setFilledQuantity(0);
+        order.setUnfilledQuantity(order.getQuantity());
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setSequence(0);
+        order.setInvalidReason(null);
+
+        int offset = start + SYMBOL_OFFSET;
+        order.setSymbol(symbol);
+        offset += 1 + Byte.toUnsignedInt(value.get(offset));
+        int idLength = Byte.toUnsignedInt(value.get(offset));
+        order.setId(string(value, offset + 1, idLength));
+        offset += 1 + idLength;
+        order.setUserId(string(value, offset + 1, Byte.toUnsignedInt(value.get(offset))));
+    }
+
+    // 供下單端與壓測產生訊息
+    public static byte[] encode(Order order) {
+        byte[] symbol = name(order.getSymbol());
+        byte[] id = name(order.getId());
+        byte[] userId = name(order.getUserId());
+        ByteBuffer buffer = ByteBuffer.allocate(SYMBOL_OFFSET + 3 + symbol.length + id.length + userId.length);
+        buffer.put(VERSION);
+        buffer.put((byte) order.getSide().ordinal());
+        buffer.put((byte) order.getOrderType().ordinal());
+        buffer.putLong(FixedPoint.toScaled(order.getPrice()));
+        buffer.putLong(FixedPoint.toScaled(order.getQuantity()));
+        buffer.putLong(FixedPoint.toScaled(order.getStopPrice()));
+        buffer.putLong(FixedPoint.toScaled(order.getTakeProfitPrice()));
+        buffer.putLong(order.getCreatedAt() == null ? NULL_SECONDS : order.getCreatedAt().getEpochSecond());
+        buffer.putInt(order.getCreatedAt() == null ? 0 : order.getCreatedAt().getNano());
+        buffer.put((byte) symbol.length).put(symbol);
+        buffer.put((byte) id.length).put(id);
+        buffer.put((byte) userId.length).put(userId);
+        return buffer.array();
+    }
+
+    private static String string(ByteBuffer value, int offset, int length) {
+        if (value.hasArray()) {
+            return new String(value.array(), value.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        value.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] name(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > NAME_LENGTH_LIMIT) {
+            throw new IllegalArgumentException("Field too long for new order encoding: " + value);
+        }
+        return bytes;
+    }
+}
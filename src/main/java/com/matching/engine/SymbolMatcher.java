@@ -0,0 +1,345 @@
+package com.matching.engine;
+
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import com.matching.journal.JournalReplayer;
+import com.matching.journal.SnapshotStore;
+import com.matching.journal.SymbolJournal;
+import com.matching.metrics.LatencyStage;
+import com.matching.metrics.StageLatencies;
+import com.matching.service.DepthSnapshotService;
+import com.matching.service.MatchBatch;
+import com.matching.service.NewOrderMatchingService;
+import com.matching.service.NewOrderbookService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// 單一交易對的撮合執行緒，是該交易對訂單簿唯一的寫入者
+public class SymbolMatcher implements Runnable {
+
+    // 等待 Snowflake 租約恢復時的檢查間隔
+    private static final long LEASE_CHECK_NANOS = 10_000_000L;
+    // 每次向 Redis 預留的撮合結果序號數，重啟或換手時未用完的部分跳過
+    private static final long SEQUENCE_BLOCK = 65_536;
+    // 預留序號失敗時的重試間隔
+    private static final long SEQUENCE_RETRY_NANOS = 100_000_000L;
+
+    private final String symbol;
+    private final int partition;
+    private final OrderRingBuffer ringBuffer;
+    private final NewOrderMatchingService matchingService;
+    private final NewOrderbookService orderbookService;
+    private final MatchBatch batch;
+    private final boolean batchMode;
+    private final Clock clock;
+    private final SymbolJournal journal;
+    private final JournalReplayer replayer;
+    private final SnapshotStore snapshotStore;
+    private final StageLatencies.SymbolLatencies latencies;
+    private final DepthSnapshotService depthSnapshots;
+    private final Thread thread;
+    // 各種事件已套用到的最大 offset（含從日誌重建的部分），Kafka 重送的這些事件要略過；快照也以它標記位置
+    private long[] appliedOffsets = {-1, -1, -1};
+    // 上次與鏡像一起寫入 Redis 的 appliedOffsets
+    private long[] recordedOffsets = {-1, -1, -1};
+    private long lastSnapshotMillis;
+    // 已撮合並寫出（日誌落地、結果送出）的最大 ring buffer 序號，在它之前發布的事件其 Kafka offset 才能提交
+    private volatile long flushedSequence = -1;
+    // 從 0 開始：啟動後第一次寫出就附上深度快照，撮合結果序號跳到新預留的區段時下游可以立即重新同步
+    private long lastDepthSnapshotMillis;
+
+    // partition 是該交易對訂單事件所在的 Kafka 分區；batchMode 為 true 時，一次取得的所有事件撮合完才寫出，否則每個事件各自寫出
+    // 每個事件的時間在這裡由 clock 決定，與事件一起寫入 journal（可為 null）後才撮合；replayer 不為 null 時先從快照與日誌重建訂單簿
+    // 有 journal 時每次寫出後把已套用的 offset 交給 orderbookService 隨鏡像寫入 Redis，其他實例重建時據此判斷日誌是否落後
+    // snapshotStore 不為 null 時（需同時有 journal）每隔一段時間在批次寫出後產生快照；latencies 記錄排隊與撮合的延遲
+    // depthSnapshots 不為 null 時每隔一段時間在批次寫出前附上 L2 深度快照
+    public SymbolMatcher(String symbol, int partition, OrderRingBuffer ringBuffer, NewOrderMatchingService matchingService,
+                         NewOrderbookService orderbookService, boolean batchMode, Clock clock, SymbolJournal journal, JournalReplayer replayer, SnapshotStore snapshotStore,
+                         StageLatencies.SymbolLatencies latencies, DepthSnapshotService depthSnapshots) {
+        this.symbol = symbol;
+        this.partition = partition;
+        this.ringBuffer = ringBuffer;
+        this.matchingService = matchingService;
+        this.orderbookService = orderbookService;
+        this.batch = new MatchBatch(symbol, true);
+        this.batchMode = batchMode;
+        this.clock = clock;
+        this.journal = journal;
+        this.replayer = replayer;
+        this.snapshotStore = journal == null ? null : snapshotStore;
+        this.latencies = latencies;
+        this.depthSnapshots = depthSnapshots;
+        this.thread = new Thread(this, "matcher-" + symbol);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // 處理完已發布的事件後結束（等待租約時直接結束，未處理的事件不提交 offset）；逾時仍未結束時回傳 false，此時執行緒可能仍在修改訂單簿
+    public boolean stop() throws InterruptedException {
+        ringBuffer.alert();
+        thread.join(5000);
+        return isTerminated();
+    }
+
+    public boolean isTerminated() {
+        return !thread.isAlive();
+    }
+
+    // 把已轉換的訂單複製到槽位
+    public void publish(EngineOrder order, long offset) {
+        long sequence = ringBuffer.next();
+        try {
+            OrderEvent event = ringBuffer.get(sequence);
+            event.setType(OrderEventType.NEW);
+            event.setOffset(offset);
+            event.setPublishedNanos(System.nanoTime());
+            event.getOrder().copyFrom(order);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    // 二進位新訂單直接解碼到槽位，value 需已通過 OrderWireFormat.symbol 的檢查
+    // 解碼成功後才設定事件種類；解碼失敗時清空槽位再發布，撮合執行緒略過它，不會處理上一次留下或解碼到一半的訂單
+    public void publish(ByteBuffer value, long offset) {
+        long sequence = ringBuffer.next();
+        OrderEvent event = ringBuffer.get(sequence);
+        try {
+            event.setPublishedNanos(System.nanoTime());
+            OrderWireFormat.decode(value, symbol, event.getOrder());
+            event.setType(OrderEventType.NEW);
+            event.setOffset(offset);
+        } catch (RuntimeException e) {
+            event.clear();
+            throw e;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    // 撤單與改單走同一個 ring buffer，與新訂單依到達順序處理
+    public void publishCancel(CancelOrderRequest request, long offset) {
+        long sequence = ringBuffer.next();
+        try {
+            OrderEvent event = ringBuffer.get(sequence);
+            event.setType(OrderEventType.CANCEL);
+            event.setOffset(offset);
+            event.setPublishedNanos(System.nanoTime());
+            event.setCancelRequest(request);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    public void publishAmend(AmendOrderRequest request, long offset) {
+        long sequence = ringBuffer.next();
+        try {
+            OrderEvent event = ringBuffer.get(sequence);
+            event.setType(OrderEventType.AMEND);
+            event.setOffset(offset);
+            event.setPublishedNanos(System.nanoTime());
+            event.setAmendRequest(request);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    @Override
+    public void run() {
+        // 重放同樣會產生成交 ID
+        if (!awaitLease(-1)) {
+            closeJournal();
+            return;
+        }
+        if (replayer != null) {
+            appliedOffsets = replayer.recover(symbol, partition, journal.getNextSequence() - 1);
+            recordedOffsets = appliedOffsets.clone();
+        }
+        lastSnapshotMillis = clock.millis();
+        long nextSequence = 0;
+        while (true) {
+            long available = ringBuffer.waitFor(nextSequence);
+            if (available < 0) {
+                break;
+            }
+            // 一次取得的事件數會隨負載變大：閒置時逐筆處理，壅塞時整批（通常涵蓋整個 Kafka poll）一起寫出
+            for (; nextSequence <= available; nextSequence++) {
+                // 租約只在寫入日誌前檢查，撮合服務不會因為租約拒絕或中斷已寫入日誌的事件，重放結果才與當初相同
+                if (!matchingService.isLeased() && !awaitLease(nextSequence)) {
+                    closeJournal();
+                    return;
+                }
+                if (batch.needsSequences() && !reserveSequences(nextSequence)) {
+                    closeJournal();
+                    return;
+                }
+                OrderEvent event = ringBuffer.get(nextSequence);
+                long started = System.nanoTime();
+                latencies.record(LatencyStage.QUEUE, started - event.getPublishedNanos());
+                try {
+                    OrderEventType type = event.getType();
+                    // 發布時解碼失敗的槽位沒有事件種類，不寫入日誌也不撮合
+                    if (type != null && (event.getOffset() < 0 || event.getOffset() > appliedOffsets[type.ordinal()])) {
+                        Instant now = clock.instant();
+                        if (journal != null) {
+                            journal.append(event, now, partition, event.getOffset());
+                        }
+                        // 撮合失敗的事件重放時同樣失敗，一樣視為已套用
+                        appliedOffsets[type.ordinal()] = Math.max(appliedOffsets[type.ordinal()], event.getOffset());
+                        switch (type) {
+                            case NEW -> matchingService.handleNewOrder(event.getOrder(), now, batch);
+                            case CANCEL -> matchingService.handleCancel(event.getCancelRequest(), now, batch);
+                            case AMEND -> matchingService.handleAmend(event.getAmendRequest(), now, batch);
+                        }
+                        latencies.record(LatencyStage.MATCH, System.nanoTime() - started);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error: Failed to process event on " + symbol + ". Event: " + event);
+                    e.printStackTrace();
+                } finally {
+                    event.clear();
+                }
+                if (!batchMode || nextSequence == available) {
+                    flush();
+                    flushedSequence = nextSequence;
+                }
+            }
+            ringBuffer.release(available);
+        }
+        closeJournal();
+    }
+
+    // 失去 Snowflake 租約時不再取出事件：先寫出已撮合的結果，之後的事件留在 ring buffer，不寫入日誌也不提交 offset
+    // （消費者同時停止拉取）；租約恢復時回傳 true 繼續處理，等待中被中止時回傳 false
+    private boolean awaitLease(long nextSequence) {
+        if (matchingService.isLeased()) {
+            return true;
+        }
+        flushPending(nextSequence);
+        System.err.println("Error: Snowflake lease lost, pausing matching on " + symbol);
+        while (!matchingService.isLeased()) {
+            if (ringBuffer.isAlerted()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, LEASE_CHECK_NANOS);
+        }
+        System.err.println("Warning: Snowflake lease restored, resuming matching on " + symbol);
+        return true;
+    }
+
+    // 撮合結果序號由 Redis 中只增不減的上限預留，重啟、再平衡或換手後都接著遞增；
+    // Redis 無法使用時先寫出已撮合的結果，之後的事件留在 ring buffer 直到預留成功，等待中被中止時回傳 false
+    private boolean reserveSequences(long nextSequence) {
+        while (true) {
+            try {
+                batch.addSequences(orderbookService.reserveResultSequences(symbol, SEQUENCE_BLOCK), SEQUENCE_BLOCK);
+                return true;
+            } catch (Exception e) {
+                System.err.println("Error: Failed to reserve match result sequences of " + symbol + ", retrying");
+                e.printStackTrace();
+            }
+            // 剩餘的序號足夠寫出目前的事件與深度快照
+            flushPending(nextSequence);
+            if (ringBuffer.isAlerted()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, SEQUENCE_RETRY_NANOS);
+        }
+    }
+
+    // 寫出 nextSequence 之前已撮合但尚未寫出的事件
+    private void flushPending(long nextSequence) {
+        if (nextSequence - 1 > flushedSequence) {
+            flush();
+            flushedSequence = nextSequence - 1;
+        }
+    }
+
+    // 先讓日誌落地再送出撮合結果
+    private void flush() {
+        if (journal != null) {
+            try {
+                journal.flush();
+            } catch (Exception e) {
+                System.err.println("Error: Failed to sync journal of " + symbol);
+                e.printStackTrace();
+            }
+        }
+        if (depthSnapshots != null && clock.millis() - lastDepthSnapshotMillis >= depthSnapshots.getIntervalMillis()) {
+            depthSnapshot();
+        }
+        try {
+            matchingService.flush(batch);
+        } catch (Exception e) {
+            System.err.println("Error: Failed to flush " + batch.getEvents() + " matched events on " + symbol);
+            e.printStackTrace();
+        }
+        if (journal != null && !Arrays.equals(appliedOffsets, recordedOffsets)) {
+            orderbookService.recordOffsets(symbol, partition, appliedOffsets);
+            recordedOffsets = appliedOffsets.clone();
+        }
+        if (snapshotStore != null && clock.millis() - lastSnapshotMillis >= snapshotStore.getIntervalMillis()) {
+            snapshot();
+        }
+    }
+
+    // 快照接在批次最後一筆結果之後，與增量一起依序送出
+    private void depthSnapshot() {
+        try {
+            depthSnapshots.capture(batch, clock.instant());
+        } catch (Exception e) {
+            System.err.println("Error: Failed to capture depth snapshot of " + symbol);
+            e.printStackTrace();
+        }
+        lastDepthSnapshotMillis = clock.millis();
+    }
+
+    // 已寫入日誌的事件都已撮合完，訂單簿此時的內容對應日誌的最後一筆
+    private void snapshot() {
+        try {
+            if (snapshotStore.capture(symbol, journal.getNextSequence() - 1, appliedOffsets)) {
+                lastSnapshotMillis = clock.millis();
+            }
+        } catch (Exception e) {
+            System.err.println("Error: Failed to capture snapshot of " + symbol);
+            e.printStackTrace();
+            lastSnapshotMillis = clock.millis();
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error: Failed to close journal of " + symbol);
+            e.printStackTrace();
+        }
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    // 目前已發布（或正在發布）的最大序號
+    public long getPublishedSequence() {
+        return ringBuffer.getClaimed();
+    }
+
+    public long getFlushedSequence() {
+        return flushedSequence;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+}
@@ -0,0 +1,44 @@
+package com.matching.engine;
+
+import com.matching.model.Order;
+
+// 交易對的最小價格跳動與最小數量單位，皆為定點數
+public record SymbolSpec(String symbol, long tickSize, long lotSize) {
+
+    public SymbolSpec {
+        if (tickSize <= 0 || lotSize <= 0) {
+            throw new IllegalArgumentException("Tick size and lot size of " + symbol + " must be positive");
+        }
+    }
+
+    // 未設定的交易對只要求不超過 8 位小數
+    public static SymbolSpec defaultSpec(String symbol) {
+        return new SymbolSpec(symbol, 1, 1);
+    }
+
+    // 檢查新訂單的價格與數量是否符合交易對規格；市價單不檢查（也不使用）它帶的價格，限價單必須有價格
+    public void validate(EngineOrder order) {
+        if (order.getInvalidReason() != null) {
+            throw new IllegalArgumentException(order.getInvalidReason());
+        }
+        if (order.getOrderType() != Order.OrderType.MARKET && order.getPrice() == FixedPoint.NONE) {
+            throw new IllegalArgumentException("Limit order " + order.getId() + " has no price");
+        }
+        validate(order.limitPrice(), order.getQuantity());
+    }
+
+    // price 為 FixedPoint.NONE 時（市價單）只檢查數量
+    public void validate(long price, long quantity) {
+        if (quantity == FixedPoint.NONE) {
+            throw new IllegalArgumentException("Quantity is missing or not representable for " + symbol);
+        }
+        if (quantity <= 0 || quantity % lotSize != 0) {
+            throw new IllegalArgumentException("Quantity " + FixedPoint.toPlainString(quantity)
+                    + " is not a positive multiple of lot size " + FixedPoint.toPlainString(lotSize) + " for " + symbol);
+        }
+        if (price != FixedPoint.NONE && (price <= 0 || price % tickSize != 0)) {
+            throw new IllegalArgumentException("Price " + FixedPoint.toPlainString(price)
+                    + " is not a positive multiple of tick size " + FixedPoint.toPlainString(tickSize) + " for " + symbol);
+        }
+    }
+}
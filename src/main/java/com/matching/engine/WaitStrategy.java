@@ -0,0 +1,12 @@
+package com.matching.engine;
+
+// 撮合執行緒等待新事件的方式
+public interface WaitStrategy {
+
+    // 等到 sequence 可讀時回傳 true，ring buffer 被中止時回傳 false
+    boolean waitFor(long sequence, OrderRingBuffer ringBuffer);
+
+    // 生產者發布事件後喚醒等待中的消費者
+    default void signalAllWhenBlocking() {
+    }
+}
@@ -0,0 +1,16 @@
+package com.matching.engine;
+
+public enum WaitStrategyType {
+    BLOCKING,
+    YIELDING,
+    BUSY_SPIN;
+
+    // 每個 ring buffer 使用各自的實例
+    public WaitStrategy create() {
+        return switch (this) {
+            case BLOCKING -> new BlockingWaitStrategy();
+            case YIELDING -> new YieldingWaitStrategy();
+            case BUSY_SPIN -> new BusySpinWaitStrategy();
+        };
+    }
+}
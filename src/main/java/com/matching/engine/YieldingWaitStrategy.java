@@ -0,0 +1,24 @@
+package com.matching.engine;
+
+// 先自旋一段時間，之後讓出 CPU
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public boolean waitFor(long sequence, OrderRingBuffer ringBuffer) {
+        int counter = SPIN_TRIES;
+        while (!ringBuffer.isAvailable(sequence)) {
+            if (ringBuffer.isAlerted()) {
+                return false;
+            }
+            if (counter > 0) {
+                counter--;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+}
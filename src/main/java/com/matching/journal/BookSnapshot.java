@@ -0,0 +1,81 @@
+package com.matching.journal;
+
+import com.matching.engine.EngineOrder;
+import com.matching.orderbook.BinaryOrderCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// 交易對訂單簿在某個日誌序號時的完整內容，全部為大端序：
+// [魔數 4][版本 1][日誌序號 8][訂單簿最後序號 8][offset 數 1][各事件種類已套用的 Kafka offset 8 * n][訂單數 4]
+// [每筆訂單：長度 4 + BinaryOrderCodec 內容][CRC32C 4]
+// 訂單依買方、賣方的撮合優先順序排列，還原時依序 restoreOrder 即可；CRC 涵蓋前面所有內容
+public record BookSnapshot(long journalSequence, long lastSequence, long[] offsets, List<EngineOrder> orders) {
+
+    private static final int MAGIC = 0x4F42534E;
+    private static final byte VERSION = 1;
+
+    // 先寫到暫存檔再改名，讀取端不會看到寫到一半的快照
+    public void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(output, crc));
+            checked.writeInt(MAGIC);
+            checked.writeByte(VERSION);
+            checked.writeLong(journalSequence);
+            checked.writeLong(lastSequence);
+            checked.writeByte(offsets.length);
+            for (long offset : offsets) {
+                checked.writeLong(offset);
+            }
+            checked.writeInt(orders.size());
+            for (EngineOrder order : orders) {
+                byte[] value = BinaryOrderCodec.encode(order, order.getSequence());
+                checked.writeInt(value.length);
+                checked.write(value);
+            }
+            checked.flush();
+            output.writeInt((int) crc.getValue());
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static BookSnapshot read(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            DataInputStream checked = new DataInputStream(new CheckedInputStream(input, crc));
+            if (checked.readInt() != MAGIC || checked.readByte() != VERSION) {
+                throw new IOException("Unsupported snapshot format in " + path);
+            }
+            long journalSequence = checked.readLong();
+            long lastSequence = checked.readLong();
+            long[] offsets = new long[checked.readUnsignedByte()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = checked.readLong();
+            }
+            int count = checked.readInt();
+            List<EngineOrder> orders = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] value = new byte[checked.readInt()];
+                checked.readFully(value);
+                orders.add(BinaryOrderCodec.decode(value));
+            }
+            if (input.readInt() != (int) crc.getValue()) {
+                throw new IOException("Checksum mismatch in snapshot " + path);
+            }
+            return new BookSnapshot(journalSequence, lastSequence, offsets, orders);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.matching.journal;
+
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import com.matching.engine.OrderEvent;
+import com.matching.engine.OrderEventType;
+import com.matching.orderbook.BinaryOrderCodec;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// 日誌事件內容的編碼：
+// NEW 為 BinaryOrderCodec 的完整訂單；CANCEL 為 [訂單 ID][使用者 ID][交易對]；AMEND 再加上 [價格][數量]
+// 改單的金額以請求原本的十進位字串保存（未指定為 null），轉換與檢查在撮合時進行，無法轉換的請求重放時一樣被拒絕
+// 字串為 2 位元組長度加 UTF-8，0xFFFF 表示 null
+final class JournalCodec {
+
+    private static final OrderEventType[] TYPES = OrderEventType.values();
+    private static final int NULL_LENGTH = 0xFFFF;
+
+    private JournalCodec() {
+    }
+
+    static byte[] encode(OrderEvent event) {
+        return switch (event.getType()) {
+            case NEW -> BinaryOrderCodec.encode(event.getOrder(), event.getOrder().getSequence());
+            case CANCEL -> {
+                CancelOrderRequest request = event.getCancelRequest();
+                yield strings(0, request.getOrderId(), request.getUserId(), request.getSymbol()).array();
+            }
+            case AMEND -> {
+                AmendOrderRequest request = event.getAmendRequest();
+                yield strings(0, request.getOrderId(), request.getUserId(), request.getSymbol(),
+                        decimalString(request.getPrice()), decimalString(request.getQuantity())).array();
+            }
+        };
+    }
+
+    static OrderEventType type(byte ordinal) {
+        if (ordinal < 0 || ordinal >= TYPES.length) {
+            throw new IllegalArgumentException("Unknown journal event type " + ordinal);
+        }
+        return TYPES[ordinal];
+    }
+
+    static JournalEntry decode(long sequence, OrderEventType type, Instant time, int partition, long offset, byte[] payload) {
+        if (type == OrderEventType.NEW) {
+            return new JournalEntry(sequence, type, time, partition, offset, BinaryOrderCodec.decode(payload), null, null);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String orderId = getString(buffer);
+        String userId = getString(buffer);
+        String symbol = getString(buffer);
+        if (type == OrderEventType.CANCEL) {
+            return new JournalEntry(sequence, type, time, partition, offset, null, new CancelOrderRequest(orderId, userId, symbol), null);
+        }
+        AmendOrderRequest request = new AmendOrderRequest(orderId, userId, symbol, decimal(getString(buffer)), decimal(getString(buffer)));
+        return new JournalEntry(sequence, type, time, partition, offset, null, null, request);
+    }
+
+    // 寫入字串後回傳的緩衝區還剩 extra 個位元組
+    private static ByteBuffer strings(int extra, String... values) {
+        byte[][] bytes = new byte[values.length][];
+        int length = extra;
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i] == null ? null : values[i].getBytes(StandardCharsets.UTF_8);
+            if (bytes[i] != null && bytes[i].length >= NULL_LENGTH) {
+                throw new IllegalArgumentException("Journal field too long: " + bytes[i].length + " bytes");
+            }
+            length += 2 + (bytes[i] == null ? 0 : bytes[i].length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] value : bytes) {
+            if (value == null) {
+                buffer.putShort((short) NULL_LENGTH);
+            } else {
+                buffer.putShort((short) value.length).put(value);
+            }
+        }
+        return buffer;
+    }
+
+    private static String decimalString(BigDecimal value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static BigDecimal decimal(String value) {
+        return value == null ? null : new BigDecimal(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,14 @@
+package com.matching.journal;
+
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import com.matching.engine.EngineOrder;
+import com.matching.engine.OrderEventType;
+
+import java.time.Instant;
+
+// 日誌中的一筆輸入事件；time 是撮合執行緒處理該事件時的引擎時間，重放時以它取代時鐘
+// partition / offset 是事件在 Kafka 的位置（依事件種類對應 new_orders、cancel_orders、amend_orders），沒有來源時為 -1
+public record JournalEntry(long sequence, OrderEventType type, Instant time, int partition, long offset,
+                           EngineOrder order, CancelOrderRequest cancelRequest, AmendOrderRequest amendRequest) {
+}
@@ -0,0 +1,166 @@
+package com.matching.journal;
+
+import com.matching.consumer.OrderEventOffsets;
+import com.matching.engine.OrderEventType;
+import com.matching.model.Order;
+import com.matching.orderbook.AppliedOffsets;
+import com.matching.orderbook.InMemoryOrderBook;
+import com.matching.service.MatchBatch;
+import com.matching.service.NewOrderMatchingService;
+import com.matching.service.NewOrderbookService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+// 從快照與日誌重建交易對的記憶體訂單簿：先載入最新的快照（沒有時從空的訂單簿開始），再依序重新執行之後的每筆事件，
+// 時間使用記錄當時的引擎時間；撮合結果只用來更新訂單簿，不會再送到 Kafka
+// 日誌可能落後（期間交易對由其他實例撮合），重放在不寫回鏡像的訂單簿上進行，確認日誌不比 Redis 鏡像與已提交的 offset 舊
+// 才換上並重寫鏡像；否則改從 Redis 載入，並以快照把日誌的重建起點移到目前的結尾
+// 重建時間記錄在 matching.recovery 計時器，source 標籤為 snapshot 或 journal
+@Component
+public class JournalReplayer {
+
+    // 重放時每累積這麼多事件寫回一次訂單簿變更
+    private static final int FLUSH_EVENTS = 1024;
+
+    private final NewOrderMatchingService matchingService;
+    private final NewOrderbookService orderbookService;
+    private final OrderJournal journal;
+    private final SnapshotStore snapshotStore;
+    private final OrderEventOffsets orderEventOffsets;
+    private final MeterRegistry meterRegistry;
+
+    public JournalReplayer(NewOrderMatchingService matchingService, NewOrderbookService orderbookService, OrderJournal journal,
+                           SnapshotStore snapshotStore, OrderEventOffsets orderEventOffsets, MeterRegistry meterRegistry) {
+        this.matchingService = matchingService;
+        this.orderbookService = orderbookService;
+        this.journal = journal;
+        this.snapshotStore = snapshotStore;
+        this.orderEventOffsets = orderEventOffsets;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // partition 是撮合執行緒目前的分區，journalSequence 是日誌最後一筆的序號
+    // 回傳各種事件（依 OrderEventType 序數）已套用的最大 Kafka offset，沒有記錄時都是 -1
+    public long[] recover(String symbol, int partition, long journalSequence) {
+        long[] offsets = new long[OrderEventType.values().length];
+        Arrays.fill(offsets, -1);
+        long started = System.nanoTime();
+        MatchBatch batch = new MatchBatch(symbol);
+        long[] failures = {0};
+        long[] replayed = {0};
+        boolean[] otherPartition = {false};
+        try {
+            // 未開啟定期快照時仍可能有 rebase 寫入的快照
+            BookSnapshot snapshot = snapshotStore.loadLatest(symbol);
+            long fromSequence = 1;
+            InMemoryOrderBook book;
+            if (snapshot == null) {
+                book = orderbookService.resetOrderBook(symbol, List.of(), 0);
+            } else {
+                book = orderbookService.resetOrderBook(symbol, snapshot.orders(), snapshot.lastSequence());
+                System.arraycopy(snapshot.offsets(), 0, offsets, 0, Math.min(offsets.length, snapshot.offsets().length));
+                fromSequence = snapshot.journalSequence() + 1;
+            }
+            journal.read(symbol, fromSequence, entry -> {
+                replayed[0]++;
+                if (entry.offset() >= 0 && entry.partition() != partition) {
+                    otherPartition[0] = true;
+                }
+                try {
+                    matchingService.apply(entry, batch);
+                } catch (Exception e) {
+                    // 當初處理時同樣失敗，結果不影響訂單簿
+                    failures[0]++;
+                }
+                int type = entry.type().ordinal();
+                offsets[type] = Math.max(offsets[type], entry.offset());
+                if (batch.getEvents() >= FLUSH_EVENTS) {
+                    flushOrderBook(symbol, batch);
+                }
+            });
+            flushOrderBook(symbol, batch);
+
+            String stale = otherPartition[0] ? "it has events from another partition" : staleness(symbol, partition, offsets, book.getLastSequence());
+            if (stale != null) {
+                System.err.println("Warning: Journal of " + symbol + " is behind (" + stale + "), loading the order book from Redis");
+                return reload(symbol, partition, journalSequence);
+            }
+            orderbookService.attachOrderBook(symbol);
+
+            long elapsed = System.nanoTime() - started;
+            Timer.builder("matching.recovery")
+                    .description("Time to rebuild an order book before matching resumes")
+                    .tag("symbol", symbol)
+                    .tag("source", snapshot == null ? "journal" : "snapshot")
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(elapsed));
+            System.out.println("Recovered " + symbol + " from " + (snapshot == null ? "journal" : "snapshot at journal sequence " + snapshot.journalSequence()
+                    + " (" + snapshot.orders().size() + " orders)") + " and " + replayed[0] + " journal events in "
+                    + elapsed / 1_000_000 + " ms (" + failures[0] + " rejected)");
+        } catch (IOException e) {
+            System.err.println("Error: Failed to replay journal of " + symbol);
+            e.printStackTrace();
+            throw new IllegalStateException("Failed to replay journal of " + symbol, e);
+        }
+        return offsets;
+    }
+
+    // 日誌比 Redis 鏡像或已提交的 offset 舊時回傳原因，否則回傳 null
+    // 鏡像有記錄 offset 時以它為準（只涵蓋這個交易對）；沒有時改用分區的已提交 offset，其中可能有其他交易對的事件，只會多判定為落後
+    private String staleness(String symbol, int partition, long[] offsets, long lastSequence) {
+        long mirroredSequence = orderbookService.loadSequence(symbol);
+        if (mirroredSequence > lastSequence) {
+            return "Redis sequence " + mirroredSequence + " is ahead of " + lastSequence;
+        }
+        AppliedOffsets mirrored = orderbookService.loadOffsets(symbol);
+        if (mirrored != null) {
+            if (mirrored.partition() != partition) {
+                return "Redis was written from partition " + mirrored.partition();
+            }
+            for (int i = 0; i < offsets.length && i < mirrored.offsets().length; i++) {
+                if (mirrored.offsets()[i] > offsets[i]) {
+                    return "Redis has applied " + OrderEventType.values()[i] + " offset " + mirrored.offsets()[i] + ", journal " + offsets[i];
+                }
+            }
+            return null;
+        }
+        long[] committed = orderEventOffsets.committed(partition);
+        for (int i = 0; i < offsets.length; i++) {
+            if (committed[i] > offsets[i]) {
+                return "committed " + OrderEventType.values()[i] + " offset " + committed[i] + " is beyond journal offset " + offsets[i];
+            }
+        }
+        return null;
+    }
+
+    // 改從 Redis 載入，已套用的 offset 取自鏡像的記錄；日誌之後接著目前的結尾寫，重建起點移到這裡
+    private long[] reload(String symbol, int partition, long journalSequence) {
+        InMemoryOrderBook book = orderbookService.reloadOrderBook(symbol);
+        long[] offsets = new long[OrderEventType.values().length];
+        Arrays.fill(offsets, -1);
+        AppliedOffsets mirrored = orderbookService.loadOffsets(symbol);
+        if (mirrored != null && mirrored.partition() == partition) {
+            System.arraycopy(mirrored.offsets(), 0, offsets, 0, Math.min(offsets.length, mirrored.offsets().length));
+        }
+        try {
+            snapshotStore.rebase(symbol, journalSequence, book, offsets);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebasing journal of " + symbol, e);
+        }
+        System.out.println("Loaded " + symbol + " from Redis (" + book.size(Order.Side.BUY) + " bids, " + book.size(Order.Side.SELL)
+                + " asks) and rebased its journal at sequence " + journalSequence);
+        return offsets;
+    }
+
+    private void flushOrderBook(String symbol, MatchBatch batch) {
+        orderbookService.getOrderBook(symbol).flush();
+        batch.clear();
+    }
+}
@@ -0,0 +1,55 @@
+package com.matching.journal;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// 輸入事件日誌的設定與入口：每個交易對一個 SymbolJournal，由撮合執行緒在撮合前寫入
+@Component
+public class OrderJournal {
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean force;
+    private final boolean recoverOnStart;
+
+    public OrderJournal(@Value("${matching.journal.enabled:false}") boolean enabled,
+                        @Value("${matching.journal.dir:journal}") String directory,
+                        @Value("${matching.journal.segment-size-mb:64}") int segmentSizeMb,
+                        @Value("${matching.journal.force:false}") boolean force,
+                        @Value("${matching.journal.recover-on-start:false}") boolean recoverOnStart) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.force = force;
+        this.recoverOnStart = enabled && recoverOnStart;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isRecoverOnStart() {
+        return recoverOnStart;
+    }
+
+    public SymbolJournal open(String symbol) throws IOException {
+        return SymbolJournal.open(directory, symbol, segmentSize, force);
+    }
+
+    public long read(String symbol, long fromSequence, Consumer<JournalEntry> consumer) throws IOException {
+        return SymbolJournal.read(directory, symbol, fromSequence, consumer);
+    }
+
+    public void deleteBefore(String symbol, long sequence) throws IOException {
+        SymbolJournal.deleteBefore(directory, symbol, sequence);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,191 @@
+package com.matching.journal;
+
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+import com.matching.orderbook.InMemoryOrderBook;
+import com.matching.orderbook.OrderBook;
+import com.matching.orderbook.PriceLevel;
+import com.matching.service.NewOrderbookService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// 記憶體訂單簿的定期快照，與日誌放在同一個目錄：<目錄>/<交易對>/snapshot-<日誌序號 19 位>.snap
+// 撮合執行緒在批次寫出後複製掛單，編碼與寫檔在背景執行緒進行；保留最新的幾份，更早的快照與已被涵蓋的日誌段會刪除
+// 重建時載入最新且完整的快照，只重放之後的日誌；日誌落後而改從 Redis 載入時以 rebase 寫入新的起點（未開啟定期快照時也會寫）
+@Component
+public class SnapshotStore {
+
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final NewOrderbookService orderbookService;
+    private final OrderJournal journal;
+    private final boolean enabled;
+    private final long intervalMillis;
+    private final int keep;
+    private final ExecutorService writer;
+    // 快照還在寫入的交易對，寫完前不再產生新的快照
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+
+    public SnapshotStore(NewOrderbookService orderbookService,
+                         OrderJournal journal,
+                         @Value("${matching.snapshot.enabled:false}") boolean enabled,
+                         @Value("${matching.snapshot.interval-ms:60000}") long intervalMillis,
+                         @Value("${matching.snapshot.keep:2}") int keep) {
+        this.orderbookService = orderbookService;
+        this.journal = journal;
+        this.enabled = enabled && journal.isEnabled();
+        this.intervalMillis = intervalMillis;
+        this.keep = Math.max(1, keep);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 快照以日誌序號標記，沒有開啟日誌時無法接續重放，因此不產生
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    // 由撮合執行緒在批次寫出後呼叫：journalSequence 是最後一筆已套用的日誌序號，offsets 是各事件種類已套用的 Kafka offset
+    // 複製掛單的期間撮合會暫停，時間與掛單數成正比；回傳是否已排入寫入
+    public boolean capture(String symbol, long journalSequence, long[] offsets) {
+        OrderBook orderBook = orderbookService.getOrderBook(symbol);
+        if (!(orderBook instanceof InMemoryOrderBook book) || !writing.add(symbol)) {
+            return false;
+        }
+        List<EngineOrder> orders = new ArrayList<>(book.size(Order.Side.BUY) + book.size(Order.Side.SELL));
+        for (Order.Side side : Order.Side.values()) {
+            for (PriceLevel level : book.sideOf(side).levels()) {
+                for (EngineOrder order : level.orders()) {
+                    orders.add(order.copy());
+                }
+            }
+        }
+        BookSnapshot snapshot = new BookSnapshot(journalSequence, book.getLastSequence(), offsets.clone(), orders);
+        writer.execute(() -> {
+            try {
+                write(symbol, snapshot);
+            } finally {
+                writing.remove(symbol);
+            }
+        });
+        return true;
+    }
+
+    // 日誌內容已不可用時，把 book 寫成 journalSequence 的快照，之後的重建從這裡開始；寫完才回傳
+    public void rebase(String symbol, long journalSequence, InMemoryOrderBook book, long[] offsets) throws InterruptedException {
+        List<EngineOrder> orders = new ArrayList<>();
+        for (EngineOrder order : book.orders()) {
+            orders.add(order.copy());
+        }
+        BookSnapshot snapshot = new BookSnapshot(journalSequence, book.getLastSequence(), offsets.clone(), orders);
+        boolean written;
+        try {
+            // 與定期快照共用寫入執行緒，不會與前一個撮合執行緒排入的快照同時寫
+            written = writer.submit(() -> write(symbol, snapshot)).get();
+        } catch (ExecutionException e) {
+            written = false;
+        }
+        if (!written) {
+            throw new IllegalStateException("Failed to rebase journal of " + symbol + " at journal sequence " + journalSequence);
+        }
+    }
+
+    // 由新到舊嘗試，跳過損毀的快照；沒有可用的快照時回傳 null
+    public BookSnapshot loadLatest(String symbol) {
+        List<Path> snapshots;
+        try {
+            snapshots = snapshots(symbol);
+        } catch (IOException e) {
+            System.err.println("Error: Failed to list snapshots of " + symbol);
+            e.printStackTrace();
+            return null;
+        }
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                return BookSnapshot.read(snapshots.get(i));
+            } catch (Exception e) {
+                System.err.println("Warning: Skipping unreadable snapshot " + snapshots.get(i) + ": " + e);
+            }
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    // 回傳是否寫入成功，刪除舊快照與日誌段失敗不影響結果
+    private boolean write(String symbol, BookSnapshot snapshot) {
+        long started = System.nanoTime();
+        try {
+            Path directory = journal.getDirectory().resolve(symbol);
+            Files.createDirectories(directory);
+            snapshot.write(directory.resolve(PREFIX + String.format("%019d", snapshot.journalSequence()) + SUFFIX));
+            System.out.println("Wrote snapshot of " + symbol + " at journal sequence " + snapshot.journalSequence() + " with "
+                    + snapshot.orders().size() + " orders in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            System.err.println("Error: Failed to write snapshot of " + symbol + " at journal sequence " + snapshot.journalSequence());
+            e.printStackTrace();
+            return false;
+        }
+        try {
+            // 最舊的快照也要能接續重放，只刪除它之前的日誌段
+            List<Path> snapshots = snapshots(symbol);
+            for (int i = 0; i < snapshots.size() - keep; i++) {
+                Files.delete(snapshots.get(i));
+            }
+            List<Path> kept = snapshots.subList(Math.max(0, snapshots.size() - keep), snapshots.size());
+            journal.deleteBefore(symbol, sequenceOf(kept.get(0)));
+        } catch (Exception e) {
+            System.err.println("Warning: Failed to delete old snapshots and journal segments of " + symbol);
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    // 依日誌序號由舊到新排列
+    private List<Path> snapshots(String symbol) throws IOException {
+        Path directory = journal.getDirectory().resolve(symbol);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(SnapshotStore::sequenceOf))
+                    .toList();
+        }
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
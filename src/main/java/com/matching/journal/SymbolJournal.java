@@ -0,0 +1,247 @@
+package com.matching.journal;
+
+import com.matching.engine.OrderEvent;
+import com.matching.engine.OrderEventType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// 單一交易對的輸入事件日誌，只由該交易對的撮合執行緒寫入
+// 檔案為 <目錄>/<交易對>/<該段第一筆序號 19 位>.journal，每段固定大小並以記憶體映射寫入，寫滿後換下一段
+// 每筆記錄：[內容長度 4][CRC32C 4][序號 8][事件種類 1][時間 秒 8 + 奈秒 4][分區 4][offset 8][內容]
+// CRC 涵蓋序號到內容結尾；長度最後寫入，長度為 0 表示資料結尾，-1 表示本段結束、接續下一段
+// 開啟時驗證最後一段，序號不連續或 CRC 不符（當機時寫到一半）之後的內容都捨棄並從該處接著寫；
+// 已被快照涵蓋的舊段可以用 deleteBefore 刪除
+public class SymbolJournal implements AutoCloseable {
+
+    static final int HEADER_LENGTH = 4 + 4 + 8 + 1 + 12 + 4 + 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final String symbol;
+    private final int segmentSize;
+    private final boolean force;
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long segment;
+    private long nextSequence;
+
+    private SymbolJournal(Path directory, String symbol, int segmentSize, boolean force) {
+        this.directory = directory;
+        this.symbol = symbol;
+        this.segmentSize = segmentSize;
+        this.force = force;
+    }
+
+    // 開啟並定位到最後一筆有效記錄之後；force 為 true 時每次 flush 都同步到磁碟，否則只保證程序當機時不遺失
+    public static SymbolJournal open(Path root, String symbol, int segmentSize, boolean force) throws IOException {
+        Path directory = root.resolve(symbol);
+        Files.createDirectories(directory);
+        SymbolJournal journal = new SymbolJournal(directory, symbol, segmentSize, force);
+        Tail tail = scan(directory, Long.MAX_VALUE, null);
+        journal.nextSequence = tail.nextSequence();
+        journal.map(tail.segment());
+        journal.buffer.position(tail.position());
+        // 清掉寫到一半的記錄，避免之後較短的記錄後面殘留舊內容
+        for (int i = tail.position(); i < journal.buffer.limit(); i++) {
+            if (journal.buffer.get(i) != 0) {
+                journal.buffer.put(i, (byte) 0);
+            }
+        }
+        return journal;
+    }
+
+    // 依序讀出序號不小於 fromSequence 的有效記錄，回傳最後一筆的序號（沒有記錄時為 fromSequence - 1）
+    public static long read(Path root, String symbol, long fromSequence, Consumer<JournalEntry> consumer) throws IOException {
+        Path directory = root.resolve(symbol);
+        if (!Files.isDirectory(directory)) {
+            return fromSequence - 1;
+        }
+        return Math.max(fromSequence, scan(directory, fromSequence, consumer).nextSequence()) - 1;
+    }
+
+    // 刪除所有記錄序號都不大於 sequence 的段；寫入中的最後一段不會被刪除
+    public static void deleteBefore(Path root, String symbol, long sequence) throws IOException {
+        Path directory = root.resolve(symbol);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Long> segments = segments(directory);
+        for (int i = 0; i + 1 < segments.size() && segments.get(i + 1) <= sequence + 1; i++) {
+            Files.delete(segmentPath(directory, segments.get(i)));
+        }
+    }
+
+    // 事件須已通過檢查；time、partition 與 offset 見 JournalEntry
+    public void append(OrderEvent event, Instant time, int partition, long offset) {
+        byte[] payload = JournalCodec.encode(event);
+        int recordLength = HEADER_LENGTH + payload.length;
+        if (recordLength + 4 > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + recordLength + " bytes exceeds segment size " + segmentSize);
+        }
+        if (buffer.remaining() < recordLength + 4) {
+            roll();
+        }
+
+        header.clear();
+        header.putInt(payload.length);
+        header.putInt(0);
+        header.putLong(nextSequence);
+        header.put((byte) event.getType().ordinal());
+        header.putLong(time.getEpochSecond());
+        header.putInt(time.getNano());
+        header.putInt(partition);
+        header.putLong(offset);
+        crc.reset();
+        crc.update(header.array(), 8, HEADER_LENGTH - 8);
+        crc.update(payload);
+
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(header.array(), 8, HEADER_LENGTH - 8);
+        buffer.put(payload);
+        // 長度最後寫入，讀取端看到長度時內容已完整
+        buffer.putInt(start, payload.length);
+        nextSequence++;
+    }
+
+    // 撮合批次寫出前呼叫
+    public void flush() {
+        if (force) {
+            buffer.force();
+        }
+    }
+
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void roll() {
+        if (buffer.remaining() >= 4) {
+            buffer.putInt(buffer.position(), END_OF_SEGMENT);
+        }
+        buffer.force();
+        try {
+            channel.close();
+            map(nextSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll journal of " + symbol, e);
+        }
+    }
+
+    private void map(long segment) throws IOException {
+        this.segment = segment;
+        channel = FileChannel.open(segmentPath(directory, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private record Tail(long segment, int position, long nextSequence) {
+    }
+
+    // 從包含 fromSequence 的段開始驗證，回傳最後一筆有效記錄之後的位置；consumer 不為 null 時解碼序號不小於 fromSequence 的記錄
+    private static Tail scan(Path directory, long fromSequence, Consumer<JournalEntry> consumer) throws IOException {
+        List<Long> segments = segments(directory);
+        if (segments.isEmpty()) {
+            return new Tail(1, 0, 1);
+        }
+        int first = 0;
+        while (first + 1 < segments.size() && segments.get(first + 1) <= fromSequence) {
+            first++;
+        }
+        if (consumer != null && segments.get(first) > fromSequence) {
+            System.err.println("Error: Journal of " + directory.getFileName() + " starts at sequence " + segments.get(first)
+                    + ", records from " + fromSequence + " are missing");
+        }
+        long nextSequence = segments.get(first);
+        CRC32C crc = new CRC32C();
+        for (int i = first; i < segments.size(); i++) {
+            long segment = segments.get(i);
+            if (segment != nextSequence) {
+                System.err.println("Error: Journal of " + directory.getFileName() + " is missing records " + nextSequence + " to " + (segment - 1));
+                return new Tail(nextSequence, 0, nextSequence);
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(directory, segment), StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int position = 0;
+                while (true) {
+                    int length = buffer.limit() - position >= 4 ? buffer.getInt(position) : END_OF_SEGMENT;
+                    if (length == END_OF_SEGMENT && i < segments.size() - 1) {
+                        break;
+                    }
+                    if (length <= 0 || position + HEADER_LENGTH + length > buffer.limit()) {
+                        return new Tail(segment, position, nextSequence);
+                    }
+                    crc.reset();
+                    crc.update(buffer.slice(position + 8, HEADER_LENGTH - 8 + length));
+                    long sequence = buffer.getLong(position + 8);
+                    if ((int) crc.getValue() != buffer.getInt(position + 4) || sequence != nextSequence) {
+                        System.err.println("Warning: Journal of " + directory.getFileName() + " ends at sequence " + (nextSequence - 1)
+                                + " with an incomplete record in segment " + segment + " at " + position);
+                        return new Tail(segment, position, nextSequence);
+                    }
+                    if (consumer != null && sequence >= fromSequence) {
+                        consumer.accept(decode(buffer, position, length, sequence));
+                    }
+                    nextSequence++;
+                    position += HEADER_LENGTH + length;
+                }
+            }
+        }
+        // 最後一段剛好以 -1 結束
+        return new Tail(nextSequence, 0, nextSequence);
+    }
+
+    private static JournalEntry decode(ByteBuffer buffer, int position, int length, long sequence) {
+        OrderEventType type = JournalCodec.type(buffer.get(position + 16));
+        Instant time = Instant.ofEpochSecond(buffer.getLong(position + 17), buffer.getInt(position + 25));
+        int partition = buffer.getInt(position + 29);
+        long offset = buffer.getLong(position + 33);
+        byte[] payload = new byte[length];
+        buffer.get(position + HEADER_LENGTH, payload);
+        return JournalCodec.decode(sequence, type, time, partition, offset, payload);
+    }
+
+    private static List<Long> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("%019d", segment) + SUFFIX);
+    }
+}
@@ -0,0 +1,35 @@
+package com.matching.metrics;
+
+// 從 new_orders 收到訂單到舊有 topic 送出之間各階段的延遲，名稱是 matching.latency 的 stage 標籤
+public enum LatencyStage {
+    // 解析 Kafka 紀錄並放進撮合執行緒的 ring buffer
+    DECODE("decode"),
+    // 在 ring buffer 中等待撮合執行緒取出
+    QUEUE("queue"),
+    // 訂單簿找出可成交的對手方掛單並扣減數量（redis 模式含讀寫 Redis）
+    BOOK_MATCH("book.match"),
+    // 撮合執行緒處理一個新單、撤單或改單事件的總時間
+    MATCH("match"),
+    // 批次結束時把記憶體訂單簿的變更交給鏡像
+    BOOK_FLUSH("book.flush"),
+    // 鏡像以一次 pipeline 寫入 Redis，不分交易對
+    REDIS_WRITE("redis.write"),
+    SEND_MATCH_RESULT("send.match-results"),
+    SEND_TRADE("send.recent-trades"),
+    SEND_KLINE("send.kline-updates"),
+    SEND_ORDER_UPDATE("send.user-order-updates"),
+    SEND_DELTA("send.order-book-delta"),
+    SEND_MATCHED_ORDER("send.matched_orders"),
+    // 一批成交與訂單寫入 MySQL，不分交易對
+    PERSIST("persist");
+
+    private final String tag;
+
+    LatencyStage(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
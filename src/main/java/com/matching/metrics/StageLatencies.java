@@ -0,0 +1,158 @@
+package com.matching.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// 各交易對、各階段的延遲：寫入端以 HdrHistogram Recorder 記錄奈秒數（第一次之後不配置記憶體），
+// 每個視窗（matching.latency.window-ms）結束時取出區間直方圖，計算 p50 / p99 / p99.9 / max 供 Micrometer 讀取
+// 指標為 matching.latency（quantile 標籤）、matching.latency.max 與 matching.latency.count，單位為秒，
+// 另有 stage 與 symbol 標籤；不分交易對的階段 symbol 為 all
+@Component
+public class StageLatencies {
+
+    public static final String ALL_SYMBOLS = "all";
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final String[] QUANTILE_TAGS = {"0.5", "0.99", "0.999"};
+    private static final int MAX = QUANTILES.length;
+    private static final int STAGE_COUNT = LatencyStage.values().length;
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Map<String, SymbolLatencies> symbols = new ConcurrentHashMap<>();
+    private final SymbolLatencies disabledLatencies;
+
+    @Autowired
+    public StageLatencies(MeterRegistry meterRegistry, @Value("${matching.latency.enabled:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.disabledLatencies = new SymbolLatencies(this, ALL_SYMBOLS, false);
+    }
+
+    // 不記錄任何延遲，供壓測與工具直接建立服務時使用
+    public static StageLatencies disabled() {
+        return new StageLatencies(null, false);
+    }
+
+    // 撮合執行緒可以先取得自己交易對的紀錄器，省去每次查表
+    public SymbolLatencies forSymbol(String symbol) {
+        if (!enabled) {
+            return disabledLatencies;
+        }
+        SymbolLatencies latencies = symbols.get(symbol);
+        return latencies != null ? latencies : symbols.computeIfAbsent(symbol, key -> new SymbolLatencies(this, key, true));
+    }
+
+    public void record(LatencyStage stage, String symbol, long nanos) {
+        if (enabled) {
+            forSymbol(symbol).record(stage, nanos);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${matching.latency.window-ms:10000}")
+    public void rotate() {
+        for (SymbolLatencies latencies : symbols.values()) {
+            latencies.rotate();
+        }
+    }
+
+    public static final class SymbolLatencies {
+
+        private final StageLatencies owner;
+        private final String symbol;
+        private final boolean enabled;
+        private final AtomicReferenceArray<Recorder> recorders = new AtomicReferenceArray<>(STAGE_COUNT);
+        // 只由 rotate 使用，重複利用以免每個視窗配置新的直方圖
+        private final Histogram[] intervals = new Histogram[STAGE_COUNT];
+        // 最近一個視窗的分位數與最大值（秒），以及累計筆數
+        private final AtomicReferenceArray<double[]> windows = new AtomicReferenceArray<>(STAGE_COUNT);
+        private final long[] counts = new long[STAGE_COUNT];
+
+        private SymbolLatencies(StageLatencies owner, String symbol, boolean enabled) {
+            this.owner = owner;
+            this.symbol = symbol;
+            this.enabled = enabled;
+        }
+
+        public void record(LatencyStage stage, long nanos) {
+            if (!enabled) {
+                return;
+            }
+            Recorder recorder = recorders.get(stage.ordinal());
+            if (recorder == null) {
+                recorder = register(stage);
+            }
+            recorder.recordValue(Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+        }
+
+        // 每個階段第一次記錄時才建立直方圖與指標
+        private synchronized Recorder register(LatencyStage stage) {
+            int index = stage.ordinal();
+            Recorder recorder = recorders.get(index);
+            if (recorder != null) {
+                return recorder;
+            }
+            windows.set(index, new double[MAX + 1]);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                int quantile = i;
+                Gauge.builder("matching.latency", this, latencies -> latencies.windows.get(index)[quantile])
+                        .description("Latency of a matching pipeline stage over the last window")
+                        .tags("stage", stage.getTag(), "symbol", symbol, "quantile", QUANTILE_TAGS[i])
+                        .baseUnit("seconds")
+                        .register(owner.meterRegistry);
+            }
+            Gauge.builder("matching.latency.max", this, latencies -> latencies.windows.get(index)[MAX])
+                    .description("Maximum latency of a matching pipeline stage over the last window")
+                    .tags("stage", stage.getTag(), "symbol", symbol)
+                    .baseUnit("seconds")
+                    .register(owner.meterRegistry);
+            FunctionCounter.builder("matching.latency.count", this, latencies -> latencies.count(index))
+                    .description("Number of latencies recorded for a matching pipeline stage")
+                    .tags("stage", stage.getTag(), "symbol", symbol)
+                    .register(owner.meterRegistry);
+            recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+            recorders.set(index, recorder);
+            return recorder;
+        }
+
+        private void rotate() {
+            for (int i = 0; i < STAGE_COUNT; i++) {
+                Recorder recorder = recorders.get(i);
+                if (recorder == null) {
+                    continue;
+                }
+                Histogram interval = recorder.getIntervalHistogram(intervals[i]);
+                intervals[i] = interval;
+                double[] window = new double[MAX + 1];
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    window[q] = interval.getValueAtPercentile(QUANTILES[q] * 100) / 1e9;
+                }
+                window[MAX] = interval.getMaxValue() / 1e9;
+                windows.set(i, window);
+                synchronized (counts) {
+                    counts[i] += interval.getTotalCount();
+                }
+            }
+        }
+
+        private double count(int index) {
+            synchronized (counts) {
+                return counts[index];
+            }
+        }
+    }
+}
@@ -107,7 +107,9 @@ public class Order {
         PENDING,
         PARTIALLY_FILLED,
         COMPLETED,
-        CANCELLED
+        CANCELLED,
+        // 新單、撤單或改單請求被拒絕（不符合交易對規格、訂單不存在或不屬於該使用者），訂單簿沒有變動
+        REJECTED
     }
 
     public enum Side {
@@ -0,0 +1,30 @@
+package com.matching.orderbook;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// 記憶體模式下與鏡像一起寫入 Redis 的 Kafka 進度：鏡像內容已套用到 partition 分區中各事件種類（依 OrderEventType 序數）的這些 offset
+// 格式為 <分區>:<新單>,<撤單>,<改單>；從日誌重建前用它判斷日誌是否比鏡像舊
+public record AppliedOffsets(int partition, long[] offsets) {
+
+    public byte[] encode() {
+        StringBuilder value = new StringBuilder().append(partition).append(':');
+        for (int i = 0; i < offsets.length; i++) {
+            if (i > 0) {
+                value.append(',');
+            }
+            value.append(offsets[i]);
+        }
+        return value.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // 格式不符時拋出 IllegalArgumentException
+    public static AppliedOffsets decode(String value) {
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Malformed applied offsets: " + value);
+        }
+        long[] offsets = Arrays.stream(value.substring(colon + 1).split(",")).mapToLong(Long::parseLong).toArray();
+        return new AppliedOffsets(Integer.parseInt(value.substring(0, colon)), offsets);
+    }
+}
@@ -0,0 +1,138 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Redis 掛單內容的二進位格式，全部為大端序：
+// [版本 1][序號 8][價格 8][數量 8][已成交 8][未成交 8][止損價 8][止盈價 8]
+// [方向 1][類型 1][狀態 1][createdAt 12][updatedAt 12][modifiedAt 12][ID][使用者 ID][交易對]
+// 金額為定點數，沒有價格時為 FixedPoint.NONE；列舉存序數，null 為 -1；時間為秒 8 + 奈秒 4，null 的秒數為 Long.MIN_VALUE；
+// 字串為 2 位元組長度加 UTF-8。第一個位元組是版本號，不會是舊版 <序號>:<JSON> 開頭的數字字元
+// RedisScriptOrderBook 的腳本直接讀寫序號（第 2-9 位元組）與未成交數量（第 34-41 位元組），調整欄位順序時要一起改
+public final class BinaryOrderCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int FIXED_LENGTH = 1 + 8 * 7 + 3 + 12 * 3;
+    private static final long NULL_SECONDS = Long.MIN_VALUE;
+    private static final Order.Side[] SIDES = Order.Side.values();
+    private static final Order.OrderType[] ORDER_TYPES = Order.OrderType.values();
+    private static final Order.OrderStatus[] STATUSES = Order.OrderStatus.values();
+
+    private BinaryOrderCodec() {
+    }
+
+    public static boolean isBinary(byte[] value) {
+        return value.length > 0 && value[0] == VERSION;
+    }
+
+    public static byte[] encode(EngineOrder order, long sequence) {
+        byte[] id = utf8(order.getId());
+        byte[] userId = utf8(order.getUserId());
+        byte[] symbol = utf8(order.getSymbol());
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + 6 + length(id) + length(userId) + length(symbol));
+
+        buffer.put(VERSION);
+        buffer.putLong(sequence);
+        buffer.putLong(order.getPrice());
+        buffer.putLong(order.getQuantity());
+        buffer.putLong(order.getFilledQuantity());
+        buffer.putLong(order.getUnfilledQuantity());
+        buffer.putLong(order.getStopPrice());
+        buffer.putLong(order.getTakeProfitPrice());
+        buffer.put(ordinal(order.getSide()));
+        buffer.put(ordinal(order.getOrderType()));
+        buffer.put(ordinal(order.getStatus()));
+        putInstant(buffer, order.getCreatedAt());
+        putInstant(buffer, order.getUpdatedAt());
+        putInstant(buffer, order.getModifiedAt());
+        putString(buffer, id);
+        putString(buffer, userId);
+        putString(buffer, symbol);
+        return buffer.array();
+    }
+
+    public static EngineOrder decode(byte[] value) {
+        if (!isBinary(value)) {
+            System.err.println("Error: Unsupported order encoding version " + (value.length > 0 ? value[0] : "(empty)"));
+            throw new IllegalArgumentException("Unsupported order encoding version");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value, 1, value.length - 1);
+        EngineOrder order = new EngineOrder();
+        order.setSequence(buffer.getLong());
+        order.setPrice(buffer.getLong());
+        order.setQuantity(buffer.getLong());
+        order.setFilledQuantity(buffer.getLong());
+        order.setUnfilledQuantity(buffer.getLong());
+        order.setStopPrice(buffer.getLong());
+        order.setTakeProfitPrice(buffer.getLong());
+        order.setSide(enumAt(SIDES, buffer.get()));
+        order.setOrderType(enumAt(ORDER_TYPES, buffer.get()));
+        order.setStatus(enumAt(STATUSES, buffer.get()));
+        order.setCreatedAt(getInstant(buffer));
+        order.setUpdatedAt(getInstant(buffer));
+        order.setModifiedAt(getInstant(buffer));
+        order.setId(getString(buffer));
+        order.setUserId(getString(buffer));
+        order.setSymbol(getString(buffer));
+        return order;
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return value == null ? -1 : (byte) value.ordinal();
+    }
+
+    private static <E> E enumAt(E[] values, byte ordinal) {
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    private static void putInstant(ByteBuffer buffer, Instant instant) {
+        buffer.putLong(instant == null ? NULL_SECONDS : instant.getEpochSecond());
+        buffer.putInt(instant == null ? 0 : instant.getNano());
+    }
+
+    private static Instant getInstant(ByteBuffer buffer) {
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        return seconds == NULL_SECONDS ? null : Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    // 長度 0xFFFF 表示 null
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) 0xFFFF);
+            return;
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length == 0xFFFF) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static byte[] utf8(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= 0xFFFF) {
+            throw new IllegalArgumentException("Order field too long for binary encoding: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+}
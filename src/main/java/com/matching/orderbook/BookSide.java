@@ -0,0 +1,76 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeMap;
+
+// 訂單簿的一側：價格檔位以 TreeMap 排序，並快取最佳檔位讓查詢為 O(1)
+public class BookSide {
+
+    private final Order.Side side;
+    private final TreeMap<Long, PriceLevel> levels;
+    private PriceLevel bestLevel;
+    private int orderCount;
+
+    public BookSide(Order.Side side) {
+        this.side = side;
+        // 買方價格由高到低，賣方價格由低到高
+        this.levels = new TreeMap<>(side == Order.Side.BUY ? Comparator.<Long>reverseOrder() : Comparator.<Long>naturalOrder());
+    }
+
+    public Order.Side getSide() {
+        return side;
+    }
+
+    public EngineOrder peekBest() {
+        return bestLevel == null ? null : bestLevel.peek();
+    }
+
+    // O(log 檔位數) 插入到對應檔位的隊尾
+    void add(OrderNode node) {
+        EngineOrder order = node.order;
+        PriceLevel level = levels.get(order.getPrice());
+        if (level == null) {
+            level = new PriceLevel(order.getPrice());
+            levels.put(order.getPrice(), level);
+            if (bestLevel == null || isBetter(order.getPrice(), bestLevel.getPrice())) {
+                bestLevel = level;
+            }
+        }
+        level.add(node);
+        orderCount++;
+    }
+
+    // 節點記錄所屬檔位，移除為 O(1)，只有檔位清空時才需要 O(log 檔位數)
+    void remove(OrderNode node) {
+        PriceLevel level = node.level;
+        level.remove(node);
+        orderCount--;
+        if (level.isEmpty()) {
+            levels.remove(level.getPrice());
+            if (level == bestLevel) {
+                bestLevel = levels.isEmpty() ? null : levels.firstEntry().getValue();
+            }
+        }
+    }
+
+    public int orderCount() {
+        return orderCount;
+    }
+
+    public int levelCount() {
+        return levels.size();
+    }
+
+    // 由最佳價格開始的所有檔位
+    public Collection<PriceLevel> levels() {
+        return levels.values();
+    }
+
+    private boolean isBetter(long price, long than) {
+        return side == Order.Side.BUY ? price > than : price < than;
+    }
+}
@@ -0,0 +1,7 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+
+// 撮合時的一筆成交：已更新數量與狀態的對手方掛單，以及本次成交數量
+public record Fill(EngineOrder maker, long quantity) {
+}
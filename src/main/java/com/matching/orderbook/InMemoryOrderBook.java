@@ -0,0 +1,172 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 記憶體中的價格-時間優先訂單簿，只由單一撮合執行緒存取
+// 同價位依單調遞增的序號排隊，不受價格大小或時間戳精度影響；另以訂單 ID 索引，查詢與移除皆為 O(1)
+// 寫回 Redis 的變更在批次內依訂單合併，flush 時每筆訂單只編碼一次
+public class InMemoryOrderBook implements OrderBook {
+
+    // 一筆訂單在批次內尚未寫回的變更
+    private static final class PendingChange {
+        final EngineOrder order;
+        // 批次開始前已寫入 Redis、需要移除的價格索引位置（改價重新排隊後訂單上的價格與序號會改變）
+        boolean removed;
+        long removedPrice;
+        long removedSequence;
+        // 批次結束時是否仍在簿內，以及是否為批次內新掛入
+        boolean resting;
+        boolean added;
+
+        PendingChange(EngineOrder order) {
+            this.order = order;
+        }
+    }
+
+    private final String symbol;
+    private final BookSide bids = new BookSide(Order.Side.BUY);
+    private final BookSide asks = new BookSide(Order.Side.SELL);
+    private final Map<String, OrderNode> ordersById = new HashMap<>();
+    private final RedisOrderBookMirror mirror;
+    private final Map<String, PendingChange> pendingChanges = new LinkedHashMap<>();
+    private long nextSequence = 1;
+
+    // mirror 為 null 時不寫回 Redis（例如重放或壓測）
+    public InMemoryOrderBook(String symbol, RedisOrderBookMirror mirror) {
+        this.symbol = symbol;
+        this.mirror = mirror;
+    }
+
+    @Override
+    public String getSymbol() {
+        return symbol;
+    }
+
+    @Override
+    public EngineOrder getBestOrder(Order.Side side) {
+        return sideOf(side).peekBest();
+    }
+
+    @Override
+    public EngineOrder getOrder(String orderId) {
+        OrderNode node = ordersById.get(orderId);
+        return node == null ? null : node.order;
+    }
+
+    @Override
+    public void addOrder(EngineOrder order) {
+        order.setSequence(nextSequence++);
+        insert(order);
+        if (mirror != null) {
+            PendingChange change = pendingChanges.computeIfAbsent(order.getId(), id -> new PendingChange(order));
+            change.resting = true;
+            change.added = true;
+        }
+    }
+
+    // 回傳的掛單就是簿內的實例，撮合時已直接修改，部分成交不影響排隊位置，這裡只需同步鏡像
+    @Override
+    public void updateOrder(EngineOrder order) {
+        if (mirror != null) {
+            pendingChanges.computeIfAbsent(order.getId(), id -> new PendingChange(order)).resting = true;
+        }
+    }
+
+    @Override
+    public void removeOrder(EngineOrder order) {
+        OrderNode node = ordersById.remove(order.getId());
+        if (node == null) {
+            return;
+        }
+        sideOf(order.getSide()).remove(node);
+        if (mirror != null) {
+            PendingChange change = pendingChanges.computeIfAbsent(order.getId(), id -> new PendingChange(order));
+            // 批次內才掛入的訂單還沒寫進 Redis，不需要移除
+            if (!change.added) {
+                change.removed = true;
+                change.removedPrice = order.getPrice();
+                change.removedSequence = order.getSequence();
+            }
+            change.resting = false;
+            change.added = false;
+        }
+    }
+
+    // 依訂單合併後送給鏡像：批次內掛入又成交完的訂單不會寫入，多次部分成交只寫最後狀態
+    // 鏡像寫入失敗而不可信時，改為重寫整本訂單簿
+    @Override
+    public void flush() {
+        if (mirror != null && mirror.needsResync(symbol)) {
+            pendingChanges.clear();
+            mirror.resync(symbol, orders(), getLastSequence());
+            return;
+        }
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+        for (PendingChange change : pendingChanges.values()) {
+            if (change.removed) {
+                // 移除後又掛入（改價）時，Hash 中的內容會由後面的 add 覆寫
+                mirror.remove(change.order, change.removedPrice, change.removedSequence);
+            }
+            if (change.added) {
+                mirror.add(change.order);
+            } else if (change.resting) {
+                mirror.update(change.order);
+            }
+        }
+        pendingChanges.clear();
+    }
+
+    // 從 Redis 載入既有掛單，保留原本的序號且不再寫回鏡像；同價位須依序號由小到大載入（即 ZRANGE 的順序）
+    public void restoreOrder(EngineOrder order) {
+        insert(order);
+        advanceSequence(order.getSequence());
+    }
+
+    // 確保之後指派的序號大於 lastSequence
+    public void advanceSequence(long lastSequence) {
+        nextSequence = Math.max(nextSequence, lastSequence + 1);
+    }
+
+    // 最後指派（或還原）的序號
+    public long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    // 目前所有掛單，每一方依價格-時間優先排列
+    public List<EngineOrder> orders() {
+        List<EngineOrder> orders = new ArrayList<>(ordersById.size());
+        for (Order.Side side : Order.Side.values()) {
+            for (PriceLevel level : sideOf(side).levels()) {
+                for (EngineOrder order : level.orders()) {
+                    orders.add(order);
+                }
+            }
+        }
+        return orders;
+    }
+
+    public int size(Order.Side side) {
+        return sideOf(side).orderCount();
+    }
+
+    public BookSide sideOf(Order.Side side) {
+        return side == Order.Side.BUY ? bids : asks;
+    }
+
+    private void insert(EngineOrder order) {
+        OrderNode node = new OrderNode(order);
+        if (ordersById.putIfAbsent(order.getId(), node) != null) {
+            throw new IllegalArgumentException("Order " + order.getId() + " is already resting in " + symbol);
+        }
+        sideOf(order.getSide()).add(node);
+    }
+}
@@ -0,0 +1,64 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.model.Order;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// 單一交易對的訂單簿，撮合邏輯只透過這個介面存取掛單
+public interface OrderBook {
+
+    String getSymbol();
+
+    // 取得指定方向的最佳掛單，沒有掛單時回傳 null
+    EngineOrder getBestOrder(Order.Side side);
+
+    // 依訂單 ID 查詢掛單，不存在時回傳 null
+    EngineOrder getOrder(String orderId);
+
+    // 新增掛單
+    void addOrder(EngineOrder order);
+
+    // 掛單部分成交或同價減量後更新數量與狀態，不改變排隊位置
+    void updateOrder(EngineOrder order);
+
+    // 移除掛單（完全成交、撤單或改價）
+    void removeOrder(EngineOrder order);
+
+    // 以 taker 的剩餘數量與限價依價格-時間優先掃過對手方，成交的掛單在簿內更新或移除後依序回傳；
+    // taker 的數量與狀態不在這裡修改，由呼叫端依回傳的成交逐筆套用
+    default List<Fill> match(EngineOrder taker, Instant now) {
+        List<Fill> fills = new ArrayList<>();
+        Order.Side opponentSide = taker.isBuy() ? Order.Side.SELL : Order.Side.BUY;
+        long remaining = taker.getUnfilledQuantity();
+
+        while (remaining > 0) {
+            EngineOrder maker = getBestOrder(opponentSide);
+            if (maker == null || !taker.crosses(maker.getPrice())) {
+                break;
+            }
+
+            long matchedQuantity = Math.min(remaining, maker.getUnfilledQuantity());
+            maker.fill(matchedQuantity, now);
+            if (maker.getUnfilledQuantity() == 0) {
+                removeOrder(maker);
+            } else {
+                updateOrder(maker);
+            }
+            fills.add(new Fill(maker, matchedQuantity));
+            remaining -= matchedQuantity;
+        }
+        return fills;
+    }
+
+    // 撮合時是否已把限價單的剩餘數量一併掛入訂單簿，是的話呼叫端不需再 addOrder
+    default boolean restsOnMatch() {
+        return false;
+    }
+
+    // 批次結束時呼叫，把批次內累積的變更寫出；直接讀寫 Redis 的實作沒有累積
+    default void flush() {
+    }
+}
@@ -0,0 +1,10 @@
+package com.matching.orderbook;
+
+public enum OrderBookMode {
+    // 記憶體訂單簿為權威資料，Redis 只做非同步鏡像
+    MEMORY,
+    // 每次存取都直接讀寫 Redis ZSet
+    REDIS,
+    // 以 Redis 為權威資料，每筆訂單的撮合與掛單在一次 EVALSHA 中原子完成
+    REDIS_SCRIPT
+}
@@ -0,0 +1,15 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+
+// 價格檔位雙向鏈結串列中的節點，讓依訂單 ID 移除為 O(1)
+final class OrderNode {
+    final EngineOrder order;
+    PriceLevel level;
+    OrderNode prev;
+    OrderNode next;
+
+    OrderNode(EngineOrder order) {
+        this.order = order;
+    }
+}
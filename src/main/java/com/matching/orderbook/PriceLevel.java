@@ -0,0 +1,87 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// 同一價格的掛單，依序號先進先出
+public class PriceLevel {
+
+    private final long price;
+    private OrderNode head;
+    private OrderNode tail;
+    private int size;
+
+    public PriceLevel(long price) {
+        this.price = price;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public EngineOrder peek() {
+        return head == null ? null : head.order;
+    }
+
+    void add(OrderNode node) {
+        node.level = this;
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        size++;
+    }
+
+    void remove(OrderNode node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.level = null;
+        node.prev = null;
+        node.next = null;
+        size--;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 依排隊順序走訪
+    public Iterable<EngineOrder> orders() {
+        return () -> new Iterator<>() {
+            private OrderNode current = head;
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public EngineOrder next() {
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                EngineOrder order = current.order;
+                current = current.next;
+                return order;
+            }
+        };
+    }
+}
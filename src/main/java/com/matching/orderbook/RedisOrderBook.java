@@ -0,0 +1,244 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// 直接以 Redis 為權威資料的訂單簿，每次存取都是一次網路往返；撮合時預取一個視窗的對手方掛單
+public class RedisOrderBook implements OrderBook {
+
+    // 依價格-時間優先取價格索引中第 ARGV[1] 到 ARGV[2] 個成員，排序鍵超過 ARGV[3] 的不取，
+    // 依序回傳每筆的 {訂單內容, 未成交數量}；與 RedisScriptOrderBook 一樣以 RedisScript 執行，只送 SHA1（EVALSHA），
+    // 伺服器沒有快取腳本時才自動改送完整內容
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> WINDOW_SCRIPT = RedisScript.of("""
+            local members = redis.call('ZRANGE', KEYS[1], ARGV[1], ARGV[2])
+            local result = {}
+            for _, member in ipairs(members) do
+                -- 成員前 19 個字元是價格排序鍵，前 40 個字元是價格與序號的排序前綴
+                if string.sub(member, 1, 19) > ARGV[3] then
+                    break
+                end
+                local id = string.sub(member, 41)
+                table.insert(result, redis.call('HGET', KEYS[2], id) or false)
+                table.insert(result, redis.call('HGET', KEYS[3], id) or false)
+            end
+            return result
+            """, List.class);
+
+    // 還沒觀察到對手方掛單大小前的預取筆數
+    private static final int INITIAL_WINDOW = 4;
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ORDER_SCRIPT = RedisScript.of("""
+            return {redis.call('HGET', KEYS[1], ARGV[1]), redis.call('HGET', KEYS[2], ARGV[1])}
+            """, List.class);
+
+    // 腳本結果的元素保持 byte[]
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final RedisSerializer<List> RAW_LIST = (RedisSerializer<List>) (RedisSerializer<?>) RedisSerializer.byteArray();
+
+    protected final String symbol;
+    protected final RedisTemplate<String, Object> redisTemplate;
+    protected final RedisOrderBookCodec codec;
+    protected final byte[] sequenceKey;
+    protected final byte[] ordersKey;
+    protected final byte[] quantitiesKey;
+    private final int maxWindow;
+    // 腳本的 KEYS 以 RedisTemplate 的 key 序列化器編碼，使用字串
+    private final List<String> orderKeys;
+    private final List<String> bidWindowKeys;
+    private final List<String> askWindowKeys;
+    // 兩側掛單未成交數量的移動平均，用來估計一筆訂單要掃過幾張掛單
+    private final long[] averageQuantities = new long[Order.Side.values().length];
+
+    public RedisOrderBook(String symbol, RedisTemplate<String, Object> redisTemplate, RedisOrderBookCodec codec, int maxWindow) {
+        this.symbol = symbol;
+        this.maxWindow = Math.max(1, maxWindow);
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.sequenceKey = codec.sequenceKey(symbol).getBytes(StandardCharsets.UTF_8);
+        this.ordersKey = codec.ordersKeyBytes(symbol);
+        this.quantitiesKey = codec.quantitiesKeyBytes(symbol);
+        this.orderKeys = List.of(codec.ordersKey(symbol), codec.quantitiesKey(symbol));
+        this.bidWindowKeys = List.of(codec.key(symbol, Order.Side.BUY), codec.ordersKey(symbol), codec.quantitiesKey(symbol));
+        this.askWindowKeys = List.of(codec.key(symbol, Order.Side.SELL), codec.ordersKey(symbol), codec.quantitiesKey(symbol));
+    }
+
+    @Override
+    public String getSymbol() {
+        return symbol;
+    }
+
+    @Override
+    public EngineOrder getBestOrder(Order.Side side) {
+        // 成員依字典序即是價格-時間優先，兩側都取第一個
+        List<EngineOrder> orders = fetchWindow(side, 0, 1, codec.limitKey(side, FixedPoint.NONE));
+        return orders.isEmpty() ? null : orders.get(0);
+    }
+
+    // 一次取回一個視窗的最佳對手方掛單在本地消化，用完才再取下一個視窗；成交的寫回在最後合併成一次 pipeline
+    // 單筆訂單的讀取往返從每張掛單一次降為每個視窗一次
+    @Override
+    public List<Fill> match(EngineOrder taker, Instant now) {
+        List<Fill> fills = new ArrayList<>();
+        Order.Side opponentSide = taker.isBuy() ? Order.Side.SELL : Order.Side.BUY;
+        String limitKey = codec.limitKey(opponentSide, taker.limitPrice());
+        long remaining = taker.getUnfilledQuantity();
+        long offset = 0;
+        boolean exhausted = false;
+
+        while (remaining > 0 && !exhausted) {
+            int window = windowSize(opponentSide, remaining);
+            List<EngineOrder> makers = fetchWindow(opponentSide, offset, window, limitKey);
+            // 取回的少於視窗大小表示已到價格上限或對手方已空
+            exhausted = makers.size() < window;
+            // 視窗內成交的掛單除了最後一張都會完全成交，下一個視窗從這個視窗之後開始
+            offset += window;
+
+            for (EngineOrder maker : makers) {
+                if (remaining == 0) {
+                    break;
+                }
+                if (maker == null) {
+                    continue;
+                }
+                observe(opponentSide, maker.getUnfilledQuantity());
+                long matchedQuantity = Math.min(remaining, maker.getUnfilledQuantity());
+                maker.fill(matchedQuantity, now);
+                fills.add(new Fill(maker, matchedQuantity));
+                remaining -= matchedQuantity;
+            }
+        }
+
+        if (!fills.isEmpty()) {
+            writeFills(fills);
+        }
+        return fills;
+    }
+
+    @Override
+    public EngineOrder getOrder(String orderId) {
+        @SuppressWarnings("unchecked")
+        List<byte[]> result = redisTemplate.execute(ORDER_SCRIPT, RedisSerializer.byteArray(), RAW_LIST, orderKeys, codec.field(orderId));
+
+        return decode(result);
+    }
+
+    // 序號由 Redis INCR 指派，多個引擎實例共用同一個遞增序列
+    @Override
+    public void addOrder(EngineOrder order) {
+        Long sequence = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().incr(sequenceKey));
+        order.setSequence(sequence);
+        byte[] indexKey = codec.keyBytes(symbol, order.getSide());
+        byte[] member = codec.member(order);
+        byte[] field = codec.field(order.getId());
+        byte[] value = codec.value(order);
+        byte[] quantity = codec.quantity(order);
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSet(ordersKey, field, value);
+            connection.hashCommands().hSet(quantitiesKey, field, quantity);
+            connection.zSetCommands().zAdd(indexKey, RedisOrderBookCodec.SCORE, member);
+            return null;
+        });
+    }
+
+    // 部分成交不改變價格索引，只覆寫 Hash 中的訂單內容與數量
+    @Override
+    public void updateOrder(EngineOrder order) {
+        byte[] field = codec.field(order.getId());
+        byte[] value = codec.value(order);
+        byte[] quantity = codec.quantity(order);
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hSet(ordersKey, field, value);
+            connection.hashCommands().hSet(quantitiesKey, field, quantity);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeOrder(EngineOrder order) {
+        byte[] indexKey = codec.keyBytes(symbol, order.getSide());
+        byte[] member = codec.member(order);
+        byte[] field = codec.field(order.getId());
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zSetCommands().zRem(indexKey, member);
+            connection.hashCommands().hDel(ordersKey, field);
+            connection.hashCommands().hDel(quantitiesKey, field);
+            return null;
+        });
+    }
+
+    // 依剩餘數量與對手方平均掛單大小估計要掃過的張數，多取一張避免剛好差一點時還要再取一次
+    private int windowSize(Order.Side side, long remaining) {
+        long average = averageQuantities[side.ordinal()];
+        if (average == 0) {
+            return Math.min(INITIAL_WINDOW, maxWindow);
+        }
+        long estimate = remaining / average + 2;
+        return (int) Math.min(estimate, maxWindow);
+    }
+
+    private void observe(Order.Side side, long quantity) {
+        long average = averageQuantities[side.ordinal()];
+        averageQuantities[side.ordinal()] = average == 0 ? quantity : average + (quantity - average) / 8;
+    }
+
+    // 回傳的清單與視窗內的成員一一對應，索引成員沒有對應內容時為 null
+    private List<EngineOrder> fetchWindow(Order.Side side, long offset, int window, String limitKey) {
+        byte[] start = String.valueOf(offset).getBytes(StandardCharsets.US_ASCII);
+        byte[] stop = String.valueOf(offset + window - 1).getBytes(StandardCharsets.US_ASCII);
+        byte[] limit = limitKey.getBytes(StandardCharsets.US_ASCII);
+
+        @SuppressWarnings("unchecked")
+        List<byte[]> result = redisTemplate.execute(WINDOW_SCRIPT, RedisSerializer.byteArray(), RAW_LIST,
+                side == Order.Side.BUY ? bidWindowKeys : askWindowKeys, start, stop, limit);
+
+        List<EngineOrder> orders = new ArrayList<>(result == null ? 0 : result.size() / 2);
+        if (result != null) {
+            for (int i = 0; i + 1 < result.size(); i += 2) {
+                orders.add(result.get(i) == null ? null : codec.decodeValue(result.get(i), result.get(i + 1)));
+            }
+        }
+        return orders;
+    }
+
+    // 完全成交的掛單移除，部分成交的只覆寫內容與數量
+    private void writeFills(List<Fill> fills) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Fill fill : fills) {
+                EngineOrder maker = fill.maker();
+                byte[] field = codec.field(maker.getId());
+                if (maker.getUnfilledQuantity() == 0) {
+                    connection.zSetCommands().zRem(codec.keyBytes(symbol, maker.getSide()), codec.member(maker));
+                    connection.hashCommands().hDel(ordersKey, field);
+                    connection.hashCommands().hDel(quantitiesKey, field);
+                } else {
+                    connection.hashCommands().hSet(ordersKey, field, codec.value(maker));
+                    connection.hashCommands().hSet(quantitiesKey, field, codec.quantity(maker));
+                }
+            }
+            return null;
+        });
+    }
+
+    // 腳本回傳 {訂單內容, 未成交數量}，訂單不存在時內容為 null
+    private EngineOrder decode(List<byte[]> result) {
+        if (result == null || result.isEmpty() || result.get(0) == null) {
+            return null;
+        }
+        return codec.decodeValue(result.get(0), result.size() > 1 ? result.get(1) : null);
+    }
+}
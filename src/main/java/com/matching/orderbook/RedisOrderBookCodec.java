@@ -0,0 +1,197 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Redis 訂單簿的 key 與編碼
+// <symbol>:ORDERS 是訂單 ID 到訂單內容的 Hash，值為 BinaryOrderCodec 的二進位格式（內含序號）；舊資料為 <序號>:<訂單 JSON>
+// <symbol>:QTY 是訂單 ID 到未成交數量（定點數整數字串）的 Hash，讀取時以它為準，讓 Lua 腳本不必解析 JSON 就能扣減數量
+// <symbol>:BUY / <symbol>:SELL 是價格索引，成員為 <價格排序鍵>:<序號>:<訂單 ID>，數字皆補零到 19 位且 score 都是 0，
+// ZSet 依成員字典序排列即是精確的價格-時間優先；買方的價格排序鍵為 MAX_VALUE - price，讓高價排在前面
+@Component
+public class RedisOrderBookCodec {
+
+    private static final String BUY_SUFFIX = ":BUY";
+    private static final String SELL_SUFFIX = ":SELL";
+    private static final String ORDERS_SUFFIX = ":ORDERS";
+    private static final String SEQUENCE_SUFFIX = ":SEQ";
+    private static final String QUANTITIES_SUFFIX = ":QTY";
+    private static final String OFFSETS_SUFFIX = ":OFFSETS";
+    private static final String RESULT_SEQUENCE_SUFFIX = ":RESULT_SEQ";
+
+    public static final double SCORE = 0;
+    private static final int NUMBER_WIDTH = 19;
+    private static final int PREFIX_LENGTH = (NUMBER_WIDTH + 1) * 2;
+    // 大於任何價格排序鍵
+    private static final String NO_LIMIT_KEY = "9999999999999999999";
+
+    private final ObjectMapper objectMapper;
+
+    public RedisOrderBookCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public String key(String symbol, Order.Side side) {
+        return symbol + (side == Order.Side.BUY ? BUY_SUFFIX : SELL_SUFFIX);
+    }
+
+    // 獲取 Redis key 的字節數組
+    public byte[] keyBytes(String symbol, Order.Side side) {
+        return key(symbol, side).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String ordersKey(String symbol) {
+        return symbol + ORDERS_SUFFIX;
+    }
+
+    public byte[] ordersKeyBytes(String symbol) {
+        return ordersKey(symbol).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String quantitiesKey(String symbol) {
+        return symbol + QUANTITIES_SUFFIX;
+    }
+
+    public byte[] quantitiesKeyBytes(String symbol) {
+        return quantitiesKey(symbol).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 交易對目前已指派的最大序號
+    public String sequenceKey(String symbol) {
+        return symbol + SEQUENCE_SUFFIX;
+    }
+
+    // 鏡像內容對應的 Kafka 進度，見 AppliedOffsets
+    public String offsetsKey(String symbol) {
+        return symbol + OFFSETS_SUFFIX;
+    }
+
+    // 交易對已預留的最大撮合結果序號，見 NewOrderbookService.reserveResultSequences
+    public String resultSequenceKey(String symbol) {
+        return symbol + RESULT_SEQUENCE_SUFFIX;
+    }
+
+    public byte[] field(String orderId) {
+        return orderId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 價格索引成員只由價格、序號與 ID 組成，不需要原本的訂單內容就能算出
+    public byte[] member(EngineOrder order) {
+        return member(order.getSide(), order.getPrice(), order.getSequence(), order.getId());
+    }
+
+    public byte[] member(Order.Side side, long price, long sequence, String orderId) {
+        return (priceKey(side, price) + String.format(":%019d:%s", sequence, orderId)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 成員開頭 19 位的價格排序鍵，同一側越小越優先
+    public String priceKey(Order.Side side, long price) {
+        return String.format("%019d", side == Order.Side.BUY ? FixedPoint.MAX_VALUE - price : price);
+    }
+
+    // 與限價可成交的對手方排序鍵上限；price 傳 EngineOrder.limitPrice()，市價單為 FixedPoint.NONE 時不設限
+    public String limitKey(Order.Side opponentSide, long price) {
+        return price == FixedPoint.NONE ? NO_LIMIT_KEY : priceKey(opponentSide, price);
+    }
+
+    public String memberId(byte[] member) {
+        return new String(member, PREFIX_LENGTH, member.length - PREFIX_LENGTH, StandardCharsets.UTF_8);
+    }
+
+    public long memberSequence(byte[] member) {
+        return Long.parseLong(new String(member, NUMBER_WIDTH + 1, NUMBER_WIDTH, StandardCharsets.US_ASCII));
+    }
+
+    public byte[] value(EngineOrder order) {
+        return BinaryOrderCodec.encode(order, order.getSequence());
+    }
+
+    public EngineOrder decodeValue(byte[] value) {
+        if (BinaryOrderCodec.isBinary(value)) {
+            return BinaryOrderCodec.decode(value);
+        }
+        EngineOrder order = decodeJson(Arrays.copyOfRange(value, NUMBER_WIDTH + 1, value.length));
+        order.setSequence(Long.parseLong(new String(value, 0, NUMBER_WIDTH, StandardCharsets.US_ASCII)));
+        return order;
+    }
+
+    // 二進位格式之前寫入的 <序號>:<訂單 JSON>
+    public boolean isJsonValue(byte[] value) {
+        return !BinaryOrderCodec.isBinary(value);
+    }
+
+    // 以 QTY Hash 的未成交數量覆蓋訂單內容；quantity 為 null 時（尚未回填的舊資料）沿用 JSON
+    public EngineOrder decodeValue(byte[] value, byte[] quantity) {
+        EngineOrder order = decodeValue(value);
+        if (quantity != null) {
+            applyUnfilledQuantity(order, Long.parseLong(new String(quantity, StandardCharsets.US_ASCII)));
+        }
+        return order;
+    }
+
+    public byte[] quantity(EngineOrder order) {
+        return String.valueOf(order.getUnfilledQuantity()).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // 依未成交數量推回已成交數量與狀態
+    public void applyUnfilledQuantity(EngineOrder order, long unfilledQuantity) {
+        order.setUnfilledQuantity(unfilledQuantity);
+        order.setFilledQuantity(FixedPoint.subtract(order.getQuantity(), unfilledQuantity));
+        if (unfilledQuantity == 0) {
+            order.setStatus(Order.OrderStatus.COMPLETED);
+        } else if (order.getFilledQuantity() > 0) {
+            order.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
+        } else {
+            order.setStatus(Order.OrderStatus.PENDING);
+        }
+    }
+
+    // 舊版以 price * 10^7 ± 毫秒時間為 score、訂單 JSON 為成員
+    public boolean isLegacyMember(byte[] member) {
+        return member.length > 0 && member[0] == '{';
+    }
+
+    // 上一版的成員在排序前綴之後直接帶訂單 JSON
+    public boolean isEmbeddedMember(byte[] member) {
+        return member.length > PREFIX_LENGTH && member[PREFIX_LENGTH] == '{';
+    }
+
+    // 解析舊版或上一版的成員，供遷移使用
+    public EngineOrder decodeOldMember(byte[] member) {
+        if (isLegacyMember(member)) {
+            return decodeJson(member);
+        }
+        EngineOrder order = decodeJson(Arrays.copyOfRange(member, PREFIX_LENGTH, member.length));
+        order.setSequence(memberSequence(member));
+        return order;
+    }
+
+    // 轉換訂單為 JSON 字節數組
+    public byte[] encodeJson(EngineOrder order) {
+        try {
+            return objectMapper.writeValueAsBytes(order.toOrder());
+        } catch (JsonProcessingException e) {
+            System.err.println("Error: Failed to convert order to JSON bytes. Order: " + order);
+            e.printStackTrace();
+            throw new RuntimeException("Failed to convert order to JSON bytes", e);
+        }
+    }
+
+    // 解析 JSON 到 EngineOrder 對象
+    public EngineOrder decodeJson(byte[] json) {
+        try {
+            return EngineOrder.fromOrder(objectMapper.readValue(json, Order.class));
+        } catch (Exception e) {
+            System.err.println("Error: Failed to parse JSON. Order JSON: " + new String(json, StandardCharsets.UTF_8));
+            e.printStackTrace();
+            throw new RuntimeException("Failed to parse JSON", e);
+        }
+    }
+}
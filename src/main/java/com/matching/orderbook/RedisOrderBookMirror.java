@@ -0,0 +1,248 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.metrics.LatencyStage;
+import com.matching.metrics.StageLatencies;
+import com.matching.model.Order;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 把記憶體訂單簿的變更非同步寫回 Redis，撮合執行緒只負責編碼與入隊
+// 寫入失敗的批次依指數退避重試，重試用盡後把批次內的交易對標記為 dirty：awaitWritten 對這些交易對回傳 false，
+// 訂單簿下次 flush 時改以 resync 清除 Redis 中的鏡像並重寫整本訂單簿
+// 撮合執行緒寫出後另外排入已套用的 Kafka offset，依序寫入，Redis 中的 offset 不會超前鏡像內容
+@Component
+public class RedisOrderBookMirror {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    private enum Type {ADD, UPDATE, REMOVE, CLEAR, OFFSETS}
+
+    private record Command(Type type, String symbol, long sequence, byte[] indexKey, byte[] member, byte[] ordersKey, byte[] field, byte[] value,
+                           byte[] quantitiesKey, byte[] quantity) {
+    }
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisOrderBookCodec codec;
+    private final int batchSize;
+    private final int maxRetries;
+    private final StageLatencies stageLatencies;
+    private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+    // 已排入與已處理（寫入或失敗）的變更數，供 awaitWritten 判斷先前的變更是否都已送出
+    private final AtomicLong enqueued = new AtomicLong();
+    private volatile long processed;
+    // 鏡像內容已不可信的交易對，以及已排入 resync、尚未寫完的交易對
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<String> resyncing = ConcurrentHashMap.newKeySet();
+
+    private Thread writer;
+    private volatile boolean running;
+
+    public RedisOrderBookMirror(RedisTemplate<String, Object> redisTemplate,
+                                RedisOrderBookCodec codec,
+                                @Value("${matching.orderbook.mirror.batch-size:512}") int batchSize,
+                                @Value("${matching.orderbook.mirror.max-retries:5}") int maxRetries,
+                                StageLatencies stageLatencies) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.stageLatencies = stageLatencies;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "orderbook-mirror");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(5000);
+        // 關閉前把剩餘的變更寫完
+        List<Command> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            try {
+                write(remaining);
+            } catch (Exception e) {
+                System.err.println("Error: Failed to mirror " + remaining.size() + " order book changes to Redis on shutdown");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void add(EngineOrder order) {
+        enqueue(new Command(Type.ADD, order.getSymbol(), order.getSequence(),
+                codec.keyBytes(order.getSymbol(), order.getSide()), codec.member(order),
+                codec.ordersKeyBytes(order.getSymbol()), codec.field(order.getId()), codec.value(order),
+                codec.quantitiesKeyBytes(order.getSymbol()), codec.quantity(order)));
+    }
+
+    // 部分成交只需要覆寫 Hash 中這一筆訂單，價格索引不變
+    public void update(EngineOrder order) {
+        enqueue(new Command(Type.UPDATE, order.getSymbol(), order.getSequence(),
+                null, null,
+                codec.ordersKeyBytes(order.getSymbol()), codec.field(order.getId()), codec.value(order),
+                codec.quantitiesKeyBytes(order.getSymbol()), codec.quantity(order)));
+    }
+
+    // price 與 sequence 是移除當下的價格與序號，改價重新排隊的訂單之後兩者都會改變
+    public void remove(EngineOrder order, long price, long sequence) {
+        enqueue(new Command(Type.REMOVE, order.getSymbol(), sequence,
+                codec.keyBytes(order.getSymbol(), order.getSide()), codec.member(order.getSide(), price, sequence, order.getId()),
+                codec.ordersKeyBytes(order.getSymbol()), codec.field(order.getId()), null,
+                codec.quantitiesKeyBytes(order.getSymbol()), null));
+    }
+
+    // 由撮合執行緒在訂單簿 flush 之後呼叫
+    public void offsets(String symbol, AppliedOffsets offsets) {
+        enqueue(new Command(Type.OFFSETS, symbol, 0, codec.offsetsKey(symbol).getBytes(StandardCharsets.UTF_8), null,
+                null, null, offsets.encode(), null, null));
+    }
+
+    // 訂單簿 flush 時呼叫：鏡像為 dirty 且尚未排入 resync 時回傳 true，呼叫端應改以 resync 重寫整本訂單簿
+    public boolean needsResync(String symbol) {
+        return dirty.contains(symbol) && resyncing.add(symbol);
+    }
+
+    // 清除 Redis 中該交易對的鏡像後重新寫入目前所有掛單（須依價格索引順序傳入），序號設為 lastSequence
+    public void resync(String symbol, List<EngineOrder> orders, long lastSequence) {
+        enqueue(new Command(Type.CLEAR, symbol, lastSequence,
+                codec.keyBytes(symbol, Order.Side.BUY), codec.keyBytes(symbol, Order.Side.SELL),
+                codec.ordersKeyBytes(symbol), null, null, codec.quantitiesKeyBytes(symbol), null));
+        for (EngineOrder order : orders) {
+            add(order);
+        }
+    }
+
+    // 尚未寫入 Redis 的變更數
+    public int pending() {
+        return queue.size();
+    }
+
+    // 等待呼叫前排入的變更都處理完，逾時或該交易對的鏡像為 dirty 時回傳 false
+    public boolean awaitWritten(String symbol, long timeoutMillis) throws InterruptedException {
+        long target = enqueued.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (processed < target) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return !dirty.contains(symbol);
+    }
+
+    private void enqueue(Command command) {
+        enqueued.incrementAndGet();
+        queue.add(command);
+    }
+
+    private void run() {
+        List<Command> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                writeWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                processed += batch.size();
+                batch.clear();
+            }
+        }
+    }
+
+    // Redis 只是鏡像，寫入失敗不影響撮合；整批重寫是冪等的（HSET / ZADD / ZREM / HDEL / DEL 皆可重複執行）
+    private void writeWithRetry(List<Command> batch) throws InterruptedException {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                write(batch);
+                for (Command command : batch) {
+                    if (command.type() == Type.CLEAR) {
+                        dirty.remove(command.symbol());
+                        resyncing.remove(command.symbol());
+                    }
+                }
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxRetries || !running) {
+                    System.err.println("Error: Failed to mirror " + batch.size() + " order book changes to Redis after "
+                            + (attempt + 1) + " attempts, marking their symbols for resync");
+                    e.printStackTrace();
+                    for (Command command : batch) {
+                        dirty.add(command.symbol());
+                        resyncing.remove(command.symbol());
+                    }
+                    return;
+                }
+                System.err.println("Warning: Failed to mirror " + batch.size() + " order book changes to Redis, retrying in " + backoff + " ms");
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    // 一個批次合併成一次 pipeline，並把各交易對最新的序號寫回，切換到 redis 模式時序號才能接續
+    private void write(List<Command> batch) {
+        long started = System.nanoTime();
+        Map<String, Long> sequences = new HashMap<>();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Command command : batch) {
+                switch (command.type()) {
+                    case ADD -> {
+                        connection.hashCommands().hSet(command.ordersKey(), command.field(), command.value());
+                        connection.hashCommands().hSet(command.quantitiesKey(), command.field(), command.quantity());
+                        connection.zSetCommands().zAdd(command.indexKey(), RedisOrderBookCodec.SCORE, command.member());
+                        sequences.merge(command.symbol(), command.sequence(), Math::max);
+                    }
+                    case UPDATE -> {
+                        connection.hashCommands().hSet(command.ordersKey(), command.field(), command.value());
+                        connection.hashCommands().hSet(command.quantitiesKey(), command.field(), command.quantity());
+                    }
+                    case REMOVE -> {
+                        connection.zSetCommands().zRem(command.indexKey(), command.member());
+                        connection.hashCommands().hDel(command.ordersKey(), command.field());
+                        connection.hashCommands().hDel(command.quantitiesKey(), command.field());
+                    }
+                    // resync：indexKey / member 分別是買方與賣方的價格索引
+                    case CLEAR -> {
+                        connection.keyCommands().del(command.indexKey(), command.member(), command.ordersKey(), command.quantitiesKey());
+                        sequences.put(command.symbol(), command.sequence());
+                    }
+                    // indexKey 是 offset 的 key
+                    case OFFSETS -> connection.stringCommands().set(command.indexKey(), command.value());
+                }
+            }
+            sequences.forEach((symbol, sequence) -> connection.stringCommands().set(
+                    codec.sequenceKey(symbol).getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(sequence).getBytes(StandardCharsets.UTF_8)));
+            return null;
+        });
+        stageLatencies.record(LatencyStage.REDIS_WRITE, StageLatencies.ALL_SYMBOLS, System.nanoTime() - started);
+    }
+}
@@ -0,0 +1,133 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Redis 為權威資料、撮合在伺服器端執行的訂單簿：找最佳對手、扣減、移除與剩餘掛單都在同一個 Lua 腳本內，
+// 每筆訂單只有一次 EVALSHA，多個引擎實例同時撮合同一交易對也不會交錯
+public class RedisScriptOrderBook extends RedisOrderBook {
+
+    // Lua 的數字是 double，超過 2^53 的定點數無法精確扣減
+    static final long MAX_SCRIPT_QUANTITY = 1L << 53;
+
+    // KEYS: 對手方價格索引、ORDERS、QTY、SEQ、己方價格索引
+    // ARGV: 對手方排序鍵上限、taker 未成交數量、是否掛入剩餘數量、己方排序鍵、taker ID、taker 二進位內容（序號由腳本填入）
+    // 回傳 {掛單序號（未掛單為 0）, 掛單內容, 成交數量, 成交後未成交數量, ...}
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SWEEP_SCRIPT = RedisScript.of("""
+            local remaining = tonumber(ARGV[2])
+            local result = {'0'}
+            while remaining > 0 do
+                local best = redis.call('ZRANGE', KEYS[1], 0, 0)[1]
+                -- 成員前 19 個字元是價格排序鍵，超過上限就停止
+                if not best or string.sub(best, 1, 19) > ARGV[1] then
+                    break
+                end
+                local id = string.sub(best, 41)
+                local value = redis.call('HGET', KEYS[2], id)
+                if not value then
+                    -- 沒有訂單內容的索引成員無法成交，直接清掉
+                    redis.call('ZREM', KEYS[1], best)
+                else
+                    local unfilled = tonumber(redis.call('HGET', KEYS[3], id))
+                    if not unfilled then
+                        -- 沒有數量的資料從訂單內容讀出：二進位格式在固定位置，尚未遷移的舊資料解析 JSON
+                        if string.byte(value, 1) == 1 then
+                            unfilled = struct.unpack('>i8', value, 34)
+                        else
+                            unfilled = math.floor(cjson.decode(string.sub(value, 21)).unfilledQuantity * 100000000 + 0.5)
+                        end
+                    end
+                    local matched = math.min(remaining, unfilled)
+                    remaining = remaining - matched
+                    unfilled = unfilled - matched
+                    if unfilled == 0 then
+                        redis.call('ZREM', KEYS[1], best)
+                        redis.call('HDEL', KEYS[2], id)
+                        redis.call('HDEL', KEYS[3], id)
+                    else
+                        redis.call('HSET', KEYS[3], id, string.format('%.0f', unfilled))
+                    end
+                    table.insert(result, value)
+                    table.insert(result, string.format('%.0f', matched))
+                    table.insert(result, string.format('%.0f', unfilled))
+                end
+            end
+            if ARGV[3] == '1' and remaining > 0 then
+                local sequence = redis.call('INCR', KEYS[4])
+                redis.call('ZADD', KEYS[5], 0, ARGV[4] .. ':' .. string.format('%019d', sequence) .. ':' .. ARGV[5])
+                -- 把序號寫進二進位內容第 2 到 9 個位元組
+                redis.call('HSET', KEYS[2], ARGV[5], string.sub(ARGV[6], 1, 1) .. struct.pack('>i8', sequence) .. string.sub(ARGV[6], 10))
+                redis.call('HSET', KEYS[3], ARGV[5], string.format('%.0f', remaining))
+                result[1] = string.format('%d', sequence)
+            end
+            return result
+            """, List.class);
+
+    public RedisScriptOrderBook(String symbol, RedisTemplate<String, Object> redisTemplate, RedisOrderBookCodec codec) {
+        // 撮合整個在腳本內完成，不使用預取視窗
+        super(symbol, redisTemplate, codec, 1);
+    }
+
+    // 腳本掛入的訂單內容是撮合前的狀態，實際數量以 QTY Hash 為準，讀取時會覆蓋
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Fill> match(EngineOrder taker, Instant now) {
+        if (taker.getUnfilledQuantity() > MAX_SCRIPT_QUANTITY) {
+            throw new IllegalArgumentException("Quantity " + FixedPoint.toPlainString(taker.getUnfilledQuantity())
+                    + " of order " + taker.getId() + " exceeds the range supported by the Redis matching script");
+        }
+        Order.Side opponentSide = taker.isBuy() ? Order.Side.SELL : Order.Side.BUY;
+        boolean rest = taker.getOrderType() != Order.OrderType.MARKET;
+        String limitKey = codec.limitKey(opponentSide, taker.limitPrice());
+
+        List<String> keys = List.of(codec.key(symbol, opponentSide), codec.ordersKey(symbol), codec.quantitiesKey(symbol),
+                codec.sequenceKey(symbol), codec.key(symbol, taker.getSide()));
+        List<byte[]> result = redisTemplate.execute(SWEEP_SCRIPT, RedisSerializer.byteArray(), (RedisSerializer<List>) (RedisSerializer<?>) RedisSerializer.byteArray(), keys,
+                ascii(limitKey),
+                ascii(String.valueOf(taker.getUnfilledQuantity())),
+                ascii(rest ? "1" : "0"),
+                ascii(rest ? codec.priceKey(taker.getSide(), taker.getPrice()) : ""),
+                codec.field(taker.getId()),
+                rest ? codec.value(taker) : new byte[0]);
+
+        List<Fill> fills = new ArrayList<>((result.size() - 1) / 3);
+        for (int i = 1; i + 2 < result.size(); i += 3) {
+            EngineOrder maker = codec.decodeValue(result.get(i));
+            long matchedQuantity = parseLong(result.get(i + 1));
+            long unfilledQuantity = parseLong(result.get(i + 2));
+            // 腳本回傳成交後的數量，先還原成交前的狀態再套用這次成交，時間與狀態和其他模式一致
+            codec.applyUnfilledQuantity(maker, unfilledQuantity + matchedQuantity);
+            maker.fill(matchedQuantity, now);
+            fills.add(new Fill(maker, matchedQuantity));
+        }
+
+        long sequence = parseLong(result.get(0));
+        if (sequence > 0) {
+            taker.setSequence(sequence);
+        }
+        return fills;
+    }
+
+    @Override
+    public boolean restsOnMatch() {
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long parseLong(byte[] value) {
+        return Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+}
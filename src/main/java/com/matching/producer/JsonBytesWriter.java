@@ -0,0 +1,104 @@
+package com.matching.producer;
+
+import com.matching.engine.FixedPoint;
+
+import java.nio.charset.StandardCharsets;
+
+// 固定格式訊息的 JSON 編碼器：直接寫入重複使用的緩衝區，定點數與整數逐位寫出，不經過 String、BigDecimal 或 ObjectMapper
+// 每個執行緒一個（forCurrentThread），toBytes 回傳的陣列依長度重複使用，只能在下一次編碼前交給 Kafka producer；
+// KafkaProducer.send 返回前已把內容複製進批次，之後可立即重用
+// 只寫 ASCII 內容（交易對、方向等），不做跳脫
+public final class JsonBytesWriter {
+
+    private static final ThreadLocal<JsonBytesWriter> WRITERS = ThreadLocal.withInitial(JsonBytesWriter::new);
+    private static final int CAPACITY = 512;
+
+    private final byte[] buffer = new byte[CAPACITY];
+    // 依長度重複使用的輸出陣列，ByteArraySerializer 會送出整個陣列
+    private final byte[][] outputs = new byte[CAPACITY + 1][];
+    private final byte[] digits = new byte[20];
+    private int length;
+
+    public static JsonBytesWriter forCurrentThread() {
+        return WRITERS.get().reset();
+    }
+
+    // 預先編碼的固定片段，例如 {"symbol":"
+    public static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public JsonBytesWriter reset() {
+        length = 0;
+        return this;
+    }
+
+    public JsonBytesWriter raw(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    public JsonBytesWriter ascii(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    // 與 FixedPoint.toPlainString 相同的格式：去掉小數尾端的零，整數不寫小數點
+    public JsonBytesWriter decimal(long scaled) {
+        if (scaled < 0) {
+            buffer[length++] = '-';
+            scaled = -scaled;
+        }
+        number(scaled / FixedPoint.ONE);
+        long fraction = scaled % FixedPoint.ONE;
+        if (fraction != 0) {
+            int places = FixedPoint.SCALE;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                places--;
+            }
+            buffer[length++] = '.';
+            int end = length + places;
+            for (int i = end - 1; i >= length; i--) {
+                buffer[i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            length = end;
+        }
+        return this;
+    }
+
+    public JsonBytesWriter number(long value) {
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer[length++] = digits[--count];
+        }
+        return this;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    // 同樣長度的訊息共用一個陣列
+    public byte[] toBytes() {
+        byte[] output = outputs[length];
+        if (output == null) {
+            output = new byte[length];
+            outputs[length] = output;
+        }
+        System.arraycopy(buffer, 0, output, 0, length);
+        return output;
+    }
+}
@@ -0,0 +1,40 @@
+package com.matching.producer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+// 每筆成交推送到 kline-updates 的價格與時間，格式固定，以 JsonBytesWriter 直接編碼成 byte[] 送出
+@Component
+public class KlineUpdateProducer {
+
+    public static final String TOPIC = "kline-updates";
+
+    private static final byte[] SYMBOL = JsonBytesWriter.bytes("{\"symbol\":\"");
+    private static final byte[] PRICE = JsonBytesWriter.bytes("\",\"price\":\"");
+    private static final byte[] TRADE_TIME = JsonBytesWriter.bytes("\",\"tradeTime\":");
+    private static final byte[] END = JsonBytesWriter.bytes("}");
+
+    private final KafkaTemplate<String, byte[]> byteArrayKafkaTemplate;
+
+    @Autowired
+    public KlineUpdateProducer(KafkaTemplate<String, byte[]> byteArrayKafkaTemplate) {
+        this.byteArrayKafkaTemplate = byteArrayKafkaTemplate;
+    }
+
+    // price 為定點數，tradeTime 為成交時間的 epoch 秒
+    public void sendTrade(String symbol, long price, long tradeTime) {
+        byteArrayKafkaTemplate.send(TOPIC, encodeTrade(symbol, price, tradeTime));
+    }
+
+    // {"symbol":"BTCUSDT","price":"50000.5","tradeTime":1700000000}
+    // 回傳的陣列在同一執行緒下一次編碼前有效
+    public static byte[] encodeTrade(String symbol, long price, long tradeTime) {
+        return JsonBytesWriter.forCurrentThread()
+                .raw(SYMBOL).ascii(symbol)
+                .raw(PRICE).decimal(price)
+                .raw(TRADE_TIME).number(tradeTime)
+                .raw(END)
+                .toBytes();
+    }
+}
@@ -0,0 +1,28 @@
+package com.matching.producer;
+
+import com.matching.dto.MatchResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MatchResultProducer {
+
+    public static final String TOPIC = "match-results";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public MatchResultProducer(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    // 以交易對為 key，同一交易對的結果落在同一個 partition 並保持順序
+    public void send(MatchResult result) throws JsonProcessingException {
+        kafkaTemplate.send(TOPIC, result.getSymbol(), objectMapper.writeValueAsString(result));
+    }
+}
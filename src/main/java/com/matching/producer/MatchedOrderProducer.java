@@ -13,11 +13,14 @@ public class MatchedOrderProducer {
 
     private static final String TOPIC = "matched_orders";
 
-    @Autowired
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper; // 用來轉換成 JSON
 
     @Autowired
-    private ObjectMapper objectMapper; // 用來轉換成 JSON
+    public MatchedOrderProducer(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+    }
 
     // 發送匹配交易
     public void sendMatchedTrade(TradeOrdersMessage tradeOrdersMessage) {
@@ -1,27 +1,80 @@
 package com.matching.producer;
 
+import com.matching.dto.DepthSnapshot;
+import com.matching.model.Order;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 深度輸出：order-book-delta-<symbol> 的價位增量與壓縮 topic 上各交易對最新的 L2 快照
+// 增量的 sequence 是涵蓋到的最後一筆撮合結果序號，同一序號可能有多個價位；
+// 下游遺失訊息時讀取快照，略過序號 <= 快照序號的增量即可接續
+// 增量格式固定，以 JsonBytesWriter 直接編碼成 byte[] 送出，每筆不配置記憶體
 @Service
 public class OrderBookDeltaProducer {
 
+    private static final byte[] SYMBOL = JsonBytesWriter.bytes("{\"symbol\":\"");
+    private static final byte[] SEQUENCE = JsonBytesWriter.bytes("\",\"sequence\":");
+    private static final byte[][] SIDES = {
+            JsonBytesWriter.bytes(",\"side\":\"" + Order.Side.BUY + "\",\"price\":\""),
+            JsonBytesWriter.bytes(",\"side\":\"" + Order.Side.SELL + "\",\"price\":\"")};
+    private static final byte[] QUANTITY = JsonBytesWriter.bytes("\",\"unfilledQuantity\":\"");
+    private static final byte[] END = JsonBytesWriter.bytes("\"}");
+
     private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> byteArrayKafkaTemplate;
+    private final ObjectMapper objectMapper;
+    // 各交易對的增量 topic，避免每筆訊息重組字串
+    private final Map<String, String> topics = new ConcurrentHashMap<>();
 
     @Value("${kafka.deltas.topic.prefix:order-book-delta-}")
     private String topicPrefix;
 
-    public OrderBookDeltaProducer(KafkaTemplate<String, String> kafkaTemplate) {
+    @Value("${kafka.snapshots.topic:order-book-snapshots}")
+    private String snapshotTopic;
+
+    public OrderBookDeltaProducer(KafkaTemplate<String, String> kafkaTemplate,
+                                  KafkaTemplate<String, byte[]> byteArrayKafkaTemplate,
+                                  ObjectMapper objectMapper) {
         this.kafkaTemplate = kafkaTemplate;
+        this.byteArrayKafkaTemplate = byteArrayKafkaTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    // price 與 unfilledQuantity 為定點數，unfilledQuantity 是價位的變化量，減少為負
+    public void sendDelta(String symbol, long sequence, Order.Side side, long price, long unfilledQuantity) {
+        byteArrayKafkaTemplate.send(topic(symbol), encodeDelta(symbol, sequence, side, price, unfilledQuantity));
     }
 
-    public void sendDelta(String symbol, String side, String price, String unfilledQuantity) {
-        String topic = topicPrefix + symbol.toLowerCase();
-        String deltaMessage = String.format("{\"symbol\":\"%s\",\"side\":\"%s\",\"price\":\"%s\",\"unfilledQuantity\":\"%s\"}",
-                symbol, side, price, unfilledQuantity);
+    // {"symbol":"BTCUSDT","sequence":1,"side":"BUY","price":"50000.5","unfilledQuantity":"-0.1"}
+    // 回傳的陣列在同一執行緒下一次編碼前有效
+    public static byte[] encodeDelta(String symbol, long sequence, Order.Side side, long price, long unfilledQuantity) {
+        return JsonBytesWriter.forCurrentThread()
+                .raw(SYMBOL).ascii(symbol)
+                .raw(SEQUENCE).number(sequence)
+                .raw(SIDES[side.ordinal()]).decimal(price)
+                .raw(QUANTITY).decimal(unfilledQuantity)
+                .raw(END)
+                .toBytes();
+    }
+
+    // 開啟深度合併時取代逐筆增量：一筆訊息包含有變動價位的絕對數量
+    public void sendLevels(DepthSnapshot update) throws JsonProcessingException {
+        kafkaTemplate.send(topic(update.getSymbol()), objectMapper.writeValueAsString(update));
+    }
+
+    // 以交易對為 key，壓縮後每個交易對只保留最新的快照
+    public void sendSnapshot(DepthSnapshot snapshot) throws JsonProcessingException {
+        kafkaTemplate.send(snapshotTopic, snapshot.getSymbol(), objectMapper.writeValueAsString(snapshot));
+    }
 
-        kafkaTemplate.send(topic, deltaMessage);
-//        System.out.println("Sent delta message to topic " + topic + ": " + deltaMessage);
+    private String topic(String symbol) {
+        String topic = topics.get(symbol);
+        return topic != null ? topic : topics.computeIfAbsent(symbol, key -> topicPrefix + key.toLowerCase());
     }
 }
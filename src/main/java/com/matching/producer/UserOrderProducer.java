@@ -38,8 +38,9 @@ public class UserOrderProducer {
         dto.setQuantity(order.getQuantity());
         dto.setFilledQuantity(order.getFilledQuantity());
         dto.setUnfilledQuantity(order.getUnfilledQuantity());
-        dto.setSide(order.getSide().toString());
-        dto.setOrderType(order.getOrderType().toString());
+        // 被拒絕的撤單、改單找不到對應的掛單時沒有方向與類型
+        dto.setSide(order.getSide() == null ? null : order.getSide().toString());
+        dto.setOrderType(order.getOrderType() == null ? null : order.getOrderType().toString());
         dto.setStatus(order.getStatus().toString());
 
         // Convert Instant to ZonedDateTime using UTC
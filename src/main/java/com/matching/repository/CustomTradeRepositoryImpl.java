@@ -2,19 +2,57 @@ package com.matching.repository;
 
 import com.matching.model.Order;
 import com.matching.model.Trade;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
+// 以 JDBC 多列語句寫入：每 chunk-size 筆訂單合成一個 INSERT ... ON DUPLICATE KEY UPDATE，成交合成一個多列 INSERT，
+// 一批成交只需要幾次往返，不再是每筆訂單、每筆成交各一個語句；在 @Transactional 內與 JPA 共用同一個連線
 @Repository
 public class CustomTradeRepositoryImpl implements CustomTradeRepository {
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    private static final String ORDER_INSERT = "INSERT INTO orders (id, user_id, symbol, price, quantity, filled_quantity, unfilled_quantity, side, order_type, status, stop_price, take_profit_price, created_at, updated_at, modified_at) VALUES ";
+    private static final String ORDER_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ORDER_UPDATE = " ON DUPLICATE KEY UPDATE " +
+            "price = VALUES(price), quantity = VALUES(quantity), " +
+            "filled_quantity = VALUES(filled_quantity), unfilled_quantity = VALUES(unfilled_quantity), " +
+            "side = VALUES(side), order_type = VALUES(order_type), status = VALUES(status), " +
+            "stop_price = VALUES(stop_price), take_profit_price = VALUES(take_profit_price), " +
+            "updated_at = VALUES(updated_at), modified_at = VALUES(modified_at)";
+    private static final int ORDER_PARAMETERS = 15;
+
+    private static final String TRADE_INSERT = "INSERT INTO trades (id, symbol, price, quantity, buy_order_id, sell_order_id, trade_time, direction, taker_order_id) VALUES ";
+    private static final String TRADE_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int TRADE_PARAMETERS = 9;
+
+    // MySQL 一個語句最多 65535 個參數
+    private static final int MAX_PARAMETERS = 65_535;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int orderChunkSize;
+    private final int tradeChunkSize;
+    // 依列數快取組好的語句，只會有 chunk-size 與各種餘數
+    private final Map<Integer, String> orderStatements = new ConcurrentHashMap<>();
+    private final Map<Integer, String> tradeStatements = new ConcurrentHashMap<>();
+
+    public CustomTradeRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                     @Value("${matching.persist.chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderChunkSize = Math.max(1, Math.min(chunkSize, MAX_PARAMETERS / ORDER_PARAMETERS));
+        this.tradeChunkSize = Math.max(1, Math.min(chunkSize, MAX_PARAMETERS / TRADE_PARAMETERS));
+    }
 
     @Override
     @Transactional
@@ -24,56 +62,81 @@ public class CustomTradeRepositoryImpl implements CustomTradeRepository {
         allOrders.addAll(buyOrders);
         allOrders.addAll(sellOrders);
 
-        // 使用批量插入/更新 Order
-        String orderUpsertQuery = "INSERT INTO orders (id, user_id, symbol, price, quantity, filled_quantity, unfilled_quantity, side, order_type, status, stop_price, take_profit_price, created_at, updated_at, modified_at) " +
-                "VALUES (:id, :userId, :symbol, :price, :quantity, :filledQuantity, :unfilledQuantity, :side, :orderType, :status, :stopPrice, :takeProfitPrice, :createdAt, :updatedAt, :modifiedAt) " +
-                "ON DUPLICATE KEY UPDATE " +
-                "price = VALUES(price), quantity = VALUES(quantity), " +
-                "filled_quantity = VALUES(filled_quantity), unfilled_quantity = VALUES(unfilled_quantity), " +
-                "side = VALUES(side), order_type = VALUES(order_type), status = VALUES(status), " +
-                "stop_price = VALUES(stop_price), take_profit_price = VALUES(take_profit_price), " +
-                "updated_at = VALUES(updated_at), modified_at = VALUES(modified_at)";
-
-        // 批量執行 Order 的 upsert 操作
-        for (Order order : allOrders) {
-            entityManager.createNativeQuery(orderUpsertQuery)
-                    .setParameter("id", order.getId())
-                    .setParameter("userId", order.getUserId())
-                    .setParameter("symbol", order.getSymbol())
-                    .setParameter("price", order.getPrice())
-                    .setParameter("quantity", order.getQuantity())
-                    .setParameter("filledQuantity", order.getFilledQuantity())
-                    .setParameter("unfilledQuantity", order.getUnfilledQuantity())
-                    .setParameter("side", order.getSide().name())
-                    .setParameter("orderType", order.getOrderType().name())
-                    .setParameter("status", order.getStatus().name())
-                    .setParameter("stopPrice", order.getStopPrice())
-                    .setParameter("takeProfitPrice", order.getTakeProfitPrice())
-                    .setParameter("createdAt", order.getCreatedAt())
-                    .setParameter("updatedAt", order.getUpdatedAt())
-                    .setParameter("modifiedAt", order.getModifiedAt())
-                    .executeUpdate();
+        // 每 chunk-size 筆訂單一個多列 upsert
+        for (int from = 0; from < allOrders.size(); from += orderChunkSize) {
+            List<Order> rows = allOrders.subList(from, Math.min(from + orderChunkSize, allOrders.size()));
+            jdbcTemplate.update(orderStatements.computeIfAbsent(rows.size(), count -> statement(ORDER_INSERT, ORDER_ROW, count, ORDER_UPDATE)), ps -> {
+                Calendar utc = utc();
+                int index = 1;
+                for (Order order : rows) {
+                    index = bindOrder(ps, index, order, utc);
+                }
+            });
+        }
+
+        // 每 chunk-size 筆成交一個多列 insert
+        for (int from = 0; from < trades.size(); from += tradeChunkSize) {
+            List<Trade> rows = trades.subList(from, Math.min(from + tradeChunkSize, trades.size()));
+            jdbcTemplate.update(tradeStatements.computeIfAbsent(rows.size(), count -> statement(TRADE_INSERT, TRADE_ROW, count, "")), ps -> {
+                Calendar utc = utc();
+                int index = 1;
+                for (Trade trade : rows) {
+                    index = bindTrade(ps, index, trade, utc);
+                }
+            });
         }
+    }
 
-        // 批量插入 Trade
-        String tradeInsertQuery = "INSERT INTO trades (id, symbol, price, quantity, buy_order_id, sell_order_id, trade_time, direction, taker_order_id) " +
-                "VALUES (:id, :symbol, :price, :quantity, :buyOrderId, :sellOrderId, :tradeTime, :direction, :takerOrderId)";
-
-        for (Trade trade : trades) {
-            entityManager.createNativeQuery(tradeInsertQuery)
-                    .setParameter("id", trade.getId())
-                    .setParameter("symbol", trade.getSymbol())
-                    .setParameter("price", trade.getPrice())
-                    .setParameter("quantity", trade.getQuantity())
-                    .setParameter("buyOrderId", trade.getBuyOrder().getId())
-                    .setParameter("sellOrderId", trade.getSellOrder().getId())
-                    .setParameter("tradeTime", trade.getTradeTime())
-                    .setParameter("direction", trade.getDirection())
-                    .setParameter("takerOrderId", trade.getTakerOrderId())
-                    .executeUpdate();
+    private static String statement(String insert, String row, int rows, String suffix) {
+        StringBuilder sql = new StringBuilder(insert.length() + rows * (row.length() + 1) + suffix.length()).append(insert);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.append(row);
         }
+        return sql.append(suffix).toString();
+    }
+
+    private static int bindOrder(PreparedStatement ps, int index, Order order, Calendar utc) throws SQLException {
+        ps.setString(index++, order.getId());
+        ps.setString(index++, order.getUserId());
+        ps.setString(index++, order.getSymbol());
+        ps.setBigDecimal(index++, order.getPrice());
+        ps.setBigDecimal(index++, order.getQuantity());
+        ps.setBigDecimal(index++, order.getFilledQuantity());
+        ps.setBigDecimal(index++, order.getUnfilledQuantity());
+        ps.setString(index++, order.getSide().name());
+        ps.setString(index++, order.getOrderType().name());
+        ps.setString(index++, order.getStatus().name());
+        ps.setBigDecimal(index++, order.getStopPrice());
+        ps.setBigDecimal(index++, order.getTakeProfitPrice());
+        setInstant(ps, index++, order.getCreatedAt(), utc);
+        setInstant(ps, index++, order.getUpdatedAt(), utc);
+        setInstant(ps, index++, order.getModifiedAt(), utc);
+        return index;
+    }
+
+    private static int bindTrade(PreparedStatement ps, int index, Trade trade, Calendar utc) throws SQLException {
+        ps.setString(index++, trade.getId());
+        ps.setString(index++, trade.getSymbol());
+        ps.setBigDecimal(index++, trade.getPrice());
+        ps.setBigDecimal(index++, trade.getQuantity());
+        ps.setString(index++, trade.getBuyOrder().getId());
+        ps.setString(index++, trade.getSellOrder().getId());
+        setInstant(ps, index++, trade.getTradeTime(), utc);
+        ps.setString(index++, trade.getDirection());
+        ps.setString(index++, trade.getTakerOrderId());
+        return index;
+    }
+
+    // 與 Hibernate 寫入 Instant 的方式相同，以 UTC 存入
+    private static void setInstant(PreparedStatement ps, int index, Instant instant, Calendar utc) throws SQLException {
+        ps.setTimestamp(index, instant == null ? null : Timestamp.from(instant), utc);
+    }
 
-        // 在最後 flush 以提交所有變更
-        entityManager.flush();
+    // Calendar 不是執行緒安全的，每個語句各用一個
+    private static Calendar utc() {
+        return Calendar.getInstance(TimeZone.getTimeZone("UTC"));
     }
 }
@@ -0,0 +1,204 @@
+package com.matching.service;
+
+import com.matching.dto.DepthSnapshot;
+import com.matching.dto.MatchResult;
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import com.matching.producer.OrderBookDeltaProducer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 深度合併（選用）：依 (交易對, 方向, 價格) 累積淨變化，每 interval-ms 或累積 max-changes 筆變化時，
+// 把有變動價位的絕對數量（0 表示價位已清空）合成一筆送到 order-book-delta-<symbol>，取代逐筆的增量
+// 絕對數量以撮合結果中的深度快照為基準，只有基準已知的價位才累積並送出：快照涵蓋的價格範圍（最佳價到快照最後一檔，
+// 快照檔數少於 snapshot-levels 時為整邊）內的價位，加上之後持續套用變化的結果。範圍外的價位不知道原本的數量，
+// 它的變化捨棄，等之後的快照涵蓋時才送出；收到第一份快照前全部捨棄。之後的快照也會校正快照範圍內的價位
+// 合併比例（收到的價位變化數 / 送出的價位數）見 /actuator/metrics/matching.depth.conflation.ratio
+@Service
+public class DepthConflator {
+
+    private record LevelKey(Order.Side side, long price) {
+    }
+
+    // 單一交易對的價位數量，由 MatchResultFanout 的監聽執行緒與定時送出的執行緒共用，存取時鎖定
+    private static final class SymbolDepth {
+        final String symbol;
+        final Map<LevelKey, Long> levels = new HashMap<>();
+        final Set<LevelKey> changed = new LinkedHashSet<>();
+        final Counter changeCounter;
+        final Counter publishedCounter;
+        // 基準已知的價格範圍：買方價格 >= bidBound、賣方價格 <= askBound，只會隨快照擴大
+        long bidBound = Long.MAX_VALUE;
+        long askBound = Long.MIN_VALUE;
+        long sequence;
+        int pendingChanges;
+
+        SymbolDepth(String symbol, Counter changeCounter, Counter publishedCounter) {
+            this.symbol = symbol;
+            this.changeCounter = changeCounter;
+            this.publishedCounter = publishedCounter;
+        }
+    }
+
+    private final OrderBookDeltaProducer orderBookDeltaProducer;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxChanges;
+    private final int snapshotLevels;
+    private final Map<String, SymbolDepth> depths = new ConcurrentHashMap<>();
+
+    public DepthConflator(OrderBookDeltaProducer orderBookDeltaProducer,
+                          MeterRegistry meterRegistry,
+                          @Value("${matching.depth.conflation.enabled:false}") boolean enabled,
+                          @Value("${matching.depth.conflation.max-changes:1000}") int maxChanges,
+                          @Value("${matching.depth.snapshot-levels:20}") int snapshotLevels) {
+        this.orderBookDeltaProducer = orderBookDeltaProducer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxChanges = maxChanges;
+        this.snapshotLevels = Math.max(1, snapshotLevels);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 套用一筆撮合結果的價位淨變化（基準未知的價位捨棄），累積到 max-changes 筆時立即送出
+    public void apply(MatchResult result) {
+        if (result.getLevelChanges().isEmpty()) {
+            return;
+        }
+        SymbolDepth depth = depth(result.getSymbol());
+        synchronized (depth) {
+            for (MatchResult.LevelChange change : result.getLevelChanges()) {
+                LevelKey key = new LevelKey(change.getSide(), FixedPoint.toScaled(change.getPrice()));
+                if (!isKnown(depth, key)) {
+                    continue;
+                }
+                if (depth.levels.merge(key, FixedPoint.toScaled(change.getQuantity()), Long::sum) == 0) {
+                    depth.levels.remove(key);
+                }
+                depth.changed.add(key);
+            }
+            depth.sequence = result.getSequence();
+            depth.pendingChanges += result.getLevelChanges().size();
+            depth.changeCounter.increment(result.getLevelChanges().size());
+            if (depth.pendingChanges >= maxChanges) {
+                publish(depth);
+            }
+        }
+    }
+
+    // 以快照校正：快照涵蓋的價格範圍內以快照為準，範圍外保留（基準已知時）累積的數量
+    public void reset(DepthSnapshot snapshot) {
+        SymbolDepth depth = depth(snapshot.getSymbol());
+        synchronized (depth) {
+            reset(depth, Order.Side.BUY, snapshot.getBids());
+            reset(depth, Order.Side.SELL, snapshot.getAsks());
+            depth.sequence = Math.max(depth.sequence, snapshot.getSequence());
+        }
+    }
+
+    @Scheduled(fixedRateString = "${matching.depth.conflation.interval-ms:100}")
+    public void publishAll() {
+        for (SymbolDepth depth : depths.values()) {
+            synchronized (depth) {
+                publish(depth);
+            }
+        }
+    }
+
+    private void reset(SymbolDepth depth, Order.Side side, List<DepthSnapshot.Level> levels) {
+        Map<LevelKey, Long> quantities = new HashMap<>();
+        for (DepthSnapshot.Level level : levels) {
+            quantities.put(new LevelKey(side, FixedPoint.toScaled(new BigDecimal(level.getPrice()))),
+                    FixedPoint.toScaled(new BigDecimal(level.getQuantity())));
+        }
+        // 快照的檔數少於上限（包括沒有任何價位）時涵蓋整邊
+        Long worstPrice = levels.size() < snapshotLevels ? null : FixedPoint.toScaled(new BigDecimal(levels.get(levels.size() - 1).getPrice()));
+        if (side == Order.Side.BUY) {
+            depth.bidBound = worstPrice == null ? Long.MIN_VALUE : Math.min(depth.bidBound, worstPrice);
+        } else {
+            depth.askBound = worstPrice == null ? Long.MAX_VALUE : Math.max(depth.askBound, worstPrice);
+        }
+        Iterator<Map.Entry<LevelKey, Long>> iterator = depth.levels.entrySet().iterator();
+        while (iterator.hasNext()) {
+            LevelKey key = iterator.next().getKey();
+            boolean covered = worstPrice == null || (side == Order.Side.BUY ? key.price() >= worstPrice : key.price() <= worstPrice);
+            if (key.side() == side && covered && !quantities.containsKey(key)) {
+                iterator.remove();
+                depth.changed.add(key);
+            }
+        }
+        for (Map.Entry<LevelKey, Long> entry : quantities.entrySet()) {
+            Long previous = depth.levels.put(entry.getKey(), entry.getValue());
+            if (previous == null || previous.longValue() != entry.getValue()) {
+                depth.changed.add(entry.getKey());
+            }
+        }
+    }
+
+    private static boolean isKnown(SymbolDepth depth, LevelKey key) {
+        return key.side() == Order.Side.BUY ? key.price() >= depth.bidBound : key.price() <= depth.askBound;
+    }
+
+    // 送出有變動的價位，買方由高到低、賣方由低到高
+    private void publish(SymbolDepth depth) {
+        if (depth.changed.isEmpty()) {
+            return;
+        }
+        List<LevelKey> changed = new ArrayList<>(depth.changed);
+        changed.sort(Comparator.comparing(LevelKey::side)
+                .thenComparingLong(key -> key.side() == Order.Side.BUY ? -key.price() : key.price()));
+        DepthSnapshot update = new DepthSnapshot();
+        update.setSymbol(depth.symbol);
+        update.setSequence(depth.sequence);
+        for (LevelKey key : changed) {
+            DepthSnapshot.Level level = new DepthSnapshot.Level(FixedPoint.toPlainString(key.price()),
+                    FixedPoint.toPlainString(depth.levels.getOrDefault(key, 0L)));
+            (key.side() == Order.Side.BUY ? update.getBids() : update.getAsks()).add(level);
+        }
+        try {
+            orderBookDeltaProducer.sendLevels(update);
+        } catch (Exception e) {
+            System.err.println("Error: Failed to send " + changed.size() + " conflated levels of " + depth.symbol);
+            e.printStackTrace();
+        }
+        depth.publishedCounter.increment(changed.size());
+        depth.changed.clear();
+        depth.pendingChanges = 0;
+    }
+
+    private SymbolDepth depth(String symbol) {
+        return depths.computeIfAbsent(symbol, key -> {
+            Counter changes = Counter.builder("matching.depth.conflation.changes")
+                    .description("Level changes received by the depth conflator")
+                    .tag("symbol", key)
+                    .register(meterRegistry);
+            Counter published = Counter.builder("matching.depth.conflation.levels")
+                    .description("Absolute level quantities published by the depth conflator")
+                    .tag("symbol", key)
+                    .register(meterRegistry);
+            Gauge.builder("matching.depth.conflation.ratio", () -> published.count() == 0 ? 0 : changes.count() / published.count())
+                    .description("Level changes received per level published")
+                    .tag("symbol", key)
+                    .register(meterRegistry);
+            return new SymbolDepth(key, changes, published);
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.matching.service;
+
+import com.matching.dto.DepthSnapshot;
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import com.matching.orderbook.InMemoryOrderBook;
+import com.matching.orderbook.OrderBook;
+import com.matching.orderbook.PriceLevel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+
+// 定期產生各交易對的 L2 深度快照，讓深度流的下游可以從「快照 + 之後的增量」重新同步，不必回頭讀 Redis
+// 由撮合執行緒在批次寫出前呼叫，快照與撮合結果一起依序送出；只有記憶體訂單簿能在撮合執行緒上直接彙總
+@Service
+public class DepthSnapshotService {
+
+    private final NewOrderbookService orderbookService;
+    private final long intervalMillis;
+    private final int levels;
+
+    public DepthSnapshotService(NewOrderbookService orderbookService,
+                                @Value("${matching.depth.snapshot-interval-ms:5000}") long intervalMillis,
+                                @Value("${matching.depth.snapshot-levels:20}") int levels) {
+        this.orderbookService = orderbookService;
+        this.intervalMillis = intervalMillis;
+        this.levels = levels;
+    }
+
+    // interval-ms 為 0 時不產生快照
+    public boolean isEnabled() {
+        return intervalMillis > 0 && levels > 0;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    // 把買賣各前 levels 檔加入批次，回傳是否已加入；耗時與這些檔位的掛單數成正比
+    public boolean capture(MatchBatch batch, Instant now) {
+        OrderBook orderBook = orderbookService.getOrderBook(batch.getSymbol());
+        if (!(orderBook instanceof InMemoryOrderBook book)) {
+            return false;
+        }
+        DepthSnapshot snapshot = new DepthSnapshot();
+        snapshot.setSymbol(batch.getSymbol());
+        snapshot.setTime(now);
+        addLevels(book, Order.Side.BUY, snapshot.getBids());
+        addLevels(book, Order.Side.SELL, snapshot.getAsks());
+        batch.addSnapshot(snapshot);
+        return true;
+    }
+
+    private void addLevels(InMemoryOrderBook book, Order.Side side, List<DepthSnapshot.Level> target) {
+        for (PriceLevel level : book.sideOf(side).levels()) {
+            if (target.size() >= levels) {
+                return;
+            }
+            long quantity = 0;
+            for (EngineOrder order : level.orders()) {
+                quantity += order.getUnfilledQuantity();
+            }
+            target.add(new DepthSnapshot.Level(FixedPoint.toPlainString(level.getPrice()), FixedPoint.toPlainString(quantity)));
+        }
+    }
+}
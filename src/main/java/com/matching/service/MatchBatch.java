@@ -0,0 +1,161 @@
+package com.matching.service;
+
+import com.matching.dto.DepthSnapshot;
+import com.matching.dto.MatchResult;
+import com.matching.engine.FixedPoint;
+import com.matching.engine.OrderEventType;
+import com.matching.model.Order;
+import com.matching.model.Trade;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 撮合執行緒在一個批次內累積的撮合結果，每個事件一筆 MatchResult，批次結束時由 NewOrderMatchingService.flush 一次送出
+// 只由擁有該交易對的撮合執行緒存取
+public class MatchBatch {
+
+    public static final String SNAPSHOT = "SNAPSHOT";
+
+    // 同一價位在事件內的增量會合併成一筆淨變化
+    private record LevelKey(Order.Side side, long price) {
+    }
+
+    private final String symbol;
+    private final List<MatchResult> results = new ArrayList<>();
+    private final Map<LevelKey, Long> levelDeltas = new LinkedHashMap<>();
+    private MatchResult current;
+    private long nextSequence = 1;
+    // 可指派的序號上限（不含），Long.MAX_VALUE 表示不需預留
+    private long sequenceLimit = Long.MAX_VALUE;
+    private int events;
+
+    // 序號從 1 開始且不需預留，用於重放與壓測等不送出結果的情況
+    public MatchBatch(String symbol) {
+        this.symbol = symbol;
+    }
+
+    // reserved 為 true 時序號要先以 addSequences 預留才能指派，撮合執行緒用它讓序號在重啟與換手後仍然遞增
+    public MatchBatch(String symbol, boolean reserved) {
+        this.symbol = symbol;
+        if (reserved) {
+            this.sequenceLimit = 0;
+        }
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    // 加入預留的序號 [first, first + count)：緊接在目前的區段之後時延續，否則（第一次預留）從 first 開始，中間的序號不使用
+    public void addSequences(long first, long count) {
+        if (first != sequenceLimit) {
+            nextSequence = first;
+        }
+        sequenceLimit = first + count;
+    }
+
+    // 剩餘的序號不夠目前的事件、下一個事件與一份深度快照各用一個時回傳 true，需先預留才能處理下一個事件
+    public boolean needsSequences() {
+        return sequenceLimit - nextSequence < 3;
+    }
+
+    // 開始處理一個事件，之後的成交、訂單更新與增量都歸到這個事件的結果
+    public void begin(OrderEventType type) {
+        finish();
+        MatchResult result = new MatchResult();
+        result.setSymbol(symbol);
+        result.setType(type.name());
+        current = result;
+        events++;
+    }
+
+    // 插入訂單簿目前的深度快照，序號接在之前的事件後面；快照不算一個事件
+    public void addSnapshot(DepthSnapshot snapshot) {
+        finish();
+        MatchResult result = new MatchResult();
+        result.setSymbol(symbol);
+        result.setType(SNAPSHOT);
+        result.setSequence(assignSequence());
+        snapshot.setSequence(result.getSequence());
+        result.setSnapshot(snapshot);
+        results.add(result);
+    }
+
+    // 事件處理完後該筆訂單的狀態
+    public void setOrder(Order order) {
+        current.setOrder(order);
+    }
+
+    // 請求被拒絕：order 的狀態應為 REJECTED，同時作為訂單更新通知使用者
+    public void reject(Order order, String reason) {
+        current.setOrder(order);
+        current.getOrderUpdates().add(order);
+        current.setRejectReason(reason);
+    }
+
+    public void addTrade(Trade trade) {
+        current.getTrades().add(trade);
+    }
+
+    public void addOrderUpdate(Order order) {
+        current.getOrderUpdates().add(order);
+    }
+
+    // quantity 為價位未成交數量的變化，增加為正、減少為負
+    public void addDelta(Order.Side side, long price, long quantity) {
+        levelDeltas.merge(new LevelKey(side, price), quantity, Long::sum);
+    }
+
+    // 依事件順序回傳已完成的結果
+    public List<MatchResult> getResults() {
+        finish();
+        return results;
+    }
+
+    // 批次內處理的事件數
+    public int getEvents() {
+        return events;
+    }
+
+    public boolean isEmpty() {
+        return events == 0;
+    }
+
+    public void clear() {
+        results.clear();
+        levelDeltas.clear();
+        current = null;
+        events = 0;
+    }
+
+    // 收尾目前的事件：價位增量依首次變動的順序轉為淨變化，淨變化為 0 的略過；
+    // 沒有任何輸出的事件（例如找不到要撤的訂單）不指派序號也不送出
+    private void finish() {
+        if (current == null) {
+            return;
+        }
+        for (Map.Entry<LevelKey, Long> entry : levelDeltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                current.getLevelChanges().add(new MatchResult.LevelChange(entry.getKey().side(),
+                        FixedPoint.toBigDecimal(entry.getKey().price()), FixedPoint.toBigDecimal(entry.getValue())));
+            }
+        }
+        levelDeltas.clear();
+
+        if (current.getOrder() != null || !current.getTrades().isEmpty() || !current.getOrderUpdates().isEmpty()
+                || !current.getLevelChanges().isEmpty()) {
+            current.setSequence(assignSequence());
+            results.add(current);
+        }
+        current = null;
+    }
+
+    private long assignSequence() {
+        if (nextSequence >= sequenceLimit) {
+            throw new IllegalStateException("Match result sequences of " + symbol + " are not reserved");
+        }
+        return nextSequence++;
+    }
+}
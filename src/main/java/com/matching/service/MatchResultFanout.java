@@ -0,0 +1,142 @@
+package com.matching.service;
+
+import com.matching.dto.MatchResult;
+import com.matching.dto.TradeOrdersMessage;
+import com.matching.engine.FixedPoint;
+import com.matching.metrics.LatencyStage;
+import com.matching.metrics.StageLatencies;
+import com.matching.model.Order;
+import com.matching.model.Trade;
+import com.matching.producer.KlineUpdateProducer;
+import com.matching.producer.MatchedOrderProducer;
+import com.matching.producer.OrderBookDeltaProducer;
+import com.matching.producer.UserOrderProducer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 由撮合結果推導舊有的 topic：recent-trades、kline-updates、user-order-updates、order-book-delta-<symbol> 與 matched_orders
+// 各交易對依結果順序送出，同一批結果內同一價位只推送一筆淨變化；撮合執行緒插入的深度快照送到壓縮的快照 topic
+@Service
+public class MatchResultFanout {
+
+    private record LevelKey(Order.Side side, long price) {
+    }
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final UserOrderProducer userOrderProducer;
+    private final OrderBookDeltaProducer orderBookDeltaProducer;
+    private final MatchedOrderProducer matchedOrderProducer;
+    private final KlineUpdateProducer klineUpdateProducer;
+    private final StageLatencies stageLatencies;
+    private final DepthConflator depthConflator;
+
+    @Autowired
+    public MatchResultFanout(KafkaTemplate<String, String> kafkaTemplate,
+                             ObjectMapper objectMapper,
+                             UserOrderProducer userOrderProducer,
+                             OrderBookDeltaProducer orderBookDeltaProducer,
+                             MatchedOrderProducer matchedOrderProducer,
+                             KlineUpdateProducer klineUpdateProducer,
+                             StageLatencies stageLatencies,
+                             DepthConflator depthConflator) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.userOrderProducer = userOrderProducer;
+        this.orderBookDeltaProducer = orderBookDeltaProducer;
+        this.matchedOrderProducer = matchedOrderProducer;
+        this.klineUpdateProducer = klineUpdateProducer;
+        this.stageLatencies = stageLatencies;
+        this.depthConflator = depthConflator;
+    }
+
+    public void publish(List<MatchResult> results) throws JsonProcessingException {
+        Map<String, List<MatchResult>> resultsBySymbol = new LinkedHashMap<>();
+        for (MatchResult result : results) {
+            resultsBySymbol.computeIfAbsent(result.getSymbol(), symbol -> new ArrayList<>()).add(result);
+        }
+        for (Map.Entry<String, List<MatchResult>> entry : resultsBySymbol.entrySet()) {
+            publish(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // 每一筆送出（含編碼）的延遲依 topic 記在各自的階段
+    private void publish(String symbol, List<MatchResult> results) throws JsonProcessingException {
+        StageLatencies.SymbolLatencies latencies = stageLatencies.forSymbol(symbol);
+        for (MatchResult result : results) {
+            for (Trade trade : result.getTrades()) {
+                long started = System.nanoTime();
+                String tradeJson = objectMapper.writeValueAsString(trade);
+                kafkaTemplate.send("recent-trades", tradeJson);
+                long sent = System.nanoTime();
+                latencies.record(LatencyStage.SEND_TRADE, sent - started);
+
+                // 推送K線更新數據到 Kafka
+                klineUpdateProducer.sendTrade(trade.getSymbol(), FixedPoint.toScaled(trade.getPrice()), trade.getTradeTime().getEpochSecond());
+                latencies.record(LatencyStage.SEND_KLINE, System.nanoTime() - sent);
+            }
+        }
+
+        for (MatchResult result : results) {
+            for (Order order : result.getOrderUpdates()) {
+                long started = System.nanoTime();
+                userOrderProducer.sendOrderUpdate(order);
+                latencies.record(LatencyStage.SEND_ORDER_UPDATE, System.nanoTime() - started);
+            }
+        }
+
+        // 同一價位只推送一筆淨變化；深度快照之前的增量先送出，增量不會跨過快照的序號
+        // 開啟深度合併時改由 DepthConflator 定期送出絕對數量
+        Map<LevelKey, Long> levelDeltas = new LinkedHashMap<>();
+        long sequence = 0;
+        for (MatchResult result : results) {
+            if (result.getSnapshot() != null) {
+                sendLevelDeltas(symbol, sequence, levelDeltas, latencies);
+                orderBookDeltaProducer.sendSnapshot(result.getSnapshot());
+                if (depthConflator.isEnabled()) {
+                    depthConflator.reset(result.getSnapshot());
+                }
+                continue;
+            }
+            if (depthConflator.isEnabled()) {
+                depthConflator.apply(result);
+                continue;
+            }
+            for (MatchResult.LevelChange change : result.getLevelChanges()) {
+                levelDeltas.merge(new LevelKey(change.getSide(), FixedPoint.toScaled(change.getPrice())),
+                        FixedPoint.toScaled(change.getQuantity()), Long::sum);
+                sequence = result.getSequence();
+            }
+        }
+        sendLevelDeltas(symbol, sequence, levelDeltas, latencies);
+
+        // 將訂單和交易信息封裝後發送到 matched_orders 保存到 MySQL
+        for (MatchResult result : results) {
+            for (Trade trade : result.getTrades()) {
+                long started = System.nanoTime();
+                matchedOrderProducer.sendMatchedTrade(new TradeOrdersMessage(trade.getBuyOrder(), trade.getSellOrder(), trade));
+                latencies.record(LatencyStage.SEND_MATCHED_ORDER, System.nanoTime() - started);
+            }
+        }
+    }
+
+    // 送出累積的淨變化並清空，sequence 是其中最後一筆撮合結果的序號
+    private void sendLevelDeltas(String symbol, long sequence, Map<LevelKey, Long> levelDeltas, StageLatencies.SymbolLatencies latencies) {
+        for (Map.Entry<LevelKey, Long> entry : levelDeltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                long started = System.nanoTime();
+                orderBookDeltaProducer.sendDelta(symbol, sequence, entry.getKey().side(), entry.getKey().price(), entry.getValue());
+                latencies.record(LatencyStage.SEND_DELTA, System.nanoTime() - started);
+            }
+        }
+        levelDeltas.clear();
+    }
+}
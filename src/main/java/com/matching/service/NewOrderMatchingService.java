@@ -1,259 +1,305 @@
 package com.matching.service;
 
+import com.matching.config.SymbolConfig;
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import com.matching.dto.MatchResult;
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.engine.OrderEventType;
+import com.matching.journal.JournalEntry;
+import com.matching.metrics.LatencyStage;
+import com.matching.metrics.StageLatencies;
 import com.matching.model.Order;
 import com.matching.model.Trade;
-import com.matching.producer.OrderBookDeltaProducer;
-import com.matching.producer.UserOrderProducer;
+import com.matching.orderbook.Fill;
+import com.matching.orderbook.OrderBook;
+import com.matching.producer.MatchResultProducer;
 import com.matching.utils.SnowflakeIdGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+// 不符合交易對規格、找不到或不屬於請求者的訂單不拋出例外，改以狀態為 REJECTED 的訂單更新通知使用者，訂單簿不變
 @Service
 public class NewOrderMatchingService {
 
     private final NewOrderbookService orderbookService;
     private final SnowflakeIdGenerator snowflakeIdGenerator;
-    private final OrderBookDeltaProducer orderBookDeltaProducer;
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
-    private final UserOrderProducer userOrderProducer;
+    private final MatchResultProducer matchResultProducer;
+    private final SymbolConfig symbolConfig;
+    private final StageLatencies stageLatencies;
 
     @Autowired
     public NewOrderMatchingService(NewOrderbookService orderbookService,
                                    SnowflakeIdGenerator snowflakeIdGenerator,
-                                   OrderBookDeltaProducer orderBookDeltaProducer,
-                                   KafkaTemplate<String, String> kafkaTemplate,
-                                   ObjectMapper objectMapper,
-                                   UserOrderProducer userOrderProducer) {
+                                   MatchResultProducer matchResultProducer,
+                                   SymbolConfig symbolConfig,
+                                   StageLatencies stageLatencies) {
         this.orderbookService = orderbookService;
         this.snowflakeIdGenerator = snowflakeIdGenerator;
-        this.orderBookDeltaProducer = orderBookDeltaProducer;
-        this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
-        this.userOrderProducer = userOrderProducer;
+        this.matchResultProducer = matchResultProducer;
+        this.symbolConfig = symbolConfig;
+        this.stageLatencies = stageLatencies;
     }
 
-    public void handleNewOrder(Order order) throws JsonProcessingException {
-        // 檢查訂單類型，根據類型選擇匹配邏輯
-        if (order.getOrderType() == Order.OrderType.MARKET) {
-            // 如果是市價單，執行市價單匹配
-            matchMarketOrder(order);
-        } else {
-            // 如果是限價單，執行限價單匹配
-            matchOrders(order);
-        }
+    // 失去 Snowflake 租約時無法產生成交 ID，撮合執行緒在事件寫入日誌前據此暫停，消費者停止拉取
+    // 事件處理本身不讀取租約狀態：日誌中的事件重放時必須得到與當初相同的結果
+    public boolean isLeased() {
+        return snowflakeIdGenerator.isLeased();
+    }
 
-        // 未完全匹配的限價單才存入 Redis
-        if (order.getUnfilledQuantity().compareTo(BigDecimal.ZERO) > 0 && order.getOrderType() != Order.OrderType.MARKET) {
-            orderbookService.saveOrderToRedis(order);
-            // 推送增量數據
-            orderBookDeltaProducer.sendDelta(
-                    order.getSymbol(),
-                    order.getSide().toString(),
-                    order.getPrice().toString(),
-                    order.getUnfilledQuantity().toString()
-            );
+    // 事件處理只以傳入的 now 作為時間，成交 ID 只取自 SnowflakeIdGenerator；兩者固定時，同樣的事件順序會得到同樣的訂單簿
+    // engineOrder 可能是 ring buffer 槽位中重複使用的物件，處理完後不可再持有
+    public void handleNewOrder(EngineOrder engineOrder, Instant now, MatchBatch batch) {
+        batch.begin(OrderEventType.NEW);
+        // 檢查交易對規格
+        String invalid = null;
+        try {
+            symbolConfig.getSpec(engineOrder.getSymbol()).validate(engineOrder);
+        } catch (IllegalArgumentException e) {
+            invalid = e.getMessage();
         }
-
-        // 只有非市價單才推送訂單更新到 Kafka
-        if (order.getOrderType() != Order.OrderType.MARKET) {
-            userOrderProducer.sendOrderUpdate(order);
+        if (invalid != null) {
+            Order rejectedOrder = engineOrder.toOrder();
+            rejectedOrder.setStatus(Order.OrderStatus.REJECTED);
+            rejectedOrder.setUpdatedAt(now);
+            reject(rejectedOrder, "new", invalid, batch);
+            return;
         }
+
+        // 限價單與市價單共用撮合流程，市價單不檢查價格
+        matchOrders(engineOrder, now, batch);
+        // 槽位物件不能留在訂單簿，剩餘數量要掛單時改用複本
+        restRemaining(rests(engineOrder) ? engineOrder.copy() : engineOrder, batch);
     }
 
-    // 撮合邏輯
-    public void matchOrders(Order newOrder) throws JsonProcessingException {
-        // 保存所有匹配到的 `Trade`
-        List<Trade> matchedTrades = new ArrayList<>();
+    // 撤單：依訂單 ID 直接從訂單簿移除，不需掃描價位
+    public void handleCancel(CancelOrderRequest request, Instant now, MatchBatch batch) {
+        batch.begin(OrderEventType.CANCEL);
+        OrderBook orderBook = orderbookService.getOrderBook(request.getSymbol());
+        EngineOrder order = findOwnedOrder(orderBook, request.getOrderId(), request.getUserId(), "cancel", now, batch);
+        if (order == null) {
+            return;
+        }
+
+        orderBook.removeOrder(order);
+        order.setStatus(Order.OrderStatus.CANCELLED);
+        order.setUpdatedAt(now);
+
+        // 推送增量數據，撤掉的是剩餘未成交數量
+        batch.addDelta(order.getSide(), order.getPrice(), -order.getUnfilledQuantity());
+        Order cancelledOrder = order.toOrder();
+        batch.addOrderUpdate(cancelledOrder);
+        batch.setOrder(cancelledOrder);
+    }
 
-        while (newOrder.getUnfilledQuantity().compareTo(BigDecimal.ZERO) > 0) {
-            Order p1 = orderbookService.getBestOpponentOrder(newOrder);
+    // 改單：同價減量保留排隊位置；改價或加量則移出訂單簿，當作新進訂單重新撮合並排到隊尾
+    public void handleAmend(AmendOrderRequest request, Instant now, MatchBatch batch) {
+        batch.begin(OrderEventType.AMEND);
+        OrderBook orderBook = orderbookService.getOrderBook(request.getSymbol());
+        EngineOrder order = findOwnedOrder(orderBook, request.getOrderId(), request.getUserId(), "amend", now, batch);
+        if (order == null) {
+            return;
+        }
 
-            if (p1 == null) {
-                break;
+        long newPrice = order.getPrice();
+        long newQuantity = order.getQuantity();
+        String invalid = null;
+        try {
+            // 小數位超過 8 位或超出範圍的金額與不符規格一樣拒絕
+            if (request.getPrice() != null) {
+                newPrice = FixedPoint.toScaled(request.getPrice());
+            }
+            if (request.getQuantity() != null) {
+                newQuantity = FixedPoint.toScaled(request.getQuantity());
             }
+            symbolConfig.getSpec(order.getSymbol()).validate(newPrice, newQuantity);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            invalid = e.getMessage();
+        }
+        if (invalid == null && newQuantity <= order.getFilledQuantity()) {
+            invalid = "Amended quantity " + FixedPoint.toPlainString(newQuantity)
+                    + " must exceed filled quantity " + FixedPoint.toPlainString(order.getFilledQuantity()) + " of order " + order.getId();
+        }
+        if (invalid != null) {
+            reject(rejectedRequest(request.getOrderId(), request.getUserId(), orderBook.getSymbol(), order, now), "amend", invalid, batch);
+            return;
+        }
+        long newUnfilledQuantity = FixedPoint.subtract(newQuantity, order.getFilledQuantity());
+
+        if (newPrice == order.getPrice() && newQuantity <= order.getQuantity()) {
+            long reducedQuantity = order.getUnfilledQuantity() - newUnfilledQuantity;
+            order.setQuantity(newQuantity);
+            order.setUnfilledQuantity(newUnfilledQuantity);
+            order.setUpdatedAt(now);
+            orderBook.updateOrder(order);
+
+            batch.addDelta(order.getSide(), order.getPrice(), -reducedQuantity);
+            Order amendedOrder = order.toOrder();
+            batch.addOrderUpdate(amendedOrder);
+            batch.setOrder(amendedOrder);
+            return;
+        }
 
-            // 保存原始對手訂單的 JSON 值
-            String originalP1Json = orderbookService.convertOrderToJson(p1);
-
-            boolean isPriceMatch = (newOrder.getSide() == Order.Side.BUY && newOrder.getPrice().compareTo(p1.getPrice()) >= 0) ||
-                    (newOrder.getSide() == Order.Side.SELL && newOrder.getPrice().compareTo(p1.getPrice()) <= 0);
-
-            if (isPriceMatch) {
-                BigDecimal matchedQuantity = newOrder.getUnfilledQuantity().min(p1.getUnfilledQuantity());
-
-                // 更新訂單數量和狀態
-                newOrder.setFilledQuantity(newOrder.getFilledQuantity().add(matchedQuantity));
-                newOrder.setUnfilledQuantity(newOrder.getUnfilledQuantity().subtract(matchedQuantity));
-
-                p1.setFilledQuantity(p1.getFilledQuantity().add(matchedQuantity));
-                p1.setUnfilledQuantity(p1.getUnfilledQuantity().subtract(matchedQuantity));
-
-                // 更新狀態
-                updateOrdersStatus(List.of(newOrder, p1));
-
-                // 建立 `Trade`
-                Trade trade = new Trade();
-                trade.setId(String.valueOf(snowflakeIdGenerator.nextId()));
-                trade.setBuyOrder(newOrder.getSide() == Order.Side.BUY ? newOrder : p1);
-                trade.setSellOrder(newOrder.getSide() == Order.Side.SELL ? newOrder : p1);
-                trade.setSymbol(newOrder.getSymbol());
-                trade.setPrice(p1.getPrice());  // 確保交易價格為對手方訂單的價格
-                trade.setQuantity(matchedQuantity);
-                trade.setTradeTime(Instant.now());
-                trade.setDirection(newOrder.getSide() == Order.Side.BUY ? "buy" : "sell");
-                trade.setTakerOrderId(newOrder.getId());  // 設置 taker 訂單 ID
-
-                // 將 `Trade` 加入列表中
-                matchedTrades.add(trade);
-                String tradeJson = objectMapper.writeValueAsString(trade);
-//                System.out.println("保存新交易到 Kafka: " + tradeJson);
-                kafkaTemplate.send("recent-trades", tradeJson);
-
-                // 推送K線更新數據到 Kafka
-                sendKlineUpdateToKafka(trade);
-
-                // 更新 `p1` 在 Redis 中的狀態
-                if (p1.getUnfilledQuantity().compareTo(BigDecimal.ZERO) == 0) {
-                    orderbookService.removeOrderFromRedis(p1, originalP1Json);
-                } else {
-                    orderbookService.updateOrderInRedis(p1, originalP1Json);
-                }
+        // 先以原價位移除，推送原價位的減少量
+        orderBook.removeOrder(order);
+        batch.addDelta(order.getSide(), order.getPrice(), -order.getUnfilledQuantity());
 
-                // 推送對手訂單增量數據
-                orderBookDeltaProducer.sendDelta(
-                        p1.getSymbol(),
-                        p1.getSide().toString(),
-                        p1.getPrice().toString(),
-                        "-" + matchedQuantity // 本次成交的數量，以負值表示減少
-                );
+        order.setPrice(newPrice);
+        order.setQuantity(newQuantity);
+        order.setUnfilledQuantity(newUnfilledQuantity);
+        order.setUpdatedAt(now);
+        order.setModifiedAt(now);  // 時間優先以改單時間重新計算
 
-                userOrderProducer.sendOrderUpdate(p1);
+        matchOrders(order, now, batch);
+        restRemaining(order, batch);
+    }
 
-            } else {
-                break;
-            }
+    // 重放日誌中的一筆事件，時間使用記錄當時的引擎時間
+    public void apply(JournalEntry entry, MatchBatch batch) {
+        switch (entry.type()) {
+            case NEW -> handleNewOrder(entry.order(), entry.time(), batch);
+            case CANCEL -> handleCancel(entry.cancelRequest(), entry.time(), batch);
+            case AMEND -> handleAmend(entry.amendRequest(), entry.time(), batch);
         }
+    }
 
-        // 保存所有的交易和訂單到 MySQL
-        if (!matchedTrades.isEmpty()) {
-            // 使用自定義 repository 同時保存所有 `Order` 和 `Trade`
-            orderbookService.saveAllOrdersAndTrades(matchedTrades);
+    // 批次結束：寫回訂單簿的累積變更，再把每個事件的撮合結果各編碼一次送出；舊有 topic 由 MatchResultFanout 在撮合執行緒外推導
+    public void flush(MatchBatch batch) throws JsonProcessingException {
+        try {
+            long started = System.nanoTime();
+            orderbookService.getOrderBook(batch.getSymbol()).flush();
+            long flushed = System.nanoTime();
+            stageLatencies.record(LatencyStage.BOOK_FLUSH, batch.getSymbol(), flushed - started);
+
+            if (!batch.getResults().isEmpty()) {
+                for (MatchResult result : batch.getResults()) {
+                    matchResultProducer.send(result);
+                }
+                stageLatencies.record(LatencyStage.SEND_MATCH_RESULT, batch.getSymbol(), System.nanoTime() - flushed);
+            }
+        } finally {
+            batch.clear();
         }
     }
 
-    // 新增方法來處理市價單
-    public void matchMarketOrder(Order marketOrder) throws JsonProcessingException {
-        // 保存所有匹配到的 `Trade`
-        List<Trade> matchedTrades = new ArrayList<>();
-
-        // 市價單不需要關注價格，只需要立即匹配對手方訂單
-        while (marketOrder.getUnfilledQuantity().compareTo(BigDecimal.ZERO) > 0) {
-            // 獲取最優對手方訂單
-            Order p1 = orderbookService.getBestOpponentOrder(marketOrder);
-
-            // 如果沒有可以匹配的訂單，則結束
-            if (p1 == null) {
-                break;
+    // 未完全匹配的限價單存入訂單簿，並記錄增量與訂單更新
+    private void restRemaining(EngineOrder engineOrder, MatchBatch batch) {
+        // 未完全匹配的限價單才存入訂單簿
+        if (rests(engineOrder)) {
+            OrderBook orderBook = orderbookService.getOrderBook(engineOrder.getSymbol());
+            // Lua 撮合模式在同一個腳本裡已經掛入
+            if (!orderBook.restsOnMatch()) {
+                orderBook.addOrder(engineOrder);
             }
+            batch.addDelta(engineOrder.getSide(), engineOrder.getPrice(), engineOrder.getUnfilledQuantity());
+        }
 
-            // 保存原始對手訂單的 JSON 值
-            String originalP1Json = orderbookService.convertOrderToJson(p1);
-
-            // 市價單完全按可成交數量匹配
-            BigDecimal matchedQuantity = marketOrder.getUnfilledQuantity().min(p1.getUnfilledQuantity());
-
-            // 更新訂單數量和狀態
-            marketOrder.setFilledQuantity(marketOrder.getFilledQuantity().add(matchedQuantity));
-            marketOrder.setUnfilledQuantity(marketOrder.getUnfilledQuantity().subtract(matchedQuantity));
-
-            p1.setFilledQuantity(p1.getFilledQuantity().add(matchedQuantity));
-            p1.setUnfilledQuantity(p1.getUnfilledQuantity().subtract(matchedQuantity));
-
-            // 更新狀態
-            updateOrdersStatus(List.of(marketOrder, p1));
-
-            // 建立 `Trade`
-            Trade trade = new Trade();
-            trade.setId(String.valueOf(snowflakeIdGenerator.nextId()));
-            trade.setBuyOrder(marketOrder.getSide() == Order.Side.BUY ? marketOrder : p1);
-            trade.setSellOrder(marketOrder.getSide() == Order.Side.SELL ? marketOrder : p1);
-            trade.setSymbol(marketOrder.getSymbol());
-            trade.setPrice(p1.getPrice());  // 市價單的價格取對手方訂單的價格
-            trade.setQuantity(matchedQuantity);
-            trade.setTradeTime(Instant.now());
-            trade.setDirection(marketOrder.getSide() == Order.Side.BUY ? "buy" : "sell");
-            trade.setTakerOrderId(marketOrder.getId());  // 設置 taker 訂單 ID
-
-            // 將 `Trade` 加入列表中
-            matchedTrades.add(trade);
-            String tradeJson = objectMapper.writeValueAsString(trade);
-            kafkaTemplate.send("recent-trades", tradeJson);
-
-            // 推送K線更新數據到 Kafka
-            sendKlineUpdateToKafka(trade);
-
-            // 更新 `p1` 在 Redis 中的狀態
-            if (p1.getUnfilledQuantity().compareTo(BigDecimal.ZERO) == 0) {
-                orderbookService.removeOrderFromRedis(p1, originalP1Json);
-            } else {
-                orderbookService.updateOrderInRedis(p1, originalP1Json);
-            }
+        // 只有非市價單才推送訂單更新到 Kafka，市價單的結果只記錄在撮合結果中
+        Order order = engineOrder.toOrder();
+        if (engineOrder.getOrderType() != Order.OrderType.MARKET) {
+            batch.addOrderUpdate(order);
+        }
+        batch.setOrder(order);
+    }
 
-            // 推送對手訂單增量數據
-            orderBookDeltaProducer.sendDelta(
-                    p1.getSymbol(),
-                    p1.getSide().toString(),
-                    p1.getPrice().toString(),
-                    "-" + matchedQuantity // 本次成交的數量，以負值表示減少
-            );
+    private static boolean rests(EngineOrder engineOrder) {
+        return engineOrder.getUnfilledQuantity() > 0 && engineOrder.getOrderType() != Order.OrderType.MARKET;
+    }
 
-            // 推送訂單更新到 Kafka
-            userOrderProducer.sendOrderUpdate(p1);
+    // 查詢掛單並確認屬於請求的使用者，不存在（可能已成交或已撤銷）或不屬於該使用者時拒絕請求並回傳 null
+    private EngineOrder findOwnedOrder(OrderBook orderBook, String orderId, String userId, String action, Instant now, MatchBatch batch) {
+        EngineOrder order = orderBook.getOrder(orderId);
+        if (order == null) {
+            reject(rejectedRequest(orderId, userId, orderBook.getSymbol(), null, now), action,
+                    "Order " + orderId + " is not resting in " + orderBook.getSymbol(), batch);
+            return null;
+        }
+        if (userId != null && !userId.equals(order.getUserId())) {
+            // 不透露其他使用者掛單的內容
+            reject(rejectedRequest(orderId, userId, orderBook.getSymbol(), null, now), action,
+                    "Order " + orderId + " does not belong to user " + userId, batch);
+            return null;
         }
+        return order;
+    }
 
-        // 保存所有的交易和訂單到 MySQL
-        if (!matchedTrades.isEmpty()) {
-            orderbookService.saveAllOrdersAndTrades(matchedTrades);
+    // 被拒絕的撤單或改單：以請求的訂單 ID 與使用者通知，resting 為請求者自己的掛單時帶上它目前的內容
+    private static Order rejectedRequest(String orderId, String userId, String symbol, EngineOrder resting, Instant now) {
+        Order order = resting != null ? resting.toOrder() : new Order();
+        order.setId(orderId);
+        order.setUserId(userId != null ? userId : order.getUserId());
+        order.setSymbol(symbol);
+        order.setStatus(Order.OrderStatus.REJECTED);
+        // Order 的預設時間取自系統時鐘，沒有掛單時一律改用事件時間，重放的結果才會相同
+        if (resting == null) {
+            order.setCreatedAt(now);
+            order.setModifiedAt(now);
         }
+        order.setUpdatedAt(now);
+        return order;
     }
 
+    private void reject(Order order, String action, String reason, MatchBatch batch) {
+        System.err.println("Error: Rejected " + action + " order " + order.getId() + " of user " + order.getUserId() + " on " + order.getSymbol() + ": " + reason);
+        batch.reject(order, reason);
+    }
 
-    // 更新訂單狀態和時間
-    private void updateOrdersStatus(List<Order> orders) {
-        for (Order order : orders) {
-            // 如果未成交數量為零，訂單狀態更新為 `COMPLETED`
-            if (order.getUnfilledQuantity().compareTo(BigDecimal.ZERO) == 0) {
-                order.setStatus(Order.OrderStatus.COMPLETED);
-            } else {
-                order.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
+    // 撮合邏輯：訂單簿回傳依序成交的對手方掛單，再逐筆套用到 taker；成交 ID 依成交筆數預留
+    // 取得對手方掛單的時間記在 book.match（Redis 模式包含讀取 Redis）
+    // book.match 已經改動訂單簿（Redis 腳本模式直接寫入 Redis），之後才預留 ID；租約由撮合執行緒在事件寫入日誌前確認，
+    // 那次檢查比發號的期限早，通過後同一個事件的預留不會失敗
+    public void matchOrders(EngineOrder newOrder, Instant now, MatchBatch batch) {
+        OrderBook orderBook = orderbookService.getOrderBook(newOrder.getSymbol());
+
+        long started = System.nanoTime();
+        List<Fill> fills = orderBook.match(newOrder, now);
+        stageLatencies.record(LatencyStage.BOOK_MATCH, newOrder.getSymbol(), System.nanoTime() - started);
+        if (fills.isEmpty()) {
+            return;
+        }
+        // 成交筆數超過一次可預留的上限時分段預留
+        SnowflakeIdGenerator.IdBlock tradeIds = null;
+        for (int i = 0; i < fills.size(); i++) {
+            if (tradeIds == null || tradeIds.remaining() == 0) {
+                tradeIds = snowflakeIdGenerator.reserve(Math.min(fills.size() - i, SnowflakeIdGenerator.MAX_BLOCK_SIZE));
             }
-
-            // 更新 `updatedAt` 字段為當前時間
-            order.setUpdatedAt(Instant.now());
+            executeMatch(newOrder, fills.get(i), tradeIds.nextId(), now, batch);
         }
     }
 
-    // 發送 K-line 更新到 Kafka 的方法
-    private void sendKlineUpdateToKafka(Trade trade) throws JsonProcessingException {
-        // 構建消息
-        String klineUpdateMessage = objectMapper.writeValueAsString(Map.of(
-                "symbol", trade.getSymbol(),
-                "price", trade.getPrice().toString(),
-                "tradeTime", trade.getTradeTime().getEpochSecond()
-        ));
-
-        // 發送到 Kafka 的 kline-updates topic
-        kafkaTemplate.send("kline-updates", klineUpdateMessage);
+    // 以對手方價格成交一筆，訂單簿已在撮合時更新，這裡更新 taker 並記錄成交、增量與訂單更新
+    private void executeMatch(EngineOrder taker, Fill fill, long tradeId, Instant now, MatchBatch batch) {
+        EngineOrder p1 = fill.maker();
+        long matchedQuantity = fill.quantity();
+
+        // 更新訂單數量和狀態
+        taker.fill(matchedQuantity, now);
+
+        // 只在送出 Kafka 前轉回 BigDecimal
+        Order takerOrder = taker.toOrder();
+        Order makerOrder = p1.toOrder();
+
+        // 建立 `Trade`
+        Trade trade = new Trade();
+        trade.setId(String.valueOf(tradeId));
+        trade.setBuyOrder(taker.isBuy() ? takerOrder : makerOrder);
+        trade.setSellOrder(taker.isBuy() ? makerOrder : takerOrder);
+        trade.setSymbol(taker.getSymbol());
+        trade.setPrice(FixedPoint.toBigDecimal(p1.getPrice()));  // 確保交易價格為對手方訂單的價格
+        trade.setQuantity(FixedPoint.toBigDecimal(matchedQuantity));
+        trade.setTradeTime(now);
+        trade.setDirection(taker.isBuy() ? "buy" : "sell");
+        trade.setTakerOrderId(taker.getId());  // 設置 taker 訂單 ID
+        batch.addTrade(trade);
+
+        // 對手訂單本次成交的數量，以負值表示減少
+        batch.addDelta(p1.getSide(), p1.getPrice(), -matchedQuantity);
+        batch.addOrderUpdate(makerOrder);
     }
 
 }
@@ -1,163 +1,313 @@
 package com.matching.service;
 
-import com.matching.dto.TradeOrdersMessage;
+import com.matching.engine.EngineOrder;
 import com.matching.model.Order;
-import com.matching.model.Trade;
-import com.matching.producer.MatchedOrderProducer;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.matching.orderbook.AppliedOffsets;
+import com.matching.orderbook.InMemoryOrderBook;
+import com.matching.orderbook.OrderBook;
+import com.matching.orderbook.OrderBookMode;
+import com.matching.orderbook.RedisOrderBook;
+import com.matching.orderbook.RedisOrderBookCodec;
+import com.matching.orderbook.RedisOrderBookMirror;
+import com.matching.orderbook.RedisScriptOrderBook;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
 import org.springframework.stereotype.Service;
-import org.springframework.data.redis.core.RedisCallback;
 
 import java.nio.charset.StandardCharsets;
-import java.math.BigDecimal;
-import java.time.Instant;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class NewOrderbookService {
 
+    // 內容仍是 ARGV[2] 時才改寫為 ARGV[3]
+    private static final byte[] REPLACE_VALUE_SCRIPT = """
+            if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then
+                return redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])
+            end
+            return 0
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private static final long MIRROR_WAIT_MILLIS = 10_000;
+
     private final RedisTemplate<String, Object> redisTemplate;
-    private final ObjectMapper objectMapper;
-    private final String BUY_SUFFIX = ":BUY";
-    private final String SELL_SUFFIX = ":SELL";
-    private MatchedOrderProducer matchedOrderProducer;
+    private final RedisOrderBookCodec codec;
+    private final RedisOrderBookMirror mirror;
+    private final OrderBookMode mode;
+    private final int prefetchWindow;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, OrderBook> orderBooks = new ConcurrentHashMap<>();
 
-    public NewOrderbookService(RedisTemplate<String, Object> redisTemplate, ObjectMapper objectMapper, MatchedOrderProducer matchedOrderProducer) {
+    public NewOrderbookService(RedisTemplate<String, Object> redisTemplate,
+                               RedisOrderBookCodec codec,
+                               RedisOrderBookMirror mirror,
+                               @Value("${matching.orderbook.mode:memory}") OrderBookMode mode,
+                               @Value("${matching.orderbook.prefetch-window:32}") int prefetchWindow,
+                               MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
-        this.matchedOrderProducer = matchedOrderProducer;
+        this.codec = codec;
+        this.mirror = mirror;
+        this.mode = mode;
+        this.prefetchWindow = prefetchWindow;
+        this.meterRegistry = meterRegistry;
     }
 
-    // 獲取對手方最佳訂單
-    public Order getBestOpponentOrder(Order newOrder) {
-        // 決定對手方的 key
-        String opponentKey = newOrder.getSymbol() + (newOrder.getSide() == Order.Side.BUY ? SELL_SUFFIX : BUY_SUFFIX);
+    // 獲取交易對的訂單簿，第一次使用時建立
+    public OrderBook getOrderBook(String symbol) {
+        return orderBooks.computeIfAbsent(symbol, this::createOrderBook);
+    }
 
-        Set<TypedTuple<Object>> opponentOrders;
+    // 交易對改由其他實例撮合時移除訂單簿；記憶體模式要等鏡像寫完，新的擁有者才能從 Redis 還原出相同的訂單簿，
+    // 鏡像未能寫完時拋出例外讓再平衡失敗，不讓其他實例從不完整的鏡像接手
+    public void release(String symbol) {
+        OrderBook orderBook = orderBooks.remove(symbol);
+        if (orderBook == null) {
+            return;
+        }
+        orderBook.flush();
+        if (mode == OrderBookMode.MEMORY) {
+            boolean written;
+            try {
+                written = mirror.awaitWritten(symbol, MIRROR_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                written = false;
+            }
+            if (!written) {
+                throw new IllegalStateException("Order book mirror of " + symbol + " was not fully written to Redis within " + MIRROR_WAIT_MILLIS + " ms");
+            }
+        }
+    }
 
-        // 根據 `side` 選擇 ZSet 排序方式
-        if (newOrder.getSide() == Order.Side.BUY) {
-            // 如果 `newOrder` 是買單，取 `score` 最小的賣單
-            opponentOrders = redisTemplate.opsForZSet().rangeWithScores(opponentKey, 0, 0);
-        } else {
-            // 如果 `newOrder` 是賣單，取 `score` 最大的買單
-            opponentOrders = redisTemplate.opsForZSet().reverseRangeWithScores(opponentKey, 0, 0);
+    // 從日誌重建時先換上只含快照掛單（沒有快照時為空）、不寫回鏡像的記憶體訂單簿，Redis 中的鏡像維持原狀，
+    // 重放後確認日誌不比鏡像舊才以 attachOrderBook 換成寫回鏡像的訂單簿，否則以 reloadOrderBook 改從 Redis 載入
+    public InMemoryOrderBook resetOrderBook(String symbol, List<EngineOrder> orders, long lastSequence) {
+        if (mode != OrderBookMode.MEMORY) {
+            throw new IllegalStateException("Journal recovery requires memory mode, current mode is " + mode);
+        }
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(symbol, null);
+        for (EngineOrder order : orders) {
+            orderBook.restoreOrder(order);
         }
+        orderBook.advanceSequence(lastSequence);
+        orderBooks.put(symbol, orderBook);
+        return orderBook;
+    }
 
-        // 解析對手訂單
-        if (opponentOrders != null && !opponentOrders.isEmpty()) {
-            TypedTuple<Object> bestOpponent = opponentOrders.iterator().next();
-            return parseOrderFromJson((String) bestOpponent.getValue());
+    // 以重放完的訂單簿取代 Redis 中的鏡像（清除後重寫），之後的變更照常寫回
+    public void attachOrderBook(String symbol) {
+        InMemoryOrderBook replayed = (InMemoryOrderBook) orderBooks.get(symbol);
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(symbol, mirror);
+        List<EngineOrder> orders = replayed.orders();
+        for (EngineOrder order : orders) {
+            orderBook.restoreOrder(order);
         }
+        orderBook.advanceSequence(replayed.getLastSequence());
+        mirror.resync(symbol, orders, orderBook.getLastSequence());
+        orderBooks.put(symbol, orderBook);
+    }
 
-        return null;
+    // 捨棄重放的訂單簿，改從 Redis 鏡像載入
+    public InMemoryOrderBook reloadOrderBook(String symbol) {
+        orderBooks.remove(symbol);
+        return (InMemoryOrderBook) getOrderBook(symbol);
     }
 
-    // 解析 JSON 字符串到 Order 對象
-    private Order parseOrderFromJson(String orderJson) {
-        try {
-            return objectMapper.readValue(orderJson, Order.class);
-        } catch (JsonProcessingException e) {
-            System.err.println("Error: Failed to parse JSON. Order JSON: " + orderJson);
-            e.printStackTrace();
-            throw new RuntimeException("Failed to parse JSON", e);
+    // 記憶體模式下把撮合執行緒已套用的 offset 排在鏡像變更之後寫入 Redis
+    public void recordOffsets(String symbol, int partition, long[] offsets) {
+        if (mode == OrderBookMode.MEMORY) {
+            mirror.offsets(symbol, new AppliedOffsets(partition, offsets.clone()));
         }
     }
 
-    // 儲存訂單到 Redis
-    public void saveOrderToRedis(Order order) {
-        final byte[] redisKey = getRedisKeyBytes(order.getSymbol(), order.getSide());
-        final double score = calculateScore(order);
-        final byte[] jsonBytes = convertOrderToBytes(order);
-
-        // 使用 ZSet 儲存完整的訂單 JSON
-        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-            connection.zSetCommands().zAdd(redisKey, score, jsonBytes);
+    // Redis 鏡像對應的 Kafka 進度，沒有記錄或無法解析時回傳 null
+    public AppliedOffsets loadOffsets(String symbol) {
+        Object value = redisTemplate.opsForValue().get(codec.offsetsKey(symbol));
+        if (value == null) {
             return null;
-        });
+        }
+        try {
+            return AppliedOffsets.decode((String) value);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Warning: Ignoring " + e.getMessage() + " of " + symbol);
+            return null;
+        }
     }
 
-    // 計算 ZSet 的 score
-    private double calculateScore(Order order) {
-        int precision = 7;
-        BigDecimal precisionFactor = BigDecimal.TEN.pow(precision);
-        Instant modifiedTime = order.getModifiedAt();
-        BigDecimal calculatedScore = order.getPrice().multiply(precisionFactor)
-                .add((order.getSide() == Order.Side.BUY ? BigDecimal.valueOf(-1) : BigDecimal.ONE).multiply(BigDecimal.valueOf(modifiedTime.toEpochMilli())));
-        return calculatedScore.doubleValue();
+    // Redis 中該交易對最後指派的序號，沒有時為 0
+    public long loadSequence(String symbol) {
+        Object lastSequence = redisTemplate.opsForValue().get(codec.sequenceKey(symbol));
+        return lastSequence == null ? 0 : Long.parseLong((String) lastSequence);
     }
 
-    // 從 Redis 中移除訂單，使用原始的 JSON 值
-    public void removeOrderFromRedis(Order order, String originalJson) {
-        byte[] redisKey = getRedisKeyBytes(order.getSymbol(), order.getSide());
-        byte[] originalBytes = originalJson.getBytes(StandardCharsets.UTF_8);
-
-        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-            connection.zSetCommands().zRem(redisKey, originalBytes);
-            return null;
-        });
+    // 預留 count 個撮合結果序號並回傳第一個；Redis 中的上限只增不減，換手或重啟後的擁有者一定從更大的序號開始
+    public long reserveResultSequences(String symbol, long count) {
+        String resultSequenceKey = codec.resultSequenceKey(symbol);
+        Long reserved = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands()
+                .incrBy(resultSequenceKey.getBytes(StandardCharsets.UTF_8), count));
+        if (reserved == null) {
+            throw new IllegalStateException("Failed to reserve match result sequences of " + symbol);
+        }
+        return reserved - count + 1;
     }
 
-    // 更新 Redis 中的訂單，先刪除舊的再更新
-    public void updateOrderInRedis(Order order, String originalJson) {
-        byte[] redisKey = getRedisKeyBytes(order.getSymbol(), order.getSide());
-        byte[] originalBytes = originalJson.getBytes(StandardCharsets.UTF_8);
-        double newScore = calculateScore(order);
-        byte[] updatedBytes = convertOrderToBytes(order);
+    private OrderBook createOrderBook(String symbol) {
+        migrateMembers(symbol);
+        backfillQuantities(symbol);
+        migrateValues(symbol);
 
-        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-            // 移除舊的訂單
-            connection.zSetCommands().zRem(redisKey, originalBytes);
-            // 插入新的訂單
-            connection.zSetCommands().zAdd(redisKey, newScore, updatedBytes);
-            return null;
-        });
+        if (mode == OrderBookMode.REDIS) {
+            return new RedisOrderBook(symbol, redisTemplate, codec, prefetchWindow);
+        }
+        if (mode == OrderBookMode.REDIS_SCRIPT) {
+            return new RedisScriptOrderBook(symbol, redisTemplate, codec);
+        }
+
+        // 與 JournalReplayer 的重建時間記在同一個計時器
+        long started = System.nanoTime();
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(symbol, mirror);
+        loadFromRedis(orderBook);
+        Timer.builder("matching.recovery")
+                .description("Time to rebuild an order book before matching resumes")
+                .tag("symbol", symbol)
+                .tag("source", "redis")
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - started));
+        return orderBook;
     }
 
-    // 轉換訂單為 JSON 字符串
-    public String convertOrderToJson(Order order) {
-        try {
-            return objectMapper.writeValueAsString(order);
-        } catch (JsonProcessingException e) {
-            System.err.println("Error: Failed to convert order to JSON. Order: " + order);
-            e.printStackTrace();
-            throw new RuntimeException("Failed to convert order to JSON", e);
+    // 從 Redis 鏡像還原記憶體訂單簿：依價格索引順序讀出 ID，再以 HMGET 取回訂單內容與未成交數量
+    private void loadFromRedis(InMemoryOrderBook orderBook) {
+        String symbol = orderBook.getSymbol();
+        byte[] ordersKey = codec.ordersKeyBytes(symbol);
+        byte[] quantitiesKey = codec.quantitiesKeyBytes(symbol);
+
+        for (Order.Side side : Order.Side.values()) {
+            byte[] indexKey = codec.keyBytes(symbol, side);
+            Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection -> connection.zSetCommands().zRange(indexKey, 0, -1));
+            if (members == null || members.isEmpty()) {
+                continue;
+            }
+            byte[][] fields = members.stream().map(member -> codec.field(codec.memberId(member))).toArray(byte[][]::new);
+            List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.hashCommands().hMGet(ordersKey, fields));
+            List<byte[]> quantities = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.hashCommands().hMGet(quantitiesKey, fields));
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i) != null) {
+                    orderBook.restoreOrder(codec.decodeValue(values.get(i), quantities.get(i)));
+                }
+            }
+        }
+
+        Object lastSequence = redisTemplate.opsForValue().get(codec.sequenceKey(symbol));
+        if (lastSequence != null) {
+            orderBook.advanceSequence(Long.parseLong((String) lastSequence));
         }
     }
 
+    // 把舊格式的成員改寫成「價格索引 + ID Hash」：舊版 JSON 成員依原本 score 的優先順序指派序號，上一版的成員沿用原序號
+    private void migrateMembers(String symbol) {
+        byte[] sequenceKey = codec.sequenceKey(symbol).getBytes(StandardCharsets.UTF_8);
+        byte[] ordersKey = codec.ordersKeyBytes(symbol);
+        byte[] quantitiesKey = codec.quantitiesKeyBytes(symbol);
 
-    // 獲取 Redis key 的字節數組
-    private byte[] getRedisKeyBytes(String symbol, Order.Side side) {
-        return (symbol + (side == Order.Side.BUY ? BUY_SUFFIX : SELL_SUFFIX)).getBytes(StandardCharsets.UTF_8);
-    }
+        for (Order.Side side : Order.Side.values()) {
+            byte[] indexKey = codec.keyBytes(symbol, side);
+            // 舊版買方取 score 最大者優先，賣方取 score 最小者優先
+            Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection -> side == Order.Side.BUY
+                    ? connection.zSetCommands().zRevRange(indexKey, 0, -1)
+                    : connection.zSetCommands().zRange(indexKey, 0, -1));
+            if (members == null) {
+                continue;
+            }
+            List<byte[]> oldMembers = members.stream()
+                    .filter(member -> codec.isLegacyMember(member) || codec.isEmbeddedMember(member))
+                    .toList();
+            if (oldMembers.isEmpty()) {
+                continue;
+            }
 
-    // 轉換訂單為字節數組
-    private byte[] convertOrderToBytes(Order order) {
-        try {
-            return objectMapper.writeValueAsBytes(order);
-        } catch (JsonProcessingException e) {
-            System.err.println("Error: Failed to convert order to JSON bytes. Order: " + order);
-            e.printStackTrace();
-            throw new RuntimeException("Failed to convert order to JSON bytes", e);
+            long legacyCount = oldMembers.stream().filter(codec::isLegacyMember).count();
+            long nextLegacySequence = 0;
+            if (legacyCount > 0) {
+                Long lastSequence = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().incrBy(sequenceKey, legacyCount));
+                nextLegacySequence = lastSequence - legacyCount + 1;
+            }
+
+            List<EngineOrder> orders = new ArrayList<>();
+            for (byte[] oldMember : oldMembers) {
+                EngineOrder order = codec.decodeOldMember(oldMember);
+                if (codec.isLegacyMember(oldMember)) {
+                    order.setSequence(nextLegacySequence++);
+                }
+                orders.add(order);
+            }
+
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < oldMembers.size(); i++) {
+                    EngineOrder order = orders.get(i);
+                    connection.zSetCommands().zRem(indexKey, oldMembers.get(i));
+                    connection.hashCommands().hSet(ordersKey, codec.field(order.getId()), codec.value(order));
+                    connection.hashCommands().hSet(quantitiesKey, codec.field(order.getId()), codec.quantity(order));
+                    connection.zSetCommands().zAdd(indexKey, RedisOrderBookCodec.SCORE, codec.member(order));
+                }
+                return null;
+            });
+            System.out.println("Migrated " + oldMembers.size() + " order book members of " + codec.key(symbol, side));
         }
     }
 
+    // 補上沒有未成交數量的掛單（在 QTY Hash 出現前寫入的資料），HSETNX 不會覆蓋其他實例已寫入的數量
+    private void backfillQuantities(String symbol) {
+        byte[] ordersKey = codec.ordersKeyBytes(symbol);
+        byte[] quantitiesKey = codec.quantitiesKeyBytes(symbol);
+
+        Map<byte[], byte[]> values = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(ordersKey));
+        Long quantityCount = redisTemplate.execute((RedisCallback<Long>) connection -> connection.hashCommands().hLen(quantitiesKey));
+        if (values == null || values.isEmpty() || quantityCount != null && quantityCount >= values.size()) {
+            return;
+        }
 
-    public void saveAllOrdersAndTrades(List<Trade> trades) {
-        // 將訂單和交易信息封裝到 MatchedMessage 中並發送到 Kafka
-        for (Trade trade : trades) {
-            Order buyOrder = trade.getBuyOrder();
-            Order sellOrder = trade.getSellOrder();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<byte[], byte[]> entry : values.entrySet()) {
+                connection.hashCommands().hSetNX(quantitiesKey, entry.getKey(), codec.quantity(codec.decodeValue(entry.getValue())));
+            }
+            return null;
+        });
+        System.out.println("Backfilled order quantities of " + symbol);
+    }
 
-            TradeOrdersMessage tradeOrdersMessage = new TradeOrdersMessage(buyOrder, sellOrder, trade);
+    // 把 <序號>:<訂單 JSON> 的訂單內容改寫成二進位格式；只在內容仍是讀到的 JSON 時才覆蓋，避免蓋掉其他實例剛寫入的新內容
+    private void migrateValues(String symbol) {
+        byte[] ordersKey = codec.ordersKeyBytes(symbol);
 
-            // 發送到 Kafka，type 為 "TRADE_ORDER"
-            matchedOrderProducer.sendMatchedTrade(tradeOrdersMessage);
+        Map<byte[], byte[]> values = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(ordersKey));
+        if (values == null) {
+            return;
+        }
+        List<Map.Entry<byte[], byte[]>> jsonValues = values.entrySet().stream()
+                .filter(entry -> codec.isJsonValue(entry.getValue()))
+                .toList();
+        if (jsonValues.isEmpty()) {
+            return;
         }
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<byte[], byte[]> entry : jsonValues) {
+                connection.scriptingCommands().eval(REPLACE_VALUE_SCRIPT, ReturnType.INTEGER, 1, ordersKey,
+                        entry.getKey(), entry.getValue(), codec.value(codec.decodeValue(entry.getValue())));
+            }
+            return null;
+        });
+        System.out.println("Migrated " + jsonValues.size() + " order values of " + symbol + " to binary encoding");
     }
 
 }
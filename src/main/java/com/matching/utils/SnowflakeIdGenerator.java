@@ -1,69 +1,157 @@
 package com.matching.utils;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// ID 組成：[時間戳 41][datacenterId 5][workerId 5][序號 12]
+// 以一個 AtomicLong 保存最後發出的「時間戳 + 序號」，CAS 遞增，不需要鎖；reserve 一次 CAS 取得連續一段序號
+// 同一毫秒的 4096 個序號用完時直接進位到下一毫秒（預借未來的時間戳）而不是空轉等待；
+// 時鐘回撥時沿用上次的時間戳繼續遞增。一段序號的最後一個預借超過 MAX_BORROW_MILLIS 就等待時鐘追上，
+// 所以一次最多預留 MAX_BLOCK_SIZE 個
 public class SnowflakeIdGenerator {
 
-    private final long workerId;
-    private final long datacenterId;
-    private final long sequence = 0L;
-    private final long twepoch = 1288834974657L;
+    private static final long TWEPOCH = 1288834974657L;
 
-    private final long workerIdBits = 5L;
-    private final long datacenterIdBits = 5L;
-    private final long maxWorkerId = -1L ^ (-1L << workerIdBits);
-    private final long maxDatacenterId = -1L ^ (-1L << datacenterIdBits);
-    private final long sequenceBits = 12L;
+    private static final long WORKER_ID_BITS = 5L;
+    private static final long DATACENTER_ID_BITS = 5L;
+    private static final long SEQUENCE_BITS = 12L;
+    private static final long MAX_WORKER_ID = -1L ^ (-1L << WORKER_ID_BITS);
+    private static final long MAX_DATACENTER_ID = -1L ^ (-1L << DATACENTER_ID_BITS);
 
-    private final long workerIdShift = sequenceBits;
-    private final long datacenterIdShift = sequenceBits + workerIdBits;
-    private final long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
-    private final long sequenceMask = -1L ^ (-1L << sequenceBits);
+    private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final long DATACENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+    private static final long TIMESTAMP_LEFT_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATACENTER_ID_BITS;
+    private static final long SEQUENCE_MASK = -1L ^ (-1L << SEQUENCE_BITS);
 
-    private long lastTimestamp = -1L;
-    private long sequenceId = 0L;
+    private static final long MAX_BORROW_MILLIS = 100;
+    // 從目前毫秒的第一個序號開始預留時，最後一個剛好不超過預借上限
+    public static final int MAX_BLOCK_SIZE = (int) (MAX_BORROW_MILLIS << SEQUENCE_BITS);
+
+    private final long workerId;
+    private final long datacenterId;
+    private final long nodeBits;
+    private final LongSupplier clock;
+    // (時間戳 - TWEPOCH) << SEQUENCE_BITS | 序號，序號溢位時自然進位到時間戳
+    private final AtomicLong last = new AtomicLong(-1L);
+    // 失去 WorkerIdLease 的租約時設為 true，拒絕發號，避免與取得同一組 ID 的實例重複
+    private volatile boolean fenced;
+    // 由 WorkerIdLease 設定：最後一次續約成功的 nanoTime（送出續約時）與租約 TTL，leaseTtlNanos 為 0 表示不受租約限制
+    // 續約卡住時不會有例外，所以發號時自己檢查：超過 TTL 的 2/3 沒有續約成功就拒絕發號，不依賴續約執行緒設定 fenced
+    private volatile long leaseRenewedNanos;
+    private volatile long leaseTtlNanos;
 
     public SnowflakeIdGenerator(long workerId, long datacenterId) {
-        if (workerId > maxWorkerId || workerId < 0) {
-            throw new IllegalArgumentException(String.format("Worker ID can't be greater than %d or less than 0", maxWorkerId));
+        this(workerId, datacenterId, System::currentTimeMillis);
+    }
+
+    // clock 回傳毫秒時間，供重播與測試注入
+    public SnowflakeIdGenerator(long workerId, long datacenterId, LongSupplier clock) {
+        if (workerId > MAX_WORKER_ID || workerId < 0) {
+            throw new IllegalArgumentException(String.format("Worker ID can't be greater than %d or less than 0", MAX_WORKER_ID));
         }
-        if (datacenterId > maxDatacenterId || datacenterId < 0) {
-            throw new IllegalArgumentException(String.format("Datacenter ID can't be greater than %d or less than 0", maxDatacenterId));
+        if (datacenterId > MAX_DATACENTER_ID || datacenterId < 0) {
+            throw new IllegalArgumentException(String.format("Datacenter ID can't be greater than %d or less than 0", MAX_DATACENTER_ID));
         }
         this.workerId = workerId;
         this.datacenterId = datacenterId;
+        this.nodeBits = (datacenterId << DATACENTER_ID_SHIFT) | (workerId << WORKER_ID_SHIFT);
+        this.clock = clock;
     }
 
-    public synchronized long nextId() {
-        long timestamp = timeGen();
+    public long nextId() {
+        return toId(claim(1));
+    }
 
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException("Clock moved backwards. Refusing to generate ID for " + (lastTimestamp - timestamp) + " milliseconds");
+    // 一次取得 count 個連續序號，之後由呼叫端的執行緒自行發出，不再碰共用狀態；超過 MAX_BLOCK_SIZE 時由呼叫端分段預留
+    public IdBlock reserve(int count) {
+        if (count <= 0 || count > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE + ": " + count);
         }
+        long first = claim(count);
+        return new IdBlock(first, first + count, nodeBits);
+    }
+
+    public boolean isFenced() {
+        return fenced;
+    }
+
+    public void renewLease(long renewedNanos, long ttlNanos) {
+        this.leaseTtlNanos = ttlNanos;
+        this.leaseRenewedNanos = renewedNanos;
+    }
+
+    // 撮合執行緒在事件寫入日誌前檢查，比發號的期限早 TTL 的 1/6，通過檢查後同一個事件中的 reserve 不會因為租約到期而失敗
+    public boolean isLeased() {
+        return !fenced && !leaseExpired(leaseTtlNanos / 2);
+    }
+
+    public void setFenced(boolean fenced) {
+        this.fenced = fenced;
+    }
 
-        if (lastTimestamp == timestamp) {
-            sequenceId = (sequenceId + 1) & sequenceMask;
-            if (sequenceId == 0) {
-                timestamp = tilNextMillis(lastTimestamp);
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public long getDatacenterId() {
+        return datacenterId;
+    }
+
+    // 回傳這段序號的第一個值，last 推進到最後一個；以最後一個序號的時間戳檢查預借上限
+    private long claim(int count) {
+        if (fenced || leaseExpired(leaseTtlNanos * 2 / 3)) {
+            throw new IllegalStateException("Snowflake worker " + datacenterId + ":" + workerId + " is no longer leased, refusing to generate IDs");
+        }
+        while (true) {
+            long current = last.get();
+            long now = clock.getAsLong() - TWEPOCH;
+            long first = Math.max(current + 1, now << SEQUENCE_BITS);
+            if (((first + count - 1) >>> SEQUENCE_BITS) - now > MAX_BORROW_MILLIS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (last.compareAndSet(current, first + count - 1)) {
+                return first;
             }
-        } else {
-            sequenceId = 0L;
         }
+    }
 
-        lastTimestamp = timestamp;
-        return ((timestamp - twepoch) << timestampLeftShift)
-                | (datacenterId << datacenterIdShift)
-                | (workerId << workerIdShift)
-                | sequenceId;
+    private boolean leaseExpired(long validNanos) {
+        return leaseTtlNanos > 0 && System.nanoTime() - leaseRenewedNanos >= validNanos;
     }
 
-    private long tilNextMillis(long lastTimestamp) {
-        long timestamp = timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = timeGen();
-        }
-        return timestamp;
+    private long toId(long timestampAndSequence) {
+        return toId(timestampAndSequence, nodeBits);
+    }
+
+    private static long toId(long timestampAndSequence, long nodeBits) {
+        return ((timestampAndSequence >>> SEQUENCE_BITS) << TIMESTAMP_LEFT_SHIFT)
+                | nodeBits
+                | (timestampAndSequence & SEQUENCE_MASK);
     }
 
-    private long timeGen() {
-        return System.currentTimeMillis();
+    // 預留的一段 ID，只能由取得它的執行緒使用
+    public static final class IdBlock {
+
+        private long next;
+        private final long end;
+        private final long nodeBits;
+
+        private IdBlock(long next, long end, long nodeBits) {
+            this.next = next;
+            this.end = end;
+            this.nodeBits = nodeBits;
+        }
+
+        public long nextId() {
+            if (next >= end) {
+                throw new IllegalStateException("Id block exhausted");
+            }
+            return toId(next++, nodeBits);
+        }
+
+        public int remaining() {
+            return (int) (end - next);
+        }
     }
 }
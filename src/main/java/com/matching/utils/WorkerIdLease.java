@@ -0,0 +1,180 @@
+package com.matching.utils;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// 從 Redis 租用 Snowflake 的 datacenterId/workerId，讓多個撮合實例各自使用不同的 ID 空間
+// 每個組合對應一個 key：snowflake:worker:<datacenterId>:<workerId>，值為本實例的隨機 token，SET NX PX 取得並帶 TTL
+// 每 TTL/3 續約一次；續約發現 token 不符（已被別人取得）時立即停止發號。續約成功的時間交給 SnowflakeIdGenerator，
+// 超過 TTL 的 2/3 沒有續約成功時由產生器自己拒絕發號，續約失敗或卡住都一樣，
+// 確保 key 在 Redis 過期、別的實例可能取得之前，本實例已不再產生 ID。之後若重新取得同一組合就恢復發號
+// 續約命令在另一個執行緒送出，最多等待 TTL/3（Lettuce 預設的命令逾時是 60 秒，遠超過 TTL），逾時就中斷，下一次再試
+public class WorkerIdLease implements AutoCloseable {
+
+    private static final String KEY_PREFIX = "snowflake:worker:";
+    private static final int MAX_ID = 31;
+
+    // token 相符時延長 TTL
+    private static final byte[] RENEW_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] RELEASE_SCRIPT = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long ttlMillis;
+    private final byte[] token = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+    private final ScheduledExecutorService heartbeat;
+    // 實際送出續約命令的執行緒，heartbeat 只等待到逾時
+    private final ExecutorService renewer;
+
+    private long datacenterId;
+    private long workerId;
+    private byte[] key;
+    private SnowflakeIdGenerator generator;
+    // 上一次送出、可能還卡住的續約，只由 heartbeat 執行緒存取
+    private Future<Boolean> renewal;
+
+    public WorkerIdLease(RedisTemplate<String, Object> redisTemplate, long ttlMillis) {
+        this.redisTemplate = redisTemplate;
+        this.ttlMillis = ttlMillis;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "snowflake-lease"));
+        this.renewer = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "snowflake-lease-renew"));
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // 取得一組未被使用的 ID 並開始續約；datacenterId 為負數時可使用任何 datacenter，從隨機位置開始找以減少多個實例同時啟動的衝突
+    public SnowflakeIdGenerator acquire(long preferredDatacenterId) {
+        int slots = (MAX_ID + 1) * (MAX_ID + 1);
+        int start = ThreadLocalRandom.current().nextInt(slots);
+        for (int i = 0; i < slots; i++) {
+            int slot = (start + i) % slots;
+            long candidateDatacenter = slot / (MAX_ID + 1);
+            if (preferredDatacenterId >= 0 && candidateDatacenter != preferredDatacenterId) {
+                continue;
+            }
+            byte[] candidateKey = key(candidateDatacenter, slot % (MAX_ID + 1));
+            long startedNanos = System.nanoTime();
+            if (setIfAbsent(candidateKey)) {
+                datacenterId = candidateDatacenter;
+                workerId = slot % (MAX_ID + 1);
+                key = candidateKey;
+                generator = new SnowflakeIdGenerator(workerId, datacenterId);
+                generator.renewLease(startedNanos, TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+                long period = Math.max(1, ttlMillis / 3);
+                heartbeat.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+                System.out.println("Leased Snowflake datacenterId " + datacenterId + ", workerId " + workerId + " for " + ttlMillis + " ms");
+                return generator;
+            }
+        }
+        throw new IllegalStateException("No free Snowflake worker ID" + (preferredDatacenterId >= 0 ? " in datacenter " + preferredDatacenterId : ""));
+    }
+
+    private void renew() {
+        long timeout = Math.max(1, ttlMillis / 3);
+        if (renewal != null && !renewal.isDone()) {
+            // 上一次的命令被中斷後仍未結束，不再排隊送出新的
+            System.err.println("Error: Snowflake worker " + datacenterId + ":" + workerId + " renewal still pending");
+            return;
+        }
+        long startedNanos = System.nanoTime();
+        renewal = renewer.submit(() -> renewIfOwned() || setIfAbsent(key));
+        boolean renewed;
+        try {
+            renewed = renewal.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            renewal.cancel(true);
+            System.err.println("Error: Renewing Snowflake worker " + datacenterId + ":" + workerId + " timed out after " + timeout + " ms");
+            return;
+        } catch (ExecutionException e) {
+            System.err.println("Error: Failed to renew Snowflake worker " + datacenterId + ":" + workerId);
+            e.getCause().printStackTrace();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (renewed) {
+            generator.renewLease(startedNanos, TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+            if (generator.isFenced()) {
+                System.err.println("Warning: Re-acquired Snowflake worker " + datacenterId + ":" + workerId + ", resuming ID generation");
+                generator.setFenced(false);
+            }
+            return;
+        }
+        // 已被其他實例取得
+        if (!generator.isFenced()) {
+            System.err.println("Error: Snowflake worker " + datacenterId + ":" + workerId + " is leased by another instance, stopping ID generation");
+            generator.setFenced(true);
+        }
+    }
+
+    private boolean renewIfOwned() {
+        Long renewed = redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                .eval(RENEW_SCRIPT, ReturnType.INTEGER, 1, key, token, String.valueOf(ttlMillis).getBytes(StandardCharsets.US_ASCII)));
+        return renewed != null && renewed == 1;
+    }
+
+    private boolean setIfAbsent(byte[] candidateKey) {
+        Boolean acquired = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(candidateKey, token, Expiration.milliseconds(ttlMillis), RedisStringCommands.SetOption.ifAbsent()));
+        return Boolean.TRUE.equals(acquired);
+    }
+
+    private static byte[] key(long datacenterId, long workerId) {
+        return (KEY_PREFIX + datacenterId + ":" + workerId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 停止續約並歸還，之後不再發號
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        renewer.shutdownNow();
+        if (key == null) {
+            return;
+        }
+        generator.setFenced(true);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                    .eval(RELEASE_SCRIPT, ReturnType.INTEGER, 1, key, token));
+        } catch (Exception e) {
+            System.err.println("Warning: Failed to release Snowflake worker " + datacenterId + ":" + workerId + ", it expires in " + ttlMillis + " ms");
+            e.printStackTrace();
+        }
+    }
+
+    public long getDatacenterId() {
+        return datacenterId;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+}
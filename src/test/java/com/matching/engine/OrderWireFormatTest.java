@@ -0,0 +1,127 @@
+package com.matching.engine;
+
+import com.matching.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderWireFormatTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2024-05-01T08:30:15.123456789Z");
+
+    @Test
+    void roundTripsALimitOrder() {
+        Order order = order("BTCUSDT", "1790000000000000001", "user-7", Order.Side.SELL, Order.OrderType.LIMIT, new BigDecimal("65000.12345678"), new BigDecimal("0.5"));
+        order.setStopPrice(new BigDecimal("64000"));
+        order.setTakeProfitPrice(new BigDecimal("70000.5"));
+        ByteBuffer value = ByteBuffer.wrap(OrderWireFormat.encode(order));
+
+        assertThat(OrderWireFormat.isBinary(value)).isTrue();
+        assertThat(OrderWireFormat.symbol(value)).isEqualTo("BTCUSDT");
+        EngineOrder decoded = new EngineOrder();
+        OrderWireFormat.decode(value, "BTCUSDT", decoded);
+
+        assertThat(decoded.getId()).isEqualTo("1790000000000000001");
+        assertThat(decoded.getUserId()).isEqualTo("user-7");
+        assertThat(decoded.getSymbol()).isEqualTo("BTCUSDT");
+        assertThat(decoded.getSide()).isEqualTo(Order.Side.SELL);
+        assertThat(decoded.getOrderType()).isEqualTo(Order.OrderType.LIMIT);
+        assertThat(decoded.getPrice()).isEqualTo(6_500_012_345_678L);
+        assertThat(decoded.getQuantity()).isEqualTo(50_000_000L);
+        assertThat(decoded.getUnfilledQuantity()).isEqualTo(50_000_000L);
+        assertThat(decoded.getFilledQuantity()).isZero();
+        assertThat(decoded.getStopPrice()).isEqualTo(6_400_000_000_000L);
+        assertThat(decoded.getTakeProfitPrice()).isEqualTo(7_000_050_000_000L);
+        assertThat(decoded.getStatus()).isEqualTo(Order.OrderStatus.PENDING);
+        assertThat(decoded.getCreatedAt()).isEqualTo(CREATED_AT);
+        assertThat(decoded.toOrder().getPrice()).isEqualByComparingTo(order.getPrice());
+    }
+
+    @Test
+    void overwritesEveryFieldOfAReusedOrder() {
+        EngineOrder reused = EngineOrder.fromOrder(order("ETHUSDT", "old", "old-user", Order.Side.BUY, Order.OrderType.LIMIT, new BigDecimal("3000"), new BigDecimal("2")));
+        reused.setFilledQuantity(100);
+        reused.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
+        reused.setSequence(42);
+        reused.setInvalidReason("stale");
+
+        Order order = order("BTCUSDT", "new", "new-user", Order.Side.SELL, Order.OrderType.MARKET, null, new BigDecimal("1"));
+        order.setCreatedAt(null);
+        OrderWireFormat.decode(ByteBuffer.wrap(OrderWireFormat.encode(order)), "BTCUSDT", reused);
+
+        assertThat(reused.getId()).isEqualTo("new");
+        assertThat(reused.getUserId()).isEqualTo("new-user");
+        assertThat(reused.getPrice()).isEqualTo(FixedPoint.NONE);
+        assertThat(reused.getStopPrice()).isEqualTo(FixedPoint.NONE);
+        assertThat(reused.getFilledQuantity()).isZero();
+        assertThat(reused.getUnfilledQuantity()).isEqualTo(FixedPoint.ONE);
+        assertThat(reused.getStatus()).isEqualTo(Order.OrderStatus.PENDING);
+        assertThat(reused.getSequence()).isZero();
+        assertThat(reused.getInvalidReason()).isNull();
+        // 沒有建立時間時以收到的時間為準
+        assertThat(reused.getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    void decodesFromAnOffsetOrDirectBuffer() {
+        byte[] encoded = OrderWireFormat.encode(order("BTCUSDT", "1", "u", Order.Side.BUY, Order.OrderType.LIMIT, new BigDecimal("1"), new BigDecimal("1")));
+        byte[] padded = new byte[encoded.length + 5];
+        System.arraycopy(encoded, 0, padded, 3, encoded.length);
+        ByteBuffer offset = ByteBuffer.wrap(padded, 3, encoded.length).slice();
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length).put(encoded).flip();
+
+        for (ByteBuffer value : new ByteBuffer[]{offset, direct}) {
+            EngineOrder decoded = new EngineOrder();
+            OrderWireFormat.decode(value, OrderWireFormat.symbol(value), decoded);
+            assertThat(decoded.getSymbol()).isEqualTo("BTCUSDT");
+            assertThat(decoded.getId()).isEqualTo("1");
+            assertThat(decoded.getUserId()).isEqualTo("u");
+        }
+    }
+
+    @Test
+    void rejectsMalformedEncodings() {
+        byte[] encoded = OrderWireFormat.encode(order("BTCUSDT", "1", "u", Order.Side.BUY, Order.OrderType.LIMIT, new BigDecimal("1"), new BigDecimal("1")));
+
+        byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        assertThatThrownBy(() -> OrderWireFormat.symbol(ByteBuffer.wrap(truncated))).isInstanceOf(IllegalArgumentException.class);
+
+        byte[] badSide = encoded.clone();
+        badSide[1] = 9;
+        assertThatThrownBy(() -> OrderWireFormat.symbol(ByteBuffer.wrap(badSide))).isInstanceOf(IllegalArgumentException.class);
+
+        byte[] badAmount = encoded.clone();
+        ByteBuffer.wrap(badAmount).putLong(3, FixedPoint.MAX_VALUE + 1);
+        assertThatThrownBy(() -> OrderWireFormat.symbol(ByteBuffer.wrap(badAmount))).isInstanceOf(IllegalArgumentException.class);
+
+        ByteBuffer json = ByteBuffer.wrap("{\"id\":\"1\"}".getBytes());
+        assertThat(OrderWireFormat.isBinary(json)).isFalse();
+        assertThatThrownBy(() -> OrderWireFormat.symbol(json)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void refusesToEncodeFieldsLongerThanTheLengthPrefix() {
+        Order order = order("BTCUSDT", "1".repeat(256), "u", Order.Side.BUY, Order.OrderType.LIMIT, new BigDecimal("1"), new BigDecimal("1"));
+        assertThatThrownBy(() -> OrderWireFormat.encode(order)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Order order(String symbol, String id, String userId, Order.Side side, Order.OrderType type, BigDecimal price, BigDecimal quantity) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId(userId);
+        order.setSymbol(symbol);
+        order.setSide(side);
+        order.setOrderType(type);
+        order.setPrice(price);
+        order.setQuantity(quantity);
+        order.setUnfilledQuantity(quantity);
+        order.setCreatedAt(CREATED_AT);
+        return order;
+    }
+}
@@ -0,0 +1,101 @@
+package com.matching.journal;
+
+import com.matching.dto.AmendOrderRequest;
+import com.matching.dto.CancelOrderRequest;
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.engine.OrderEvent;
+import com.matching.engine.OrderEventType;
+import com.matching.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JournalCodecTest {
+
+    private static final Instant TIME = Instant.parse("2024-05-01T08:30:15.123456789Z");
+
+    @Test
+    void roundTripsANewOrder() {
+        OrderEvent event = new OrderEvent();
+        event.setType(OrderEventType.NEW);
+        EngineOrder order = event.getOrder();
+        order.setId("1");
+        order.setUserId("u");
+        order.setSymbol("BTCUSDT");
+        order.setSide(Order.Side.SELL);
+        order.setOrderType(Order.OrderType.LIMIT);
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setPrice(101 * FixedPoint.ONE);
+        order.setQuantity(2 * FixedPoint.ONE);
+        order.setUnfilledQuantity(2 * FixedPoint.ONE);
+        order.setCreatedAt(TIME);
+
+        JournalEntry entry = roundTrip(event, 7, 3, 1234);
+
+        assertThat(entry.sequence()).isEqualTo(7);
+        assertThat(entry.type()).isEqualTo(OrderEventType.NEW);
+        assertThat(entry.time()).isEqualTo(TIME);
+        assertThat(entry.partition()).isEqualTo(3);
+        assertThat(entry.offset()).isEqualTo(1234);
+        assertThat(entry.order()).usingRecursiveComparison().isEqualTo(order);
+        assertThat(entry.cancelRequest()).isNull();
+        assertThat(entry.amendRequest()).isNull();
+    }
+
+    @Test
+    void roundTripsACancel() {
+        OrderEvent event = new OrderEvent();
+        event.setType(OrderEventType.CANCEL);
+        event.setCancelRequest(new CancelOrderRequest("1", "u", "BTCUSDT"));
+
+        JournalEntry entry = roundTrip(event, 8, 0, -1);
+
+        assertThat(entry.type()).isEqualTo(OrderEventType.CANCEL);
+        assertThat(entry.offset()).isEqualTo(-1);
+        assertThat(entry.cancelRequest()).usingRecursiveComparison().isEqualTo(event.getCancelRequest());
+        assertThat(entry.order()).isNull();
+    }
+
+    @Test
+    void roundTripsAnAmendWithMissingValues() {
+        OrderEvent event = new OrderEvent();
+        event.setType(OrderEventType.AMEND);
+        event.setAmendRequest(new AmendOrderRequest("1", "u", "BTCUSDT", new BigDecimal("100.5"), null));
+
+        JournalEntry entry = roundTrip(event, 9, 0, 5);
+
+        assertThat(entry.type()).isEqualTo(OrderEventType.AMEND);
+        assertThat(entry.amendRequest()).usingRecursiveComparison().isEqualTo(event.getAmendRequest());
+        assertThat(entry.amendRequest().getQuantity()).isNull();
+    }
+
+    // 無法轉成定點數的金額照原樣保存，重放時與當初一樣被拒絕
+    @Test
+    void keepsAmendAmountsThatAreNotRepresentable() {
+        OrderEvent event = new OrderEvent();
+        event.setType(OrderEventType.AMEND);
+        event.setAmendRequest(new AmendOrderRequest("1", "u", "BTCUSDT", new BigDecimal("100.000000001"), new BigDecimal("1E+20")));
+
+        AmendOrderRequest decoded = roundTrip(event, 10, 0, 6).amendRequest();
+
+        assertThat(decoded.getPrice()).isEqualTo(new BigDecimal("100.000000001"));
+        assertThat(decoded.getQuantity()).isEqualTo(new BigDecimal("1E+20"));
+    }
+
+    @Test
+    void rejectsUnknownEventTypes() {
+        assertThat(JournalCodec.type((byte) OrderEventType.AMEND.ordinal())).isEqualTo(OrderEventType.AMEND);
+        assertThatThrownBy(() -> JournalCodec.type((byte) OrderEventType.values().length)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JournalCodec.type((byte) -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static JournalEntry roundTrip(OrderEvent event, long sequence, int partition, long offset) {
+        byte[] payload = JournalCodec.encode(event);
+        return JournalCodec.decode(sequence, event.getType(), TIME, partition, offset, payload);
+    }
+}
@@ -0,0 +1,79 @@
+package com.matching.orderbook;
+
+import com.matching.engine.EngineOrder;
+import com.matching.engine.FixedPoint;
+import com.matching.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryOrderCodecTest {
+
+    @Test
+    void roundTripsEveryField() {
+        EngineOrder order = new EngineOrder();
+        order.setId("1790000000000000001");
+        order.setUserId("使用者-7");
+        order.setSymbol("BTCUSDT");
+        order.setPrice(6_500_012_345_678L);
+        order.setQuantity(3 * FixedPoint.ONE);
+        order.setFilledQuantity(FixedPoint.ONE);
+        order.setUnfilledQuantity(2 * FixedPoint.ONE);
+        order.setSide(Order.Side.BUY);
+        order.setOrderType(Order.OrderType.STOP_LOSS);
+        order.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
+        order.setStopPrice(6_400_000_000_000L);
+        order.setTakeProfitPrice(FixedPoint.NONE);
+        order.setCreatedAt(Instant.parse("2024-05-01T08:30:15.123456789Z"));
+        order.setUpdatedAt(Instant.parse("2024-05-01T08:30:16Z"));
+        order.setModifiedAt(Instant.parse("2024-05-01T08:30:17.5Z"));
+
+        byte[] encoded = BinaryOrderCodec.encode(order, 123_456_789L);
+        assertThat(BinaryOrderCodec.isBinary(encoded)).isTrue();
+        EngineOrder decoded = BinaryOrderCodec.decode(encoded);
+
+        assertThat(decoded).usingRecursiveComparison().ignoringFields("sequence").isEqualTo(order);
+        assertThat(decoded.getSequence()).isEqualTo(123_456_789L);
+    }
+
+    @Test
+    void roundTripsMissingValues() {
+        EngineOrder order = new EngineOrder();
+        order.setQuantity(FixedPoint.ONE);
+        order.setUnfilledQuantity(FixedPoint.ONE);
+
+        EngineOrder decoded = BinaryOrderCodec.decode(BinaryOrderCodec.encode(order, 0));
+
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(order);
+        assertThat(decoded.getPrice()).isEqualTo(FixedPoint.NONE);
+        assertThat(decoded.getId()).isNull();
+        assertThat(decoded.getSide()).isNull();
+        assertThat(decoded.getCreatedAt()).isNull();
+    }
+
+    // RedisScriptOrderBook 的腳本依固定位置讀寫序號與未成交數量
+    @Test
+    void keepsSequenceAndUnfilledQuantityAtFixedPositions() {
+        EngineOrder order = new EngineOrder();
+        order.setId("1");
+        order.setUnfilledQuantity(7 * FixedPoint.ONE);
+
+        ByteBuffer encoded = ByteBuffer.wrap(BinaryOrderCodec.encode(order, 99));
+
+        assertThat(encoded.getLong(1)).isEqualTo(99);
+        assertThat(encoded.getLong(33)).isEqualTo(7 * FixedPoint.ONE);
+    }
+
+    @Test
+    void rejectsLegacyJsonValues() {
+        byte[] legacy = "0000000000000000001:{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(BinaryOrderCodec.isBinary(legacy)).isFalse();
+        assertThatThrownBy(() -> BinaryOrderCodec.decode(legacy)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,122 @@
+package com.matching.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long TWEPOCH = 1288834974657L;
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(START_MILLIS);
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, 2, clock::get);
+
+    @Test
+    void idsIncreaseAcrossSingleIdsAndBlocks() {
+        long previous = generator.nextId();
+        SnowflakeIdGenerator.IdBlock block = generator.reserve(10);
+        assertThat(block.remaining()).isEqualTo(10);
+        for (int i = 0; i < 10; i++) {
+            long id = block.nextId();
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+        assertThat(generator.nextId()).isGreaterThan(previous);
+        assertThatThrownBy(block::nextId).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void idsCarryTheNodeBits() {
+        long id = generator.nextId();
+        assertThat((id >>> 12) & 0x1F).isEqualTo(3);
+        assertThat((id >>> 17) & 0x1F).isEqualTo(2);
+        assertThat(timestamp(id)).isEqualTo(START_MILLIS);
+    }
+
+    @Test
+    void borrowsTheNextMillisecondWhenTheSequenceIsExhausted() {
+        generator.reserve(4096);
+        assertThat(timestamp(generator.nextId())).isEqualTo(START_MILLIS + 1);
+    }
+
+    @Test
+    void keepsIncreasingWhenTheClockMovesBackwardsWithinTheBorrowLimit() {
+        long first = generator.nextId();
+        clock.addAndGet(-50);
+        assertThat(generator.nextId()).isGreaterThan(first);
+    }
+
+    @Test
+    void rejectsBlocksBeyondTheBorrowLimit() {
+        assertThatThrownBy(() -> generator.reserve(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> generator.reserve(SnowflakeIdGenerator.MAX_BLOCK_SIZE + 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void waitsForTheClockWhenTheLastIdOfABlockWouldBorrowTooFar() throws Exception {
+        SnowflakeIdGenerator.IdBlock full = generator.reserve(SnowflakeIdGenerator.MAX_BLOCK_SIZE);
+        assertThat(full.remaining()).isEqualTo(SnowflakeIdGenerator.MAX_BLOCK_SIZE);
+
+        // 第一個序號只預借 100 ms，但最後一個會到 101 ms
+        CompletableFuture<SnowflakeIdGenerator.IdBlock> next = CompletableFuture.supplyAsync(() -> generator.reserve(4097));
+        Thread.sleep(100);
+        assertThat(next).isNotDone();
+
+        clock.incrementAndGet();
+        SnowflakeIdGenerator.IdBlock block = next.get(5, TimeUnit.SECONDS);
+        long last = 0;
+        while (block.remaining() > 0) {
+            last = block.nextId();
+        }
+        assertThat(timestamp(last) - clock.get()).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void refusesIdsWhileFenced() {
+        generator.setFenced(true);
+        assertThat(generator.isLeased()).isFalse();
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> generator.reserve(1)).isInstanceOf(IllegalStateException.class);
+
+        generator.setFenced(false);
+        assertThat(generator.isLeased()).isTrue();
+        generator.nextId();
+    }
+
+    @Test
+    void stopsBeingLeasedAtHalfTheTtlAndRefusesIdsAtTwoThirds() {
+        long ttl = TimeUnit.SECONDS.toNanos(10);
+
+        generator.renewLease(System.nanoTime() - TimeUnit.SECONDS.toNanos(4), ttl);
+        assertThat(generator.isLeased()).isTrue();
+        generator.nextId();
+
+        // 已超過檢查的期限，但還沒到發號的期限：通過檢查的事件仍能取得 ID
+        generator.renewLease(System.nanoTime() - TimeUnit.SECONDS.toNanos(6), ttl);
+        assertThat(generator.isLeased()).isFalse();
+        generator.nextId();
+
+        generator.renewLease(System.nanoTime() - TimeUnit.SECONDS.toNanos(7), ttl);
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+
+        generator.renewLease(System.nanoTime(), ttl);
+        assertThat(generator.isLeased()).isTrue();
+        generator.nextId();
+    }
+
+    @Test
+    void rejectsOutOfRangeNodeIds() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(32, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(0, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long timestamp(long id) {
+        return (id >>> 22) + TWEPOCH;
+    }
+}
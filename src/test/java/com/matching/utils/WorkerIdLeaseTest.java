@@ -0,0 +1,222 @@
+package com.matching.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WorkerIdLeaseTest {
+
+    private static final long TTL_MILLIS = 300;
+
+    private final FakeRedis redis = new FakeRedis();
+    private final List<WorkerIdLease> leases = new ArrayList<>();
+
+    @AfterEach
+    void closeLeases() {
+        leases.forEach(WorkerIdLease::close);
+    }
+
+    @Test
+    void instancesLeaseDistinctWorkers() {
+        WorkerIdLease first = lease();
+        WorkerIdLease second = lease();
+        first.acquire(1);
+        second.acquire(1);
+
+        assertThat(first.getDatacenterId()).isEqualTo(1);
+        assertThat(second.getDatacenterId()).isEqualTo(1);
+        assertThat(first.getWorkerId()).isNotEqualTo(second.getWorkerId());
+        assertThat(redis.keys()).containsExactlyInAnyOrder(key(first), key(second));
+    }
+
+    @Test
+    void keepsTheLeaseAliveBeyondItsTtl() throws InterruptedException {
+        WorkerIdLease lease = lease();
+        SnowflakeIdGenerator generator = lease.acquire(-1);
+
+        Thread.sleep(TTL_MILLIS * 3);
+        assertThat(redis.keys()).containsExactly(key(lease));
+        assertThat(generator.isLeased()).isTrue();
+        generator.nextId();
+    }
+
+    @Test
+    void fencesWhenAnotherInstanceTakesTheWorker() {
+        WorkerIdLease lease = lease();
+        SnowflakeIdGenerator generator = lease.acquire(-1);
+
+        redis.put(key(lease), "other-instance");
+        await().atMost(Duration.ofSeconds(2)).until(generator::isFenced);
+        assertThat(generator.isLeased()).isFalse();
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+
+        // 對方歸還後重新取得同一組 ID，恢復發號
+        redis.delete(key(lease));
+        await().atMost(Duration.ofSeconds(2)).until(() -> !generator.isFenced());
+        generator.nextId();
+    }
+
+    @Test
+    void refusesIdsBeforeTheKeyExpiresWhenRenewalsFail() {
+        WorkerIdLease lease = lease();
+        SnowflakeIdGenerator generator = lease.acquire(-1);
+
+        redis.setAvailable(false);
+        await().atMost(Duration.ofSeconds(2)).pollInterval(Duration.ofMillis(5)).until(() -> !generator.isLeased());
+        await().atMost(Duration.ofSeconds(2)).pollInterval(Duration.ofMillis(5)).until(() -> refusesIds(generator));
+        // 續約失敗不會設定 fenced，是產生器自己依續約時間拒絕發號，此時 Redis 中的 key 還沒過期，別的實例還無法取得
+        assertThat(generator.isFenced()).isFalse();
+        assertThat(redis.keys()).containsExactly(key(lease));
+
+        redis.setAvailable(true);
+        await().atMost(Duration.ofSeconds(2)).until(generator::isLeased);
+        generator.nextId();
+    }
+
+    @Test
+    void releasesTheWorkerOnClose() {
+        WorkerIdLease lease = lease();
+        SnowflakeIdGenerator generator = lease.acquire(-1);
+
+        lease.close();
+        assertThat(redis.keys()).isEmpty();
+        assertThat(generator.isFenced()).isTrue();
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void failsWhenEveryWorkerOfTheDatacenterIsTaken() {
+        for (int workerId = 0; workerId <= 31; workerId++) {
+            redis.put("snowflake:worker:4:" + workerId, "other-instance");
+        }
+        assertThatThrownBy(() -> lease().acquire(4)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private WorkerIdLease lease() {
+        WorkerIdLease lease = new WorkerIdLease(redis.template(), TTL_MILLIS);
+        leases.add(lease);
+        return lease;
+    }
+
+    private static boolean refusesIds(SnowflakeIdGenerator generator) {
+        try {
+            generator.nextId();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+    private static String key(WorkerIdLease lease) {
+        return "snowflake:worker:" + lease.getDatacenterId() + ":" + lease.getWorkerId();
+    }
+
+    // 只實作租約用到的 SET NX PX 與兩段腳本（比對 token 後 PEXPIRE / DEL），key 依 PX 過期
+    private static final class FakeRedis {
+
+        private record Entry(String value, long expiresAtNanos) {
+        }
+
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private volatile boolean available = true;
+
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, Object> template() {
+            RedisConnection connection = mock(RedisConnection.class);
+            RedisStringCommands stringCommands = mock(RedisStringCommands.class, invocation -> {
+                checkAvailable();
+                Object[] arguments = invocation.getArguments();
+                return setIfAbsent(string((byte[]) arguments[0]), string((byte[]) arguments[1]), (Expiration) arguments[2]);
+            });
+            RedisScriptingCommands scriptingCommands = mock(RedisScriptingCommands.class, invocation -> {
+                checkAvailable();
+                Object[] arguments = invocation.getRawArguments();
+                return eval(string((byte[]) arguments[0]), (byte[][]) arguments[3]);
+            });
+            when(connection.stringCommands()).thenReturn(stringCommands);
+            when(connection.scriptingCommands()).thenReturn(scriptingCommands);
+
+            RedisTemplate<String, Object> template = mock(RedisTemplate.class);
+            when(template.execute(any(RedisCallback.class))).thenAnswer(invocation ->
+                    ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(connection));
+            return template;
+        }
+
+        void setAvailable(boolean available) {
+            this.available = available;
+        }
+
+        void put(String key, String value) {
+            entries.put(key, new Entry(value, Long.MAX_VALUE));
+        }
+
+        void delete(String key) {
+            entries.remove(key);
+        }
+
+        List<String> keys() {
+            return entries.keySet().stream().filter(key -> get(key) != null).toList();
+        }
+
+        private void checkAvailable() {
+            if (!available) {
+                throw new IllegalStateException("Redis is unavailable");
+            }
+        }
+
+        private synchronized Boolean setIfAbsent(String key, String value, Expiration expiration) {
+            if (get(key) != null) {
+                return false;
+            }
+            entries.put(key, new Entry(value, System.nanoTime() + expiration.getExpirationTimeInMilliseconds() * 1_000_000));
+            return true;
+        }
+
+        private synchronized Long eval(String script, byte[][] keysAndArgs) {
+            String key = string(keysAndArgs[0]);
+            Entry entry = get(key);
+            if (entry == null || !entry.value().equals(string(keysAndArgs[1]))) {
+                return 0L;
+            }
+            if (script.contains("PEXPIRE")) {
+                long ttlMillis = Long.parseLong(string(keysAndArgs[2]));
+                entries.put(key, new Entry(entry.value(), System.nanoTime() + ttlMillis * 1_000_000));
+            } else {
+                entries.remove(key);
+            }
+            return 1L;
+        }
+
+        private Entry get(String key) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.nanoTime() >= entry.expiresAtNanos()) {
+                entries.remove(key, entry);
+                return null;
+            }
+            return entry;
+        }
+
+        private static String string(byte[] value) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}